@@ -0,0 +1,58 @@
+package com.abc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Deposit and withdraw throughput on a single shared account under 1, 4 and
+ * 16 threads
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountBenchmark {
+	private Account account;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		account = new Account(Account.Type.CHECKING);
+	}
+
+	private void depositWithdraw() {
+		account.deposit(10.0);
+		account.withdraw(5.0);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void depositWithdraw1Thread() {
+		depositWithdraw();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void depositWithdraw4Threads() {
+		depositWithdraw();
+	}
+
+	@Benchmark
+	@Threads(16)
+	public void depositWithdraw16Threads() {
+		depositWithdraw();
+	}
+}
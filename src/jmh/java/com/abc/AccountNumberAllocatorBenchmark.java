@@ -0,0 +1,76 @@
+package com.abc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Account number allocation under 1, 4 and 16 threads, comparing the
+ * allocator's per-thread blocks with every thread incrementing one shared
+ * counter. Both start afresh each iteration so the allocator never runs out
+ * of numbers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountNumberAllocatorBenchmark {
+	private AccountNumberAllocator allocator;
+	private AtomicInteger counter;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		allocator = new AccountNumberAllocator();
+		counter = new AtomicInteger();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public int allocator1Thread() {
+		return allocator.next();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int allocator4Threads() {
+		return allocator.next();
+	}
+
+	@Benchmark
+	@Threads(16)
+	public int allocator16Threads() {
+		return allocator.next();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public int sharedCounter1Thread() {
+		return counter.incrementAndGet();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int sharedCounter4Threads() {
+		return counter.incrementAndGet();
+	}
+
+	@Benchmark
+	@Threads(16)
+	public int sharedCounter16Threads() {
+		return counter.incrementAndGet();
+	}
+}
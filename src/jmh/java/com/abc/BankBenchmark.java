@@ -0,0 +1,52 @@
+package com.abc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Bank-wide reports at bank sizes from 1k to 1M customers, each holding one
+ * account with a single deposit
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BankBenchmark {
+	@Param({ "1000", "10000", "100000", "1000000" })
+	public int customers;
+
+	private Bank bank;
+
+	@Setup
+	public void setup() {
+		bank = new Bank();
+		for (int c = 0; c < customers; c++) {
+			Account account = new Account(Account.Type.values()[c % 3]);
+			account.deposit(100.0 + c % 1000);
+			bank.addCustomer(new Customer("Customer " + c).openAccount(account));
+		}
+	}
+
+	@Benchmark
+	public String customerSummary() {
+		return bank.customerSummary();
+	}
+
+	@Benchmark
+	public double totalInterestPaid() {
+		return bank.totalInterestPaid();
+	}
+}
@@ -0,0 +1,58 @@
+package com.abc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Statement generation and transfers for a customer holding one account of
+ * each type
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerBenchmark {
+	@Param({ "10", "1000", "10000" })
+	public int transactionsPerAccount;
+
+	private Customer customer;
+	private Account checking;
+	private Account savings;
+
+	@Setup
+	public void setup() {
+		checking = new Account(Account.Type.CHECKING);
+		savings = new Account(Account.Type.SAVINGS);
+		Account maxiSavings = new Account(Account.Type.MAXI_SAVINGS);
+		customer = new Customer("Benchmark").openAccount(checking).openAccount(savings).openAccount(maxiSavings);
+		for (Account account : customer.getAccounts()) {
+			for (int i = 0; i < transactionsPerAccount; i++) {
+				account.deposit(1000.0);
+			}
+		}
+	}
+
+	@Benchmark
+	public String getStatement() {
+		return customer.getStatement();
+	}
+
+	@Benchmark
+	public void transfer() {
+		customer.transfer(checking, savings, 1);
+		customer.transfer(savings, checking, 1);
+	}
+}
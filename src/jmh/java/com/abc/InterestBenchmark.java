@@ -0,0 +1,74 @@
+package com.abc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Cost of Account.interestEarned() for each account type over histories of
+ * 10 to 1,000,000 transactions, with gaps of a day to three years between the
+ * transactions and before the measurement. The history is backdated through
+ * the DateProvider clock.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterestBenchmark {
+	@Param({ "CHECKING", "SAVINGS", "MAXI_SAVINGS" })
+	public Account.Type type;
+
+	@Param({ "10", "1000", "100000", "1000000" })
+	public int transactions;
+
+	@Param({ "1", "30", "1095" })
+	public int gapDays;
+
+	private Account account;
+	private long clockMillis;
+
+	@Setup
+	public void setup() {
+		DateProvider.getInstance().setClock(new DateProvider.Clock() {
+			@Override
+			public long millis() {
+				return clockMillis;
+			}
+		});
+		long gap = gapDays * DateProvider.MILLIS_PER_DAY;
+		account = new Account(type);
+		for (int i = 0; i < transactions; i++) {
+			clockMillis = i * gap;
+			if (i % 4 == 3) {
+				account.withdraw(50.0);
+			} else {
+				account.deposit(100.0);
+			}
+		}
+		// Interest is measured one more gap after the last transaction
+		clockMillis += gap;
+	}
+
+	@TearDown
+	public void tearDown() {
+		DateProvider.getInstance().setClock(DateProvider.SYSTEM_CLOCK);
+	}
+
+	@Benchmark
+	public double interestEarned() {
+		return account.interestEarned();
+	}
+}
@@ -0,0 +1,49 @@
+package com.abc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Cost of compounding one gap between transactions, from days to years, for
+ * each account type
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterestEngineBenchmark {
+	@Param({ "CHECKING", "SAVINGS", "MAXI_SAVINGS" })
+	public Account.Type type;
+
+	@Param({ "1", "30", "365", "3650" })
+	public int days;
+
+	// Starts below the savings tier so that the tier split is exercised
+	@Param({ "950.0" })
+	public double balance;
+
+	private InterestEngine engine;
+
+	@Setup
+	public void setup() {
+		engine = type.getInterestEngine();
+	}
+
+	@Benchmark
+	public double accrue() {
+		return engine.accrue(balance, 5, days);
+	}
+}
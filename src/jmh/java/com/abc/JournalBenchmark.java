@@ -0,0 +1,90 @@
+package com.abc;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Journaled deposits per second in each durability mode, with 1 and 8
+ * threads depositing into their own accounts. The journal is written under
+ * the directory named by the journal.dir system property, by default the
+ * temporary directory; point it at the disk to be measured, e.g.
+ * -Djmh.args="Journal -jvmArgs -Djournal.dir=/data/tmp".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JournalBenchmark {
+	@Param({ "PER_OP", "BATCHED", "ASYNC" })
+	public Journal.Durability durability;
+
+	private Path directory;
+	private Journal journal;
+	private Bank bank;
+
+	/*
+	 * Each benchmark thread deposits into an account of its own
+	 */
+	@State(Scope.Thread)
+	public static class ThreadAccount {
+		Account account;
+
+		@Setup(Level.Iteration)
+		public void setup(JournalBenchmark benchmark) {
+			account = new Account(Account.Type.CHECKING);
+			benchmark.bank.addCustomer(new Customer("Benchmark").openAccount(account));
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		Path parent = Paths.get(System.getProperty("journal.dir", System.getProperty("java.io.tmpdir")));
+		directory = Files.createTempDirectory(parent, "journal-bench");
+		journal = new Journal(directory, durability);
+		bank = new Bank(journal);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		journal.close();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void deposit1Thread(ThreadAccount state) {
+		state.account.depositCents(100, null);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public void deposit8Threads(ThreadAccount state) {
+		state.account.depositCents(100, null);
+	}
+}
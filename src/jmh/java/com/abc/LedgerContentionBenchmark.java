@@ -0,0 +1,109 @@
+package com.abc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Contention benchmark comparing the lock-free ledger behind Account with the
+ * previous monitor-based transaction list. Writers deposit into one shared
+ * account while a reader repeatedly takes a snapshot of its history.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LedgerContentionBenchmark {
+
+	/*
+	 * The account implementation under test
+	 */
+	private interface Target {
+		void deposit(double amount);
+
+		/*
+		 * Take a stable snapshot of the history and read its latest entry
+		 */
+		long snapshotLatest();
+	}
+
+	/*
+	 * Copy of the previous implementation: a list of Transaction objects
+	 * guarded by its own monitor and copied for every reader
+	 */
+	private static final class MonitorAccount implements Target {
+		private final List<Transaction> transactions = new ArrayList<Transaction>();
+
+		@Override
+		public void deposit(double amount) {
+			synchronized (transactions) {
+				transactions.add(new Transaction(amount));
+			}
+		}
+
+		@Override
+		public long snapshotLatest() {
+			List<Transaction> copy;
+			synchronized (transactions) {
+				copy = new ArrayList<Transaction>(transactions);
+			}
+			return copy.isEmpty() ? 0 : copy.get(copy.size() - 1).getAmountCents();
+		}
+	}
+
+	private static final class LedgerAccount implements Target {
+		private final Account account = new Account(Account.Type.CHECKING);
+
+		@Override
+		public void deposit(double amount) {
+			account.deposit(amount);
+		}
+
+		@Override
+		public long snapshotLatest() {
+			Ledger.View view = account.getLedger().view();
+			return view.size() == 0 ? 0 : view.amountCents(view.size() - 1);
+		}
+	}
+
+	@Param({ "monitor", "ledger" })
+	public String implementation;
+
+	private Target target;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		target = "monitor".equals(implementation) ? new MonitorAccount() : new LedgerAccount();
+	}
+
+	@Benchmark
+	@Group("contended")
+	@GroupThreads(4)
+	public void writer() {
+		target.deposit(1.0);
+	}
+
+	@Benchmark
+	@Group("contended")
+	@GroupThreads(1)
+	public long reader() {
+		return target.snapshotLatest();
+	}
+}
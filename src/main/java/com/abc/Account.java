@@ -1,8 +1,8 @@
 package com.abc;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 /*
  * Associated with individual customers. This class calculates interest for accounts of
@@ -11,42 +11,172 @@ import java.util.List;
 public class Account {
 
 	public static enum Type {
-		CHECKING(0), SAVINGS(1), MAXI_SAVINGS(2);
+		CHECKING(0, new CheckingInterestEngine()), SAVINGS(1, new SavingsInterestEngine()), MAXI_SAVINGS(2, new MaxiSavingsInterestEngine());
 
 		private final int value;
+		private final InterestEngine interestEngine;
 
-		Type(int value) {
+		Type(int value, InterestEngine interestEngine) {
 			this.value = value;
+			this.interestEngine = interestEngine;
 		}
 
 		public int getValue() {
 			return value;
 		}
+
+		/*
+		 * Return the default interest engine for accounts of this type
+		 * 
+		 * @return interest engine
+		 */
+		public InterestEngine getInterestEngine() {
+			return interestEngine;
+		}
 	};
 
 	private final Type accountType;
-	private List<Transaction> transactions;
+	private final Ledger ledger;
 	private final int accountNumber;
-	private static Integer nextAccountNumber = 1;
+	private final InterestEngine interestEngine;
+
+	private static final String RESERVED_DESCRIPTION = "the interest description is reserved for interest postings";
+
+	// Held by transfers, which lock both accounts in account number order,
+	// and by entries raising the ledger's version
+	private final Object transferLock = new Object();
+
+	// Checkpoint of the first tail reaching into each ledger chunk, indexed by
+	// chunk, so snapshots can recompute any checkpoint from a nearby one
+	private final AtomicReference<Checkpoint[]> chunkCheckpoints = new AtomicReference<Checkpoint[]>(new Checkpoint[0]);
+
+	// Journal the account is attached to once its owner joins a journaled
+	// bank, and the number of entries written to it, guarded by the journal
+	volatile Journal journal;
+	int journaledSize;
+
+	/*
+	 * Ledger tail carrying the running balance and the accrual checkpoint as
+	 * of the last transaction: the balance including compounded interest, and
+	 * the remaining maxi-savings low-rate days. It is published atomically
+	 * with each entry, so the balance always equals the sum of the entries it
+	 * follows.
+	 */
+	static final class Checkpoint extends Ledger.Tail {
+		final long balanceCents;
+		final double accruedBalance;
+		final int lowRateDaysRemaining;
+		// Checkpoint before the first entry of this version, which is where a
+		// snapshot of the previous version cuts the ledger; null if the
+		// version was never raised. It carries no link of its own, so at most
+		// one is kept alive.
+		final Checkpoint versionStart;
+
+		Checkpoint(int size, long amountCents, long time, int descriptionId, long balanceCents, double accruedBalance, int lowRateDaysRemaining) {
+			this(size, amountCents, time, descriptionId, null, 0, balanceCents, accruedBalance, lowRateDaysRemaining, null);
+		}
+
+		Checkpoint(int size, long amountCents, long time, int descriptionId, Ledger.Batch batch, long version, long balanceCents, double accruedBalance,
+				int lowRateDaysRemaining, Checkpoint versionStart) {
+			super(size, amountCents, time, descriptionId, batch, version);
+			this.balanceCents = balanceCents;
+			this.accruedBalance = accruedBalance;
+			this.lowRateDaysRemaining = lowRateDaysRemaining;
+			this.versionStart = versionStart;
+		}
+
+		/*
+		 * Return a copy of this checkpoint's state without its batch or its
+		 * version link
+		 */
+		Checkpoint unlinked() {
+			return new Checkpoint(size, amountCents, time, descriptionId, null, version, balanceCents, accruedBalance, lowRateDaysRemaining, null);
+		}
+	}
 
 	/*
-	 * Returns a defensive copy of the list of transactions
+	 * Returns a defensive copy of the list of transactions. Transaction objects
+	 * are built from a snapshot of the ledger on each call.
 	 */
 	public List<Transaction> getTransactions() {
-		List<Transaction> result;
-		synchronized (transactions) {
-			result = new ArrayList<Transaction>(transactions);
+		return ledger.view().toTransactions();
+	}
+
+	/*
+	 * Return the transactions stamped within a time window. The window is
+	 * found by binary search on the ledger's time column, and only its
+	 * entries are built into Transaction objects.
+	 * 
+	 * @param fromMillis start of the window, inclusive, in milliseconds since
+	 * the epoch
+	 * 
+	 * @param toMillis end of the window, exclusive
+	 * 
+	 * @return transactions in the window, oldest first
+	 * 
+	 * @throws IllegalArgumentException if the window ends before it starts
+	 */
+	public List<Transaction> getTransactions(long fromMillis, long toMillis) {
+		Ledger.View view = ledger.view();
+		int[] range = range(view, fromMillis, toMillis);
+		return view.toTransactions(range[0], range[1]);
+	}
+
+	/*
+	 * Find the entries of a view stamped within a time window
+	 * 
+	 * @return index of the first entry in the window and index after the last
+	 * 
+	 * @throws IllegalArgumentException if the window ends before it starts
+	 */
+	static int[] range(Ledger.View view, long fromMillis, long toMillis) {
+		if (fromMillis > toMillis) {
+			throw new IllegalArgumentException("window ends before it starts");
 		}
-		return result;
+		int from = view.indexOf(fromMillis);
+		return new int[] { from, from == view.size() ? from : view.indexOf(toMillis) };
 	}
 
 	public Account(Type accountType) {
-		this.accountType = accountType;
-		this.transactions = new ArrayList<Transaction>();
-		synchronized (nextAccountNumber) {
-			accountNumber = nextAccountNumber;
-			nextAccountNumber++;
+		this(accountType, accountType.getInterestEngine());
+	}
+
+	/*
+	 * Create an account which calculates interest with the given engine
+	 * instead of the default engine for its type
+	 * 
+	 * @param accountType type of account
+	 * 
+	 * @param interestEngine engine used to compound the balance
+	 * 
+	 * @throws NullPointerException if the interest engine is null
+	 */
+	public Account(Type accountType, InterestEngine interestEngine) {
+		this(accountType, interestEngine, AccountNumberAllocator.getInstance().next());
+	}
+
+	/*
+	 * Recreate an account with the number it had before a restart. The number
+	 * is reserved so that it is not handed out again.
+	 * 
+	 * @param accountType type of account
+	 * 
+	 * @param accountNumber number of the account being restored
+	 */
+	Account(Type accountType, int accountNumber) {
+		this(accountType, accountType.getInterestEngine(), accountNumber);
+		AccountNumberAllocator.getInstance().ensureAbove(accountNumber);
+	}
+
+	private Account(Type accountType, InterestEngine interestEngine, int accountNumber) {
+		if (interestEngine == null) {
+			throw new NullPointerException();
 		}
+		this.accountType = accountType;
+		this.interestEngine = interestEngine;
+		this.ledger = new Ledger(new Checkpoint(0, 0, 0, Ledger.DEPOSIT, 0, 0, 0));
+		this.accountNumber = accountNumber;
+		Metrics.historyGrew(-1, 0);
 	}
 
 	/*
@@ -57,13 +187,7 @@ public class Account {
 	 * @throws IllegalArgumentExeption if the amount is negative
 	 */
 	public void deposit(double amount) {
-		if (amount <= 0) {
-			throw new IllegalArgumentException("amount must be greater than zero");
-		} else {
-			synchronized (transactions) {
-				transactions.add(new Transaction(amount));
-			}
-		}
+		deposit(amount, null);
 	}
 
 	/*
@@ -74,13 +198,7 @@ public class Account {
 	 * @throws IllegalArgumentException if the amount is negative
 	 */
 	public void withdraw(double amount) {
-		if (amount <= 0) {
-			throw new IllegalArgumentException("amount must be greater than zero");
-		} else {
-			synchronized (transactions) {
-				transactions.add(new Transaction(-amount));
-			}
-		}
+		withdraw(amount, null);
 	}
 
 	/*
@@ -95,11 +213,8 @@ public class Account {
 	public void deposit(double amount, String description) {
 		if (amount <= 0) {
 			throw new IllegalArgumentException("amount must be greater than zero");
-		} else {
-			synchronized (transactions) {
-				transactions.add(new Transaction(amount, description));
-			}
 		}
+		depositCents(Money.toCents(amount), description);
 	}
 
 	/*
@@ -114,144 +229,707 @@ public class Account {
 	public void withdraw(double amount, String description) {
 		if (amount <= 0) {
 			throw new IllegalArgumentException("amount must be greater than zero");
-		} else {
-			synchronized (transactions) {
-				transactions.add(new Transaction(-amount, description));
+		}
+		withdrawCents(Money.toCents(amount), description);
+	}
+
+	/*
+	 * Deposit an amount in cents
+	 * 
+	 * @param cents value of deposit in cents
+	 * 
+	 * @param description of deposit, or null for the default description
+	 * 
+	 * @throws IllegalArgumentException if the amount is not positive
+	 */
+	public void depositCents(long cents, String description) {
+		if (cents <= 0) {
+			throw new IllegalArgumentException("amount must be greater than zero");
+		}
+		long started = Metrics.start();
+		post(cents, userDescriptionId(description, Ledger.DEPOSIT));
+		Metrics.record(Metrics.Operation.DEPOSIT, started);
+	}
+
+	/*
+	 * Return the dictionary id of a description given by a caller. The
+	 * interest description is reserved for interest postings, because they do
+	 * not add to the accrued balance the way deposits do.
+	 * 
+	 * @param description description, or null for the default
+	 * 
+	 * @param defaultId id used if the description is null
+	 * 
+	 * @return description id
+	 * 
+	 * @throws IllegalArgumentException if the description is reserved
+	 */
+	private static int userDescriptionId(String description, int defaultId) {
+		if (description == null) {
+			return defaultId;
+		}
+		int id = Ledger.descriptionId(description);
+		if (id == Ledger.INTEREST) {
+			throw new IllegalArgumentException(RESERVED_DESCRIPTION);
+		}
+		return id;
+	}
+
+	/*
+	 * Deposit the proceeds of a transfer, which is timed as a whole rather
+	 * than as a deposit
+	 * 
+	 * @param cents value of deposit in cents
+	 * 
+	 * @param description of deposit
+	 * 
+	 * @param version version of the transfer
+	 */
+	void credit(long cents, String description, long version) {
+		if (cents <= 0) {
+			throw new IllegalArgumentException("amount must be greater than zero");
+		}
+		for (;;) {
+			if (tryPost((Checkpoint) ledger.tail(), cents, Ledger.descriptionId(description), DateProvider.getInstance().currentTimeMillis(), version)) {
+				return;
+			}
+		}
+	}
+
+	/*
+	 * Withdraw an amount in cents
+	 * 
+	 * @param cents value of withdrawal in cents
+	 * 
+	 * @param description of withdrawal, or null for the default description
+	 * 
+	 * @throws IllegalArgumentException if the amount is not positive
+	 */
+	public void withdrawCents(long cents, String description) {
+		if (cents <= 0) {
+			throw new IllegalArgumentException("amount must be greater than zero");
+		}
+		long started = Metrics.start();
+		post(-cents, userDescriptionId(description, Ledger.WITHDRAWAL));
+		Metrics.record(Metrics.Operation.WITHDRAW, started);
+	}
+
+	/*
+	 * Post a batch of deposits and withdrawals in one step. The whole batch is
+	 * validated before anything is posted, then appended to the ledger with a
+	 * single compare-and-set, so readers see either none or all of it. Every
+	 * entry is stamped with the same time.
+	 * 
+	 * @param amountsCents values in cents, positive for deposits and negative
+	 * for withdrawals
+	 * 
+	 * @param descriptions description of each entry, or null for the default
+	 * descriptions; either the array or individual elements may be null
+	 * 
+	 * @throws NullPointerException if the amounts are null
+	 * 
+	 * @throws IllegalArgumentException if an amount is zero, the arrays differ
+	 * in length or the batch total overflows
+	 */
+	public void apply(long[] amountsCents, String[] descriptions) {
+		if (amountsCents == null) {
+			throw new NullPointerException();
+		}
+		int count = amountsCents.length;
+		if (descriptions != null && descriptions.length != count) {
+			throw new IllegalArgumentException("expected " + count + " descriptions but got " + descriptions.length);
+		}
+		int[] descriptionIds = new int[count];
+		for (int i = 0; i < count; i++) {
+			String description = descriptions == null ? null : descriptions[i];
+			descriptionIds[i] = userDescriptionId(description, amountsCents[i] > 0 ? Ledger.DEPOSIT : Ledger.WITHDRAWAL);
+		}
+		applyEntries(amountsCents.clone(), descriptionIds);
+	}
+
+	/*
+	 * Post a batch whose descriptions are already in the ledger dictionary.
+	 * The arrays are published with the ledger and must not be modified
+	 * afterwards.
+	 * 
+	 * @param amounts values in cents, positive for deposits and negative for
+	 * withdrawals
+	 * 
+	 * @param descriptionIds description id of each entry
+	 * 
+	 * @throws IllegalArgumentException if an amount is zero, the arrays differ
+	 * in length or the batch total overflows
+	 */
+	void applyEntries(long[] amounts, int[] descriptionIds) {
+		int count = amounts.length;
+		if (descriptionIds.length != count) {
+			throw new IllegalArgumentException("expected " + count + " descriptions but got " + descriptionIds.length);
+		}
+		long totalCents = 0;
+		boolean laterWithdrawal = false;
+		int withdrawals = 0;
+		for (int i = 0; i < count; i++) {
+			long amount = amounts[i];
+			if (amount == 0) {
+				throw new IllegalArgumentException("amount " + i + " must not be zero");
+			}
+			if (descriptionIds[i] == Ledger.INTEREST) {
+				throw new IllegalArgumentException(RESERVED_DESCRIPTION);
+			}
+			try {
+				totalCents = Math.addExact(totalCents, amount);
+			} catch (ArithmeticException e) {
+				throw new IllegalArgumentException("batch total overflows", e);
+			}
+			laterWithdrawal |= i > 0 && amount < 0;
+			if (amount < 0) {
+				withdrawals++;
+			}
+		}
+		if (count == 0) {
+			return;
+		}
+
+		long started = Metrics.start();
+		Ledger.Batch batch = new Ledger.Batch(amounts, descriptionIds);
+		long time = DateProvider.getInstance().currentTimeMillis();
+		for (;;) {
+			// Accrue as if the entries were posted one at a time, no time
+			// apart, so that replaying them singly from the journal reaches
+			// the same checkpoint
+			Checkpoint previous = (Checkpoint) ledger.tail();
+			long version = Math.max(VersionClock.current(), previous.version);
+			long entryTime = Math.max(time, previous.time);
+			double accruedBalance = previous.accruedBalance;
+			int lowRateDaysRemaining = previous.lowRateDaysRemaining;
+			if (previous.size > 0) {
+				int daysOfAccumInterest = DateProvider.getInstance().daysBetween(previous.time, entryTime);
+				accruedBalance = interestEngine.accrue(accruedBalance, lowRateDaysRemaining, daysOfAccumInterest);
+				lowRateDaysRemaining = Math.max(0, lowRateDaysRemaining - daysOfAccumInterest);
+			}
+			if (laterWithdrawal || (previous.size > 0 && amounts[0] < 0)) {
+				lowRateDaysRemaining = interestEngine.lowRateDaysAfterWithdrawal();
+			}
+			for (int i = 0; i < count; i++) {
+				accruedBalance += Money.toDollars(amounts[i]);
+			}
+
+			int last = count - 1;
+			Checkpoint next = new Checkpoint(previous.size + count, amounts[last], entryTime, descriptionIds[last], batch, version,
+					previous.balanceCents + totalCents, accruedBalance, lowRateDaysRemaining, versionStart(previous, version));
+			if (compareAndAppend(previous, next)) {
+				Metrics.historyGrew(previous.size, next.size);
+				keepChunkCheckpoint(previous, next);
+				Journal j = journal;
+				if (j != null) {
+					j.logEntries(this, next);
+				}
+				Metrics.recordBatch(count - withdrawals, withdrawals, started);
+				return;
 			}
 		}
 	}
 
+	/*
+	 * Withdraw an amount in cents only if the balance covers it. The check and
+	 * the withdrawal are made against the same ledger state, so concurrent
+	 * withdrawals cannot together overdraw the account.
+	 * 
+	 * @param cents value of withdrawal in cents
+	 * 
+	 * @param description of withdrawal
+	 * 
+	 * @param version version of the transfer
+	 * 
+	 * @throws IllegalStateException if the balance is less than the amount
+	 */
+	void withdrawCovered(long cents, String description, long version) {
+		if (cents <= 0) {
+			throw new IllegalArgumentException("amount must be greater than zero");
+		}
+		int descriptionId = Ledger.descriptionId(description);
+		for (;;) {
+			Checkpoint previous = (Checkpoint) ledger.tail();
+			if (previous.balanceCents < cents) {
+				throw new IllegalStateException("insufficient funds");
+			}
+			if (tryPost(previous, -cents, descriptionId, DateProvider.getInstance().currentTimeMillis(), version)) {
+				return;
+			}
+		}
+	}
+
+	/*
+	 * Return the monitor held by transfers involving this account
+	 * 
+	 * @return transfer lock
+	 */
+	Object transferLock() {
+		return transferLock;
+	}
+
 	/*
 	 * Calculate the interest earned based on the current balance and the
-	 * account type.
+	 * account type. Interest is compounded from the accrual checkpoint kept at
+	 * the last transaction, so the cost does not depend on the history length.
 	 * 
 	 * @return the dollar amount of all interest earned on this account.
 	 */
 	public double interestEarned() {
-		switch (accountType) {
-		case SAVINGS:
-			return savingsInterestEarned();
-		case MAXI_SAVINGS:
-			return maxiSavingsInterestEarned();
-		default:
-			return checkingInterestEarned();
-		}
+		long started = Metrics.start();
+		double interest = interestEarned((Checkpoint) ledger.tail(), DateProvider.getInstance().currentTimeMillis());
+		Metrics.record(Metrics.Operation.INTEREST_EARNED, started);
+		return interest;
 	}
 
-	private double savingsInterestEarned() {
-		if (transactions.isEmpty())
+	/*
+	 * Calculate the interest earned from a checkpoint up to a given time
+	 * 
+	 * @param current checkpoint after the last entry counted
+	 * 
+	 * @param now time to accrue to, in milliseconds since the epoch
+	 * 
+	 * @return interest in dollars
+	 */
+	double interestEarned(Checkpoint current, long now) {
+		if (current.size == 0) {
 			return 0;
+		}
+		// A clock that was set back must not make elapsed time negative
+		now = Math.max(current.time, now);
+		int daysOfAccumInterest = DateProvider.getInstance().daysBetween(current.time, now);
+		double balance = interestEngine.accrue(current.accruedBalance, current.lowRateDaysRemaining, daysOfAccumInterest);
+		return balance - Money.toDollars(current.balanceCents);
+	}
 
-		double lowBalAPR = 0.001;
-		double highBalAPR = 0.002;
-		Iterator<Transaction> transactionIterator = transactions.iterator();
-		Transaction currTransaction = transactionIterator.next();
-		double currBalance = currTransaction.amount;
-		int daysOfAccumInterest;
-		while (transactionIterator.hasNext()) {
-			Transaction nextTransaction = transactionIterator.next();
-			daysOfAccumInterest = DateProvider.getInstance().daysSince(currTransaction.getDate(), nextTransaction.getDate());
-			for (int i = 0; i < daysOfAccumInterest; i++) {
-				if (currBalance < 1000) {
-					currBalance = currBalance * (1 + lowBalAPR / 365);
-				} else {
-					currBalance = 1000 * (1 + lowBalAPR / 365) + (currBalance - 1000) * (1 + highBalAPR / 365);
-				}
+	/*
+	 * Read the account as of a snapshot version: the entries up to the last
+	 * one versioned at or below it, and the checkpoint after them. Entries
+	 * past the cut are few, as they were posted after the snapshot started.
+	 * When they all have the tail's version, the tail links to the checkpoint
+	 * at the cut; otherwise the checkpoint is recomputed from the nearest one
+	 * kept at a chunk start or an archived period, at most about a chunk of
+	 * entries before the cut.
+	 * 
+	 * @param version snapshot version
+	 * 
+	 * @return state of the account
+	 */
+	Snapshot snapshot(long version) {
+		Checkpoint tail = (Checkpoint) ledger.tail();
+		Ledger.View view = ledger.view(tail);
+		if (tail.version <= version) {
+			return new Snapshot(view, tail);
+		}
+		Checkpoint start = tail.versionStart;
+		if (start != null && start.version <= version) {
+			return new Snapshot(view.prefix(start.size), start);
+		}
+		// Every entry from the start of the tail's version is past the cut
+		int size = start == null ? tail.size : start.size;
+		while (size > 0 && view.version(size - 1) > version) {
+			size--;
+		}
+		return new Snapshot(view.prefix(size), checkpointAt(view, size));
+	}
+
+	/*
+	 * Recompute the checkpoint after the given number of entries, starting
+	 * from the nearest chunk checkpoint or archived period before it
+	 */
+	private Checkpoint checkpointAt(Ledger.View view, int size) {
+		Checkpoint start = null;
+		Checkpoint[] kept = chunkCheckpoints.get();
+		for (int c = Math.min(size >>> Ledger.CHUNK_SHIFT, kept.length - 1); c > 0 && start == null; c--) {
+			if (kept[c] != null && kept[c].size <= size) {
+				start = kept[c];
 			}
-			currTransaction = nextTransaction;
-			currBalance += currTransaction.amount;
 		}
+		PeriodSummary previous = null;
+		for (PeriodSummary period : ledger.periods()) {
+			if (period.getFirstIndex() + period.getCount() <= size) {
+				previous = period;
+			}
+		}
+		int from = previous == null ? 0 : previous.getFirstIndex() + previous.getCount();
+		if (start == null || start.size < from) {
+			return checkpointAfter(previous, view, from, size);
+		}
+		return checkpointAfter(start, view, size);
+	}
 
-		daysOfAccumInterest = DateProvider.getInstance().daysSince(currTransaction.getDate());
-		for (int i = 0; i < daysOfAccumInterest; i++) {
-			if (currBalance < 1000) {
-				currBalance = currBalance * (1 + lowBalAPR / 365);
-			} else {
-				currBalance = 1000 * (1 + lowBalAPR / 365) + (currBalance - 1000) * (1 + highBalAPR / 365);
+	/*
+	 * State of an account as of a snapshot version
+	 */
+	static final class Snapshot {
+		private final Ledger.View view;
+		final Checkpoint checkpoint;
+
+		Snapshot(Ledger.View view, Checkpoint checkpoint) {
+			this.view = view;
+			this.checkpoint = checkpoint;
+		}
+
+		/*
+		 * Return a view of the entries in the snapshot. Each call returns a
+		 * new view, so views can be read on different threads.
+		 */
+		Ledger.View view() {
+			return view.prefix(view.size());
+		}
+	}
+
+	/*
+	 * Calculate the interest earned rounded to whole cents with the rounding
+	 * policy of Money.toCents
+	 * 
+	 * @return interest earned in cents
+	 */
+	public long interestEarnedCents() {
+		return Money.toCents(interestEarned());
+	}
+
+	/*
+	 * Append a ledger entry stamped with the current time and move the accrual
+	 * checkpoint forward to it. The checkpoint is computed from the current
+	 * tail and published with a compare-and-set, retrying if another writer
+	 * appended first, so entries stay in order without taking a lock.
+	 */
+	private void post(long amountCents, int descriptionId) {
+		for (;;) {
+			if (tryPost((Checkpoint) ledger.tail(), amountCents, descriptionId, DateProvider.getInstance().currentTimeMillis(), 0)) {
+				return;
 			}
 		}
-		double amount = sumTransactions();
-		return currBalance - amount;
-	}
-
-	private double maxiSavingsInterestEarned() {
-		double lowAPR = 0.001;
-		double highAPR = 0.05;
-		Iterator<Transaction> transactionIterator = transactions.iterator();
-		Transaction currTransaction = transactionIterator.next();
-		double currBalance = currTransaction.amount;
-		int daysOfAccumInterest;
-		int daysOfLowAPR = 0;
-		while (transactionIterator.hasNext()) {
-			Transaction nextTransaction = transactionIterator.next();
-			daysOfAccumInterest = DateProvider.getInstance().daysSince(currTransaction.getDate(), nextTransaction.getDate());
-			for (int i = 0; i < daysOfAccumInterest; i++) {
-				if (daysOfLowAPR > 0) {
-					currBalance = currBalance * (1 + lowAPR / 365);
-					daysOfLowAPR--;
-				} else {
-					currBalance = currBalance * (1 + highAPR / 365);
-				}
+	}
+
+	/*
+	 * Post the interest accrued up to the given time, rounded to whole cents,
+	 * as an interest entry. Interest accrues by whole days, so the entry is
+	 * stamped the last whole number of days after the previous entry, and the
+	 * part of a day after it carries into the next accrual. The accrual
+	 * checkpoint moves to the entry, so later interest is computed from
+	 * there, and the fraction of a cent not posted stays in the accrued
+	 * balance.
+	 * 
+	 * @param time time to accrue to in milliseconds since the epoch; it is
+	 * moved up to the last entry's time if earlier
+	 * 
+	 * @return interest posted in cents, or zero if none was due
+	 */
+	long postInterest(long time) {
+		for (;;) {
+			Checkpoint previous = (Checkpoint) ledger.tail();
+			if (previous.size == 0) {
+				return 0;
+			}
+			long entryTime = Math.max(time, previous.time);
+			int daysOfAccumInterest = DateProvider.getInstance().daysBetween(previous.time, entryTime);
+			double accruedBalance = interestEngine.accrue(previous.accruedBalance, previous.lowRateDaysRemaining, daysOfAccumInterest);
+			long interestCents = Money.toCents(accruedBalance - Money.toDollars(previous.balanceCents));
+			if (interestCents == 0) {
+				return 0;
+			}
+			long postedTime = previous.time + daysOfAccumInterest * DateProvider.MILLIS_PER_DAY;
+			if (tryPost(previous, interestCents, Ledger.INTEREST, postedTime, 0)) {
+				return interestCents;
 			}
-			currTransaction = nextTransaction;
-			if (currTransaction.amount < 0) {
-				daysOfLowAPR = 10;
+		}
+	}
+
+	/*
+	 * Return whether interest has been posted up to the given time. Postings
+	 * are stamped whole days after the previous entry, so a posting less than
+	 * a day before the time has accrued every whole day up to it.
+	 * 
+	 * @param time time in milliseconds since the epoch
+	 * 
+	 * @return true if an interest entry is stamped less than a day before the
+	 * time, or later
+	 */
+	boolean interestPostedThrough(long time) {
+		Ledger.View view = ledger.view();
+		for (int i = view.indexOf(time - DateProvider.MILLIS_PER_DAY + 1); i < view.size(); i++) {
+			if (view.descriptionId(i) == Ledger.INTEREST) {
+				return true;
 			}
-			currBalance += currTransaction.amount;
 		}
+		return false;
+	}
+
+	/*
+	 * Try to append one entry after the given checkpoint, and journal it if
+	 * the account is attached to a journal. Entries of a transfer do not wait
+	 * for the journal to reach the disk, as the transfer still holds its
+	 * account locks; TransferEngine waits once it releases them.
+	 * 
+	 * @param version version of a transfer, or zero to take the current
+	 * version
+	 * 
+	 * @return false if another writer appended first
+	 */
+	private boolean tryPost(Checkpoint previous, long amountCents, int descriptionId, long time, long version) {
+		Checkpoint next = nextCheckpoint(previous, amountCents, time, descriptionId, version == 0 ? VersionClock.current() : version);
+		if (!compareAndAppend(previous, next)) {
+			return false;
+		}
+		Metrics.historyGrew(previous.size, next.size);
+		keepChunkCheckpoint(previous, next);
 
-		daysOfAccumInterest = DateProvider.getInstance().daysSince(currTransaction.getDate());
-		for (int i = 0; i < daysOfAccumInterest; i++) {
-			if (daysOfLowAPR > 0) {
-				currBalance = currBalance * (1 + lowAPR / 365);
-				daysOfLowAPR--;
+		// Read the journal after publishing, so that an account being attached
+		// concurrently either sees this entry or is seen here
+		Journal j = journal;
+		if (j != null) {
+			if (version == 0) {
+				j.logEntries(this, next);
 			} else {
-				currBalance = currBalance * (1 + highAPR / 365);
+				j.appendEntries(this, next);
 			}
 		}
-		double amount = sumTransactions();
-		return currBalance - amount;
+		return true;
 	}
 
 	/*
-	 * Assume all transactions end in the past. Assume customer is well-behaved
-	 * and never allows his balance to go below 0.
+	 * Compute the checkpoint following an entry
+	 * 
+	 * @param previous checkpoint before the entry
+	 * 
+	 * @return checkpoint after the entry
 	 */
-	private double checkingInterestEarned() {
-		if (transactions.isEmpty())
-			return 0;
+	private Checkpoint nextCheckpoint(Checkpoint previous, long amountCents, long time, int descriptionId, long version) {
+		// Entries are stamped in ledger order even if the clock is set back
+		time = Math.max(time, previous.time);
+		double accruedBalance = previous.accruedBalance;
+		int lowRateDaysRemaining = previous.lowRateDaysRemaining;
+		if (previous.size > 0) {
+			int daysOfAccumInterest = DateProvider.getInstance().daysBetween(previous.time, time);
+			accruedBalance = interestEngine.accrue(accruedBalance, lowRateDaysRemaining, daysOfAccumInterest);
+			lowRateDaysRemaining = Math.max(0, lowRateDaysRemaining - daysOfAccumInterest);
+			if (amountCents < 0 && descriptionId != Ledger.INTEREST) {
+				lowRateDaysRemaining = interestEngine.lowRateDaysAfterWithdrawal();
+			}
+		}
+		// Posted interest is already part of the accrued balance
+		if (descriptionId != Ledger.INTEREST) {
+			accruedBalance += Money.toDollars(amountCents);
+		}
+		// Versions never decrease along the ledger
+		long nextVersion = Math.max(version, previous.version);
+		return new Checkpoint(previous.size + 1, amountCents, time, descriptionId, null, nextVersion, previous.balanceCents + amountCents, accruedBalance,
+				lowRateDaysRemaining, versionStart(previous, nextVersion));
+	}
+
+	/*
+	 * Return the version link of the checkpoint following the given one
+	 */
+	private static Checkpoint versionStart(Checkpoint previous, long version) {
+		return version == previous.version ? previous.versionStart : previous.unlinked();
+	}
 
-		double checkingAPR = 0.001;
-		Iterator<Transaction> transactionIterator = transactions.iterator();
-		Transaction currTransaction = transactionIterator.next();
-		double currBalance = currTransaction.amount;
-		int daysOfAccumInterest;
-		while (transactionIterator.hasNext()) {
-			Transaction nextTransaction = transactionIterator.next();
-			daysOfAccumInterest = DateProvider.getInstance().daysSince(currTransaction.getDate(), nextTransaction.getDate());
-			currBalance *= Math.pow(1 + checkingAPR / 365, daysOfAccumInterest);
-			currTransaction = nextTransaction;
-			currBalance += currTransaction.amount;
+	/*
+	 * Publish the checkpoint following the given one. A checkpoint raising
+	 * the ledger's version is published holding the transfer lock, so that a
+	 * transfer which has read its version never finds the ledger past it.
+	 * 
+	 * @return false if another writer appended first
+	 */
+	private boolean compareAndAppend(Checkpoint previous, Checkpoint next) {
+		if (next.version == previous.version) {
+			return ledger.compareAndAppend(previous, next);
 		}
+		synchronized (transferLock) {
+			return ledger.compareAndAppend(previous, next);
+		}
+	}
 
-		daysOfAccumInterest = DateProvider.getInstance().daysSince(currTransaction.getDate());
-		currBalance *= Math.pow(1 + checkingAPR / 365, daysOfAccumInterest);
-		double amount = sumTransactions();
-		return currBalance - amount;
+	/*
+	 * Keep the checkpoint of a newly published tail if it is the first to
+	 * reach into a ledger chunk
+	 */
+	private void keepChunkCheckpoint(Checkpoint previous, Checkpoint next) {
+		int chunk = next.size >>> Ledger.CHUNK_SHIFT;
+		if (chunk == previous.size >>> Ledger.CHUNK_SHIFT) {
+			return;
+		}
+		Checkpoint kept = next.unlinked();
+		for (;;) {
+			Checkpoint[] current = chunkCheckpoints.get();
+			Checkpoint[] grown = Arrays.copyOf(current, Math.max(current.length, chunk + 1));
+			grown[chunk] = kept;
+			if (chunkCheckpoints.compareAndSet(current, grown)) {
+				return;
+			}
+		}
+	}
+
+	/*
+	 * Compute the checkpoint after a range of entries, starting from the end
+	 * of the previous archived period
+	 * 
+	 * @param previous period before the range, or null if the range starts
+	 * the ledger
+	 * 
+	 * @param view view holding the entries
+	 * 
+	 * @param from index of the first entry, where the previous period ends
+	 * 
+	 * @param to index after the last entry
+	 * 
+	 * @return checkpoint after the last entry
+	 */
+	Checkpoint checkpointAfter(PeriodSummary previous, Ledger.View view, int from, int to) {
+		Checkpoint checkpoint;
+		if (previous == null) {
+			checkpoint = new Checkpoint(0, 0, 0, Ledger.DEPOSIT, 0, 0, 0);
+		} else {
+			checkpoint = new Checkpoint(from, 0, previous.getLastTime(), Ledger.DEPOSIT, previous.getClosingBalanceCents(), previous.getAccruedBalance(),
+					previous.getLowRateDaysRemaining());
+		}
+		return checkpointAfter(checkpoint, view, to);
 	}
 
 	/*
-	 * Calculate the sum of all transactions for the account.
+	 * Compute the checkpoint after a range of entries, starting from the
+	 * checkpoint before them
+	 * 
+	 * @param start checkpoint before the first entry
+	 * 
+	 * @param view view holding the entries
+	 * 
+	 * @param to index after the last entry
+	 * 
+	 * @return checkpoint after the last entry
+	 */
+	private Checkpoint checkpointAfter(Checkpoint start, Ledger.View view, int to) {
+		Checkpoint checkpoint = start;
+		for (int i = start.size; i < to; i++) {
+			checkpoint = nextCheckpoint(checkpoint, view.amountCents(i), view.time(i), view.descriptionId(i), view.version(i));
+		}
+		return checkpoint;
+	}
+
+	/*
+	 * Return the summaries of the history moved to an archive
+	 * 
+	 * @return period summaries, oldest first; empty if nothing is archived
+	 */
+	public List<PeriodSummary> getPeriodSummaries() {
+		return ledger.periods();
+	}
+
+	/*
+	 * Return the current balance, kept up to date by every deposit and
+	 * withdrawal
+	 * 
+	 * @return the dollar amount of the balance
+	 */
+	public double getBalance() {
+		return Money.toDollars(getBalanceCents());
+	}
+
+	/*
+	 * Return the exact current balance
+	 * 
+	 * @return the balance in cents
+	 */
+	public long getBalanceCents() {
+		return ((Checkpoint) ledger.tail()).balanceCents;
+	}
+
+	/*
+	 * Load the ledger entries and the checkpoint saved in a snapshot into this
+	 * new account
+	 * 
+	 * @param amounts amount column in cents
+	 * 
+	 * @param times time column
+	 * 
+	 * @param descriptionIds description column
+	 * 
+	 * @param count number of entries
+	 * 
+	 * @param balanceCents balance after the last entry
+	 * 
+	 * @param accruedBalance balance including interest after the last entry
+	 * 
+	 * @param lowRateDaysRemaining low-rate days remaining after the last entry
+	 */
+	void restore(long[] amounts, long[] times, int[] descriptionIds, int count, long balanceCents, double accruedBalance, int lowRateDaysRemaining) {
+		if (count == 0) {
+			return;
+		}
+		int last = count - 1;
+		ledger.load(amounts, times, descriptionIds,
+				new Checkpoint(count, amounts[last], times[last], descriptionIds[last], balanceCents, accruedBalance, lowRateDaysRemaining));
+		Metrics.historyGrew(0, count);
+	}
+
+	/*
+	 * Apply an entry read back from the journal at its original time. Entries
+	 * already in the ledger are skipped, so replay can start anywhere before
+	 * the end of the ledger.
+	 * 
+	 * @param index position of the entry in the ledger
+	 * 
+	 * @param amountCents value in cents, negative for withdrawals
+	 * 
+	 * @param time transaction time in milliseconds since the epoch
+	 * 
+	 * @param descriptionId id of the transaction description
+	 * 
+	 * @return true if the entry was applied, false if it was already present
+	 * 
+	 * @throws IllegalStateException if entries before it are missing
+	 */
+	boolean replay(int index, long amountCents, long time, int descriptionId) {
+		Checkpoint previous = (Checkpoint) ledger.tail();
+		if (index < previous.size) {
+			return false;
+		}
+		if (index > previous.size) {
+			throw new IllegalStateException("account " + accountNumber + " is missing entries before " + index);
+		}
+		if (!tryPost(previous, amountCents, descriptionId, time, 0)) {
+			throw new IllegalStateException("account " + accountNumber + " changed during replay");
+		}
+		return true;
+	}
+
+	/*
+	 * Calculate the sum of all transactions for the account. This is the
+	 * running balance and takes constant time.
 	 * 
 	 * @return the dollar amount of the sum of all transactions
 	 */
 	public double sumTransactions() {
-		double amount = 0.0;
-		synchronized (transactions) {
-			for (Transaction t : transactions)
-				amount += t.amount;
-		}
-		return amount;
+		return getBalance();
+	}
+
+	/*
+	 * Calculate the exact sum of all transactions for the account.
+	 * 
+	 * @return the sum of all transactions in cents
+	 */
+	public long sumTransactionsCents() {
+		return getBalanceCents();
+	}
+
+	/*
+	 * Return a stable snapshot of this account's history
+	 * 
+	 * @return view of every published ledger entry
+	 */
+	Ledger.View view() {
+		return ledger.view();
+	}
+
+	/*
+	 * Return the ledger holding this account's history
+	 * 
+	 * @return ledger
+	 */
+	Ledger getLedger() {
+		return ledger;
 	}
 
 	public Type getAccountType() {
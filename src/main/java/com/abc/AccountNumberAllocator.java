@@ -0,0 +1,226 @@
+package com.abc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Hands out unique account numbers. Each thread reserves a block of numbers
+ * with one atomic increment and then allocates from it without any shared
+ * state, so concurrent account openings do not contend. Optionally, a
+ * high-water mark is persisted ahead of the reserved blocks so that numbers
+ * stay unique across restarts.
+ * 
+ * Numbers run up to Integer.MAX_VALUE; once they are exhausted allocation
+ * fails rather than wrapping around.
+ */
+public final class AccountNumberAllocator {
+	public static final int DEFAULT_BLOCK_SIZE = 64;
+	public static final int DEFAULT_LEASE_SIZE = 64 * 1024;
+
+	private static volatile AccountNumberAllocator instance = new AccountNumberAllocator();
+
+	private final int blockSize;
+	private final int leaseSize;
+	private final Path store;
+	private final AtomicInteger highWater;
+	private final Object persistLock = new Object();
+	private volatile int persistedMark;
+
+	// Bumped by ensureAbove; blocks reserved in an earlier generation may hold
+	// numbers now in use and are dropped
+	private final AtomicInteger generation = new AtomicInteger();
+
+	// Per-thread block of reserved numbers: { next, limit, generation }
+	private final ThreadLocal<int[]> blocks = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[3];
+		}
+	};
+
+	/*
+	 * Create an in-memory allocator starting at account number 1
+	 */
+	public AccountNumberAllocator() {
+		this(null, DEFAULT_BLOCK_SIZE, DEFAULT_LEASE_SIZE);
+	}
+
+	/*
+	 * Create an allocator which persists its high-water mark to the given file.
+	 * Numbers are leased from the file in units of leaseSize so that it is only
+	 * written once every leaseSize allocations.
+	 * 
+	 * @param store file holding the high-water mark, or null to keep it in
+	 * memory only
+	 * 
+	 * @param blockSize number of account numbers reserved by a thread at a time
+	 * 
+	 * @param leaseSize number of account numbers persisted ahead of use
+	 * 
+	 * @throws IllegalArgumentException if the block or lease size is not
+	 * positive
+	 * 
+	 * @throws UncheckedIOException if the store cannot be read
+	 */
+	public AccountNumberAllocator(Path store, int blockSize, int leaseSize) {
+		if (blockSize <= 0 || leaseSize <= 0) {
+			throw new IllegalArgumentException("block and lease sizes must be greater than zero");
+		}
+		this.store = store;
+		this.blockSize = blockSize;
+		this.leaseSize = leaseSize;
+		int start = 1;
+		if (store != null && Files.exists(store)) {
+			start = readMark(store);
+		}
+		this.highWater = new AtomicInteger(start);
+		this.persistedMark = start;
+	}
+
+	/*
+	 * Return the allocator used by new accounts
+	 * 
+	 * @return instance
+	 */
+	public static AccountNumberAllocator getInstance() {
+		return instance;
+	}
+
+	/*
+	 * Replace the allocator used by new accounts, e.g. with a persistent one at
+	 * startup
+	 * 
+	 * @param allocator new allocator
+	 * 
+	 * @throws NullPointerException if the allocator is null
+	 */
+	public static void setInstance(AccountNumberAllocator allocator) {
+		if (allocator == null) {
+			throw new NullPointerException();
+		}
+		instance = allocator;
+	}
+
+	/*
+	 * Allocate the next account number for the calling thread
+	 * 
+	 * @return unique account number
+	 * 
+	 * @throws UncheckedIOException if the high-water mark cannot be persisted
+	 * 
+	 * @throws IllegalStateException if account numbers are exhausted
+	 */
+	public int next() {
+		int[] block = blocks.get();
+		int current = generation.get();
+		if (block[0] == block[1] || block[2] != current) {
+			int start = reserve(blockSize);
+			block[0] = start;
+			block[1] = start + blockSize;
+			block[2] = current;
+		}
+		return block[0]++;
+	}
+
+	/*
+	 * Make sure numbers up to and including the given one are never handed
+	 * out, e.g. after restoring accounts from a snapshot. Blocks already
+	 * reserved by other threads are dropped, as they may hold the number.
+	 * 
+	 * @param accountNumber highest account number already in use
+	 * 
+	 * @throws IllegalStateException if no number above it is left
+	 */
+	public void ensureAbove(int accountNumber) {
+		if (accountNumber == Integer.MAX_VALUE) {
+			throw new IllegalStateException("account numbers exhausted");
+		}
+		int current;
+		while ((current = highWater.get()) <= accountNumber) {
+			if (highWater.compareAndSet(current, accountNumber + 1)) {
+				persist(accountNumber + 1);
+				break;
+			}
+		}
+		// Raise the mark first, so blocks reserved from now on are above it
+		generation.incrementAndGet();
+	}
+
+	/*
+	 * Return the lowest number which has not been reserved by any thread
+	 * 
+	 * @return high-water mark
+	 */
+	public int getHighWaterMark() {
+		return highWater.get();
+	}
+
+	private int reserve(int count) {
+		for (;;) {
+			int start = highWater.get();
+			if (start > Integer.MAX_VALUE - count) {
+				throw new IllegalStateException("account numbers exhausted");
+			}
+			if (highWater.compareAndSet(start, start + count)) {
+				persist(start + count);
+				return start;
+			}
+		}
+	}
+
+	/*
+	 * Make sure the persisted mark covers every number below limit
+	 */
+	private void persist(int limit) {
+		if (store == null || limit <= persistedMark) {
+			return;
+		}
+		synchronized (persistLock) {
+			if (limit <= persistedMark) {
+				return;
+			}
+			int mark = (int) Math.min(Integer.MAX_VALUE, (long) limit + leaseSize);
+			writeMark(store, mark);
+			persistedMark = mark;
+		}
+	}
+
+	private static int readMark(Path store) {
+		try {
+			byte[] bytes = Files.readAllBytes(store);
+			if (bytes.length != 4) {
+				throw new IOException("corrupt account number store " + store);
+			}
+			return ByteBuffer.wrap(bytes).getInt();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Write to a temporary file and move it into place so that a crash never
+	// leaves a partially written mark behind
+	private static void writeMark(Path store, int mark) {
+		Path temp = store.resolveSibling(store.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocate(4).putInt(0, mark);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		try {
+			Files.move(temp, store, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -1,14 +1,168 @@
 package com.abc;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
+/*
+ * Customers of a bank, with lookup indexes and reports over all of them.
+ * 
+ * The customer list can be split into shards by customer id, each with its
+ * own lock and its own executor, so that registrations in different shards
+ * do not contend and reports compute each shard's part in parallel. Every
+ * customer is numbered in the order it was added, and reports merge the
+ * shards back into that order, so a sharded bank reports exactly as an
+ * unsharded one. Transfers never take a shard lock: they lock only the two
+ * accounts, in account number order, before moving the money, so a transfer
+ * between customers of different shards is as atomic and deadlock-free as
+ * any other.
+ */
 public class Bank {
+	// Number of customers below which a report task is not split further
+	private static final int REPORT_SPLIT_THRESHOLD = 256;
 
-	private List<Customer> customers;
+	// Number of customers copied out of the bank at a time by the summary
+	private static final int SUMMARY_PAGE_SIZE = 1024;
+
+	/*
+	 * Part of the customer list, guarded by its own monitor
+	 */
+	private static final class Shard {
+		private Customer[] customers = new Customer[16];
+		// Position of each customer in the order customers were added to the
+		// bank; increasing within a shard
+		private long[] sequences = new long[16];
+		private int size;
+
+		// Runs the shard's part of reports, or null in an unsharded bank
+		private final ExecutorService executor;
+
+		Shard(ExecutorService executor) {
+			this.executor = executor;
+		}
+
+		void add(Customer customer, long sequence) {
+			if (size == customers.length) {
+				customers = Arrays.copyOf(customers, size * 2);
+				sequences = Arrays.copyOf(sequences, size * 2);
+			}
+			customers[size] = customer;
+			sequences[size++] = sequence;
+		}
+	}
+
+	private final Shard[] shards;
+	// Numbers customers in the order they are added
+	private final AtomicLong sequence = new AtomicLong();
+	private volatile ForkJoinPool reportPool;
+
+	// Lookup indexes, maintained as customers are added and accounts opened
+	private final ConcurrentMap<Integer, Customer> customersById = new ConcurrentHashMap<Integer, Customer>();
+	private final ConcurrentMap<String, Customer> customersByName = new ConcurrentHashMap<String, Customer>();
+	private final ConcurrentMap<Integer, Account> accountsByNumber = new ConcurrentHashMap<Integer, Account>();
+	private final ConcurrentMap<Integer, Customer> accountOwners = new ConcurrentHashMap<Integer, Customer>();
+
+	// Write-ahead journal, or null if the bank is kept in memory only
+	private final Journal journal;
 
 	public Bank() {
-		customers = new ArrayList<Customer>();
+		this(null, 1);
+	}
+
+	/*
+	 * Create a bank whose customer list is split into shards
+	 * 
+	 * @param shards number of shards; one gives an unsharded bank
+	 * 
+	 * @throws IllegalArgumentException if the number of shards is not
+	 * positive
+	 */
+	public Bank(int shards) {
+		this(null, shards);
+	}
+
+	/*
+	 * Create a bank which writes its customers, accounts and transactions to
+	 * a journal as they are added
+	 * 
+	 * @param journal write-ahead journal, or null to keep the bank in memory
+	 * only
+	 */
+	public Bank(Journal journal) {
+		this(journal, 1);
+	}
+
+	/*
+	 * Create a bank with a journal and a sharded customer list. Each shard of
+	 * a sharded bank has a daemon thread for its part of reports, stopped by
+	 * shutdown.
+	 * 
+	 * @param journal write-ahead journal, or null to keep the bank in memory
+	 * only
+	 * 
+	 * @param shards number of shards; one gives an unsharded bank
+	 * 
+	 * @throws IllegalArgumentException if the number of shards is not
+	 * positive
+	 */
+	public Bank(Journal journal, int shards) {
+		if (shards <= 0) {
+			throw new IllegalArgumentException("number of shards must be positive");
+		}
+		this.journal = journal;
+		this.shards = new Shard[shards];
+		for (int i = 0; i < shards; i++) {
+			this.shards[i] = new Shard(shards == 1 ? null : Executors.newSingleThreadExecutor(shardThread(i)));
+		}
+	}
+
+	private static ThreadFactory shardThread(final int shard) {
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "bank-shard-" + shard);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/*
+	 * Return the number of shards the customer list is split into
+	 */
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	private Shard shardFor(Customer customer) {
+		return shards[Math.floorMod(customer.getId(), shards.length)];
+	}
+
+	/*
+	 * Append a customer to its shard
+	 */
+	private void register(Customer customer) {
+		Shard shard = shardFor(customer);
+		long requested = Metrics.lockRequested();
+		synchronized (shard) {
+			long acquired = Metrics.lockAcquired(Metrics.Lock.CUSTOMERS, requested);
+			// Numbered under the shard lock so each shard stays in order
+			shard.add(customer, sequence.getAndIncrement());
+			Metrics.lockReleased(Metrics.Lock.CUSTOMERS, acquired);
+		}
 	}
 
 	/*
@@ -22,9 +176,139 @@ public class Bank {
 		if (customer == null) {
 			throw new NullPointerException();
 		}
-		synchronized (customers) {
-			customers.add(customer);
+		register(customer);
+		if (journal != null) {
+			journal.logCustomer(customer);
+		}
+		customersById.put(customer.getId(), customer);
+		if (customer.getName() != null) {
+			customersByName.putIfAbsent(customer.getName(), customer);
+		}
+
+		// Register before indexing the open accounts, so that an account opened
+		// concurrently is either in the snapshot or reported to this bank
+		customer.addBank(this);
+		for (Account account : customer.getAccounts())
+			accountOpened(customer, account);
+	}
+
+	/*
+	 * Add a customer recovered from a snapshot and the journal. The customer's
+	 * accounts are already journaled, so they are attached to the journal
+	 * without writing them again.
+	 * 
+	 * @param customer recovered customer
+	 */
+	void addRecoveredCustomer(Customer customer) {
+		register(customer);
+		customersById.put(customer.getId(), customer);
+		if (customer.getName() != null) {
+			customersByName.putIfAbsent(customer.getName(), customer);
+		}
+		for (Account account : customer.getAccounts()) {
+			if (journal != null) {
+				journal.attachRecovered(account);
+			}
+			accountsByNumber.put(account.getAccountNumber(), account);
+			accountOwners.put(account.getAccountNumber(), customer);
+		}
+		customer.addBank(this);
+	}
+
+	/*
+	 * Return the journal the bank writes to
+	 * 
+	 * @return journal, or null if the bank is kept in memory only
+	 */
+	Journal getJournal() {
+		return journal;
+	}
+
+	/*
+	 * Index an account opened by one of the bank's customers
+	 * 
+	 * @param owner customer holding the account
+	 * 
+	 * @param account new account
+	 */
+	void accountOpened(Customer owner, Account account) {
+		if (journal != null) {
+			journal.logAccount(owner, account);
+		}
+		accountsByNumber.put(account.getAccountNumber(), account);
+		accountOwners.put(account.getAccountNumber(), owner);
+	}
+
+	/*
+	 * Transfer money between any two accounts held by customers of the bank,
+	 * including accounts of different customers
+	 * 
+	 * @param sourceAccountNumber account to withdraw from
+	 * 
+	 * @param destinationAccountNumber account to deposit into
+	 * 
+	 * @param cents amount to transfer in cents
+	 * 
+	 * @throws IllegalArgumentException if either account is not held by a
+	 * customer of the bank, both are the same or the amount is not positive
+	 * 
+	 * @throws IllegalStateException if the source account does not have
+	 * sufficient funds
+	 */
+	public void transfer(int sourceAccountNumber, int destinationAccountNumber, long cents) {
+		Account source = findAccount(sourceAccountNumber);
+		Account destination = findAccount(destinationAccountNumber);
+		if (source == null || destination == null) {
+			throw new IllegalArgumentException("account is not held by a customer of this bank");
 		}
+		TransferEngine.transfer(source, destination, cents);
+	}
+
+	/*
+	 * Find a customer by id
+	 * 
+	 * @param id customer id
+	 * 
+	 * @return customer, or null if no customer with that id has been added
+	 */
+	public Customer findCustomer(int id) {
+		return customersById.get(id);
+	}
+
+	/*
+	 * Find a customer by name. Names are not unique; the first customer added
+	 * with the name is returned.
+	 * 
+	 * @param name customer name
+	 * 
+	 * @return customer, or null if no customer with that name has been added
+	 * 
+	 * @throws NullPointerException if the name is null
+	 */
+	public Customer findCustomer(String name) {
+		return customersByName.get(name);
+	}
+
+	/*
+	 * Find an account held by one of the bank's customers
+	 * 
+	 * @param accountNumber account number
+	 * 
+	 * @return account, or null if no customer of the bank holds it
+	 */
+	public Account findAccount(int accountNumber) {
+		return accountsByNumber.get(accountNumber);
+	}
+
+	/*
+	 * Find the customer holding an account
+	 * 
+	 * @param accountNumber account number
+	 * 
+	 * @return owner, or null if no customer of the bank holds the account
+	 */
+	public Customer findAccountOwner(int accountNumber) {
+		return accountOwners.get(accountNumber);
 	}
 
 	/*
@@ -34,20 +318,242 @@ public class Bank {
 	 * regarding all aucstomers
 	 */
 	public String customerSummary() {
-		String summary = "Customer Summary";
-		synchronized (customers) {
-			for (Customer c : customers)
-				summary += "\n - " + c.getName() + " (" + format(c.getNumberOfAccounts(), "account") + ")";
+		StringBuilder summary = new StringBuilder();
+		try {
+			writeCustomerSummary(summary, 0, Integer.MAX_VALUE);
+		} catch (IOException e) {
+			// StringBuilder does not throw IOException
+			throw new UncheckedIOException(e);
 		}
-		return summary;
+		return summary.toString();
+	}
+
+	/*
+	 * Write one page of the customer summary. Customers are copied out of the
+	 * bank a page at a time, holding the bank lock only for each copy, so
+	 * memory stays bounded and customers can be added while the summary is
+	 * written. A sharded bank reads each shard a page at a time in the same
+	 * way and merges the pages into the order customers were added. Customers
+	 * added after the call starts are not included. To write to an NIO
+	 * channel, wrap it with java.nio.channels.Channels.newWriter.
+	 * 
+	 * @param out destination of the summary
+	 * 
+	 * @param offset index of the first customer to include
+	 * 
+	 * @param limit maximum number of customers to include
+	 * 
+	 * @return number of customers written
+	 * 
+	 * @throws IOException if writing to the destination fails
+	 * 
+	 * @throws IllegalArgumentException if the offset or limit is negative
+	 */
+	public int writeCustomerSummary(Appendable out, int offset, int limit) throws IOException {
+		if (offset < 0 || limit < 0) {
+			throw new IllegalArgumentException("offset and limit must not be negative");
+		}
+		long started = Metrics.start();
+		out.append("Customer Summary");
+		int written = shards.length == 1 ? writeSummaryPages(out, offset, limit) : writeMergedSummaryPages(out, offset, limit);
+		Metrics.record(Metrics.Operation.CUSTOMER_SUMMARY, started);
+		return written;
+	}
+
+	private int writeSummaryPages(Appendable out, int offset, int limit) throws IOException {
+		int end = (int) Math.min((long) offset + limit, getNumberOfCustomers());
+		Customer[] page = new Customer[Math.max(0, Math.min(SUMMARY_PAGE_SIZE, end - offset))];
+		int written = 0;
+		for (int from = offset; from < end; from += page.length) {
+			int n = Math.min(page.length, end - from);
+			Shard shard = shards[0];
+			long requested = Metrics.lockRequested();
+			synchronized (shard) {
+				long acquired = Metrics.lockAcquired(Metrics.Lock.CUSTOMERS, requested);
+				System.arraycopy(shard.customers, from, page, 0, n);
+				Metrics.lockReleased(Metrics.Lock.CUSTOMERS, acquired);
+			}
+			for (int i = 0; i < n; i++) {
+				appendSummaryLine(out, page[i]);
+				page[i] = null;
+			}
+			written += n;
+		}
+		return written;
+	}
+
+	/*
+	 * Write the summary of a sharded bank, merging the shards a page at a
+	 * time. Each cursor first skips to its share of the customers before the
+	 * offset, so a page costs the same wherever it starts.
+	 */
+	private int writeMergedSummaryPages(Appendable out, int offset, int limit) throws IOException {
+		ShardCursor[] cursors = new ShardCursor[shards.length];
+		long total = 0;
+		for (int s = 0; s < shards.length; s++) {
+			cursors[s] = new ShardCursor(shards[s], Math.max(1, SUMMARY_PAGE_SIZE / shards.length));
+			total += cursors[s].end;
+		}
+		if (offset >= total) {
+			return 0;
+		}
+		seek(cursors, offset);
+		long end = Math.min((long) offset + limit, total);
+		int written = 0;
+		for (long i = offset; i < end; i++) {
+			ShardCursor from = null;
+			for (ShardCursor cursor : cursors) {
+				if (cursor.hasNext() && (from == null || cursor.sequence() < from.sequence())) {
+					from = cursor;
+				}
+			}
+			appendSummaryLine(out, from.next());
+			written++;
+		}
+		return written;
+	}
+
+	/*
+	 * Move the cursors past the first customers of the merged order. Sequence
+	 * numbers are distinct, so the number of customers below a sequence
+	 * number rises by one at each customer; a binary search finds the
+	 * sequence number with exactly that many customers below it.
+	 */
+	private void seek(ShardCursor[] cursors, int customers) {
+		long low = 0;
+		long high = sequence.get();
+		// Invariant: at most the given number of customers are below low, and
+		// more than that are below high
+		while (high - low > 1) {
+			long middle = (low + high) >>> 1;
+			long below = 0;
+			for (ShardCursor cursor : cursors) {
+				below += cursor.countBelow(middle);
+			}
+			if (below <= customers) {
+				low = middle;
+			} else {
+				high = middle;
+			}
+		}
+		for (ShardCursor cursor : cursors) {
+			cursor.skipTo(cursor.countBelow(low));
+		}
+	}
+
+	/*
+	 * Reads the customers a shard held when the cursor was created, a page at
+	 * a time, with their sequence numbers
+	 */
+	private static final class ShardCursor {
+		private final Shard shard;
+		private final int end;
+		// The shard's sequence numbers when the cursor was created. The shard
+		// only appends beyond the end, and copies to a new array to grow, so
+		// the part below the end can be searched without the lock.
+		private final long[] shardSequences;
+		private final Customer[] customers;
+		private final long[] sequences;
+		// Index in the shard of the next page, and position in the current one
+		private int read;
+		private int position;
+		private int count;
+
+		ShardCursor(Shard shard, int pageSize) {
+			this.shard = shard;
+			long requested = Metrics.lockRequested();
+			synchronized (shard) {
+				long acquired = Metrics.lockAcquired(Metrics.Lock.CUSTOMERS, requested);
+				this.end = shard.size;
+				this.shardSequences = shard.sequences;
+				Metrics.lockReleased(Metrics.Lock.CUSTOMERS, acquired);
+			}
+			this.customers = new Customer[Math.min(pageSize, end)];
+			this.sequences = new long[customers.length];
+		}
+
+		/*
+		 * Number of the cursor's customers numbered below the given sequence
+		 */
+		int countBelow(long sequence) {
+			int index = Arrays.binarySearch(shardSequences, 0, end, sequence);
+			return index >= 0 ? index : -index - 1;
+		}
+
+		/*
+		 * Continue from the given index in the shard, dropping the current page
+		 */
+		void skipTo(int index) {
+			Arrays.fill(customers, 0, count, null);
+			read = index;
+			position = 0;
+			count = 0;
+		}
+
+		boolean hasNext() {
+			return position < count || read < end;
+		}
+
+		long sequence() {
+			fill();
+			return sequences[position];
+		}
+
+		Customer next() {
+			fill();
+			Customer customer = customers[position];
+			customers[position++] = null;
+			return customer;
+		}
+
+		private void fill() {
+			if (position < count) {
+				return;
+			}
+			int n = Math.min(customers.length, end - read);
+			long requested = Metrics.lockRequested();
+			synchronized (shard) {
+				long acquired = Metrics.lockAcquired(Metrics.Lock.CUSTOMERS, requested);
+				System.arraycopy(shard.customers, read, customers, 0, n);
+				System.arraycopy(shard.sequences, read, sequences, 0, n);
+				Metrics.lockReleased(Metrics.Lock.CUSTOMERS, acquired);
+			}
+			read += n;
+			position = 0;
+			count = n;
+		}
+	}
+
+	private static void appendSummaryLine(Appendable out, Customer customer) throws IOException {
+		out.append("\n - ").append(customer.getName()).append(" (");
+		appendCount(out, customer.getNumberOfAccounts(), "account");
+		out.append(')');
 	}
 
 	// Make sure correct plural of word is created based on the number passed
 	// in:
 	// If number passed in is 1 just return the word otherwise add an 's' at the
 	// end
-	private String format(int number, String word) {
-		return number + " " + (number == 1 ? word : word + "s");
+	static void appendCount(Appendable out, int number, String word) throws IOException {
+		out.append(Integer.toString(number)).append(' ').append(word);
+		if (number != 1)
+			out.append('s');
+	}
+
+	/*
+	 * Take a consistent point-in-time view of every account, for reports
+	 * which must agree with each other. Writers are not blocked: the snapshot
+	 * advances the VersionClock, waits only for transfers already under way
+	 * at its version, then reads each ledger up to the entries posted before
+	 * it started. No transfer is seen half applied, and no entry is seen
+	 * without the entries posted before it on any account. Customers and
+	 * accounts are those in the bank when the snapshot is read.
+	 * 
+	 * @return immutable snapshot of the bank
+	 */
+	public BankSnapshot snapshot() {
+		long version = VersionClock.stableVersion();
+		return new BankSnapshot(version, DateProvider.getInstance().currentTimeMillis(), customerSnapshot());
 	}
 
 	/*
@@ -56,25 +562,234 @@ public class Bank {
 	 * @return dollar value for total interest paid to all customers
 	 */
 	public double totalInterestPaid() {
-		double total = 0;
-		synchronized (customers) {
-			for (Customer c : customers)
-				total += c.totalInterestEarned();
+		return Money.toDollars(totalInterestPaidCents());
+	}
+
+	/*
+	 * Returns the exact sum of interest paid across all customers who are part
+	 * of the bank
+	 * 
+	 * @return total interest paid in cents
+	 */
+	public long totalInterestPaidCents() {
+		long started = Metrics.start();
+		long total = 0;
+		ForkJoinPool pool = reportPool;
+		if (pool != null) {
+			Customer[] snapshot = customerSnapshot();
+			total = pool.invoke(new InterestTask(snapshot, 0, snapshot.length));
+		} else if (shards.length == 1) {
+			Shard shard = shards[0];
+			long requested = Metrics.lockRequested();
+			synchronized (shard) {
+				long acquired = Metrics.lockAcquired(Metrics.Lock.CUSTOMERS, requested);
+				for (int i = 0; i < shard.size; i++)
+					total += Money.toCents(shard.customers[i].totalInterestEarned());
+				Metrics.lockReleased(Metrics.Lock.CUSTOMERS, acquired);
+			}
+		} else {
+			total = shardedInterestPaidCents();
+		}
+		Metrics.record(Metrics.Operation.TOTAL_INTEREST_PAID, started);
+		return total;
+	}
+
+	/*
+	 * Sum the interest of each shard on the shard's executor, copying the
+	 * shard's list under its own lock
+	 */
+	private long shardedInterestPaidCents() {
+		List<Future<Long>> parts = new ArrayList<Future<Long>>(shards.length);
+		for (final Shard shard : shards) {
+			parts.add(shard.executor.submit(new Callable<Long>() {
+				@Override
+				public Long call() {
+					long total = 0;
+					for (Customer c : copy(shard))
+						total += Money.toCents(c.totalInterestEarned());
+					return total;
+				}
+			}));
+		}
+		long total = 0;
+		boolean interrupted = false;
+		for (Future<Long> part : parts) {
+			for (;;) {
+				try {
+					total += part.get();
+					break;
+				} catch (InterruptedException e) {
+					// Finish the report and restore the interrupt afterwards
+					interrupted = true;
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof RuntimeException) {
+						throw (RuntimeException) e.getCause();
+					}
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
 		}
 		return total;
 	}
 
+	/*
+	 * Compute reports in parallel on a dedicated ForkJoin pool. Reports then
+	 * work from a snapshot of the customer and account lists and do not hold
+	 * the bank-wide lock while computing. Interest is summed exactly in cents,
+	 * so the result is the same as the sequential report.
+	 * 
+	 * @param parallelism number of worker threads, or zero to compute reports
+	 * sequentially on the calling thread
+	 * 
+	 * @throws IllegalArgumentException if the parallelism is negative
+	 */
+	public void setReportParallelism(int parallelism) {
+		if (parallelism < 0) {
+			throw new IllegalArgumentException("parallelism must not be negative");
+		}
+		ForkJoinPool previous = reportPool;
+		reportPool = parallelism == 0 ? null : new ForkJoinPool(parallelism);
+		if (previous != null) {
+			previous.shutdown();
+		}
+	}
+
+	/*
+	 * Stop the shard executors and the report pool. Reports of a sharded bank
+	 * must not be requested afterwards.
+	 */
+	public void shutdown() {
+		for (Shard shard : shards) {
+			if (shard.executor != null) {
+				shard.executor.shutdown();
+			}
+		}
+		setReportParallelism(0);
+	}
+
+	/*
+	 * Return the number of customers in the bank
+	 * 
+	 * @return number of customers
+	 */
+	public int getNumberOfCustomers() {
+		int size = 0;
+		for (Shard shard : shards) {
+			long requested = Metrics.lockRequested();
+			synchronized (shard) {
+				long acquired = Metrics.lockAcquired(Metrics.Lock.CUSTOMERS, requested);
+				size += shard.size;
+				Metrics.lockReleased(Metrics.Lock.CUSTOMERS, acquired);
+			}
+		}
+		return size;
+	}
+
+	/*
+	 * Copy the customer list while holding the lock only for the copy. The
+	 * shards of a sharded bank are copied one at a time and merged into the
+	 * order customers were added.
+	 */
+	Customer[] customerSnapshot() {
+		if (shards.length == 1) {
+			return copy(shards[0]);
+		}
+		Customer[][] customers = new Customer[shards.length][];
+		long[][] sequences = new long[shards.length][];
+		int total = 0;
+		for (int s = 0; s < shards.length; s++) {
+			Shard shard = shards[s];
+			long requested = Metrics.lockRequested();
+			synchronized (shard) {
+				long acquired = Metrics.lockAcquired(Metrics.Lock.CUSTOMERS, requested);
+				customers[s] = Arrays.copyOf(shard.customers, shard.size);
+				sequences[s] = Arrays.copyOf(shard.sequences, shard.size);
+				Metrics.lockReleased(Metrics.Lock.CUSTOMERS, acquired);
+			}
+			total += customers[s].length;
+		}
+
+		// Merge by sequence; there are few shards, so each step scans their
+		// heads
+		Customer[] snapshot = new Customer[total];
+		int[] next = new int[shards.length];
+		for (int i = 0; i < total; i++) {
+			int from = -1;
+			for (int s = 0; s < shards.length; s++) {
+				if (next[s] < customers[s].length && (from < 0 || sequences[s][next[s]] < sequences[from][next[from]])) {
+					from = s;
+				}
+			}
+			snapshot[i] = customers[from][next[from]++];
+		}
+		return snapshot;
+	}
+
+	private static Customer[] copy(Shard shard) {
+		Customer[] snapshot;
+		long requested = Metrics.lockRequested();
+		synchronized (shard) {
+			long acquired = Metrics.lockAcquired(Metrics.Lock.CUSTOMERS, requested);
+			snapshot = Arrays.copyOf(shard.customers, shard.size);
+			Metrics.lockReleased(Metrics.Lock.CUSTOMERS, acquired);
+		}
+		return snapshot;
+	}
+
+	/*
+	 * Sums the interest earned on every account of a range of customers,
+	 * splitting the range across the pool
+	 */
+	private static final class InterestTask extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L;
+
+		private final Customer[] customers;
+		private final int from;
+		private final int to;
+
+		InterestTask(Customer[] customers, int from, int to) {
+			this.customers = customers;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Long compute() {
+			if (to - from <= REPORT_SPLIT_THRESHOLD) {
+				long total = 0;
+				for (int i = from; i < to; i++) {
+					for (Account a : customers[i].getAccounts())
+						total += a.interestEarnedCents();
+				}
+				return total;
+			}
+			int middle = (from + to) >>> 1;
+			InterestTask left = new InterestTask(customers, from, middle);
+			left.fork();
+			long right = new InterestTask(customers, middle, to).compute();
+			return right + left.join();
+		}
+	}
+
 	/*
 	 * Returns the name of the first customer for the bank
 	 * 
 	 * @return name of the first customer
 	 */
 	public String getFirstCustomer() {
-		synchronized (customers) {
-			if (customers.isEmpty()) {
-				return null;
+		Customer first = null;
+		long firstSequence = Long.MAX_VALUE;
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				if (shard.size > 0 && shard.sequences[0] < firstSequence) {
+					first = shard.customers[0];
+					firstSequence = shard.sequences[0];
+				}
 			}
-			return customers.get(0).getName();
 		}
+		return first == null ? null : first.getName();
 	}
 }
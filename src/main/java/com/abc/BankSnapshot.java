@@ -0,0 +1,215 @@
+package com.abc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Point-in-time view of a bank, taken by Bank.snapshot. Every account is read
+ * as of one version of the VersionClock, so the reports of a snapshot agree
+ * with each other: a transfer is counted on both sides or on neither, an
+ * entry is counted only with every entry posted before it, and interest is
+ * accrued up to the time the snapshot was taken.
+ * 
+ * Taking a snapshot copies no ledger entries; it keeps the length of each
+ * ledger and the checkpoint there, and reports read the entries in place
+ * while writers keep appending. A snapshot may be read from any thread.
+ */
+public final class BankSnapshot {
+	private final long version;
+	private final long time;
+	private final Customer[] customers;
+	private final List<List<Account>> accounts;
+	private final Account.Snapshot[][] states;
+	private final Map<Integer, Integer> customerIndexes = new HashMap<Integer, Integer>();
+	private final Map<Integer, Account.Snapshot> accountsByNumber = new HashMap<Integer, Account.Snapshot>();
+
+	/*
+	 * Read the given customers' accounts as of a version
+	 * 
+	 * @param version version to read at; transfers at or below it must have
+	 * finished
+	 * 
+	 * @param time time interest is accrued to, in milliseconds since the
+	 * epoch
+	 * 
+	 * @param customers customers of the bank in the order they were added
+	 */
+	BankSnapshot(long version, long time, Customer[] customers) {
+		this.version = version;
+		this.time = time;
+		this.customers = customers;
+		this.accounts = new ArrayList<List<Account>>(customers.length);
+		this.states = new Account.Snapshot[customers.length][];
+		for (int c = 0; c < customers.length; c++) {
+			customerIndexes.put(customers[c].getId(), c);
+			List<Account> owned = customers[c].getAccounts();
+			accounts.add(owned);
+			states[c] = new Account.Snapshot[owned.size()];
+			for (int a = 0; a < states[c].length; a++) {
+				Account account = owned.get(a);
+				states[c][a] = account.snapshot(version);
+				accountsByNumber.put(account.getAccountNumber(), states[c][a]);
+			}
+		}
+	}
+
+	/*
+	 * Return the version the accounts were read at
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/*
+	 * Return the time interest is accrued to
+	 * 
+	 * @return milliseconds since the epoch
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	public int getNumberOfCustomers() {
+		return customers.length;
+	}
+
+	/*
+	 * Return the customer summary, in the format of Bank.customerSummary
+	 * 
+	 * @return user-friendly English string listing every customer
+	 */
+	public String customerSummary() {
+		StringBuilder summary = new StringBuilder("Customer Summary");
+		try {
+			for (int c = 0; c < customers.length; c++) {
+				summary.append("\n - ").append(customers[c].getName()).append(" (");
+				Bank.appendCount(summary, states[c].length, "account");
+				summary.append(')');
+			}
+		} catch (IOException e) {
+			// StringBuilder does not throw IOException
+			throw new UncheckedIOException(e);
+		}
+		return summary.toString();
+	}
+
+	/*
+	 * Return the statement of a customer, in the format of
+	 * Customer.getStatement
+	 * 
+	 * @param customer customer of the bank
+	 * 
+	 * @return a user readable formatted statement in English
+	 * 
+	 * @throws IllegalArgumentException if the customer was not in the bank
+	 * when the snapshot was taken
+	 */
+	public String getStatement(Customer customer) {
+		StringBuilder statement = new StringBuilder();
+		try {
+			writeStatement(statement, customer);
+		} catch (IOException e) {
+			// StringBuilder does not throw IOException
+			throw new UncheckedIOException(e);
+		}
+		return statement.toString();
+	}
+
+	/*
+	 * Write the statement of a customer directly to a writer or buffer
+	 * 
+	 * @param out destination of the statement
+	 * 
+	 * @param customer customer of the bank
+	 * 
+	 * @throws IOException if writing to the destination fails
+	 * 
+	 * @throws IllegalArgumentException if the customer was not in the bank
+	 * when the snapshot was taken
+	 */
+	public void writeStatement(Appendable out, Customer customer) throws IOException {
+		Integer c = customerIndexes.get(customer.getId());
+		if (c == null) {
+			throw new IllegalArgumentException("customer is not in the snapshot");
+		}
+		Ledger.View[] views = new Ledger.View[states[c].length];
+		for (int a = 0; a < views.length; a++) {
+			views[a] = states[c][a].view();
+		}
+		customers[c].writeStatement(out, accounts.get(c), views);
+	}
+
+	/*
+	 * Return the interest earned across all customers up to the time of the
+	 * snapshot, with each account's interest rounded to whole cents as
+	 * Bank.totalInterestPaidCents does
+	 * 
+	 * @return total interest in cents
+	 */
+	public long totalInterestPaidCents() {
+		long total = 0;
+		for (int c = 0; c < customers.length; c++) {
+			for (int a = 0; a < states[c].length; a++) {
+				total += Money.toCents(accounts.get(c).get(a).interestEarned(states[c][a].checkpoint, time));
+			}
+		}
+		return total;
+	}
+
+	public double totalInterestPaid() {
+		return Money.toDollars(totalInterestPaidCents());
+	}
+
+	/*
+	 * Return the sum of every account's balance
+	 * 
+	 * @return total balance in cents
+	 */
+	public long totalBalanceCents() {
+		long total = 0;
+		for (Account.Snapshot state : accountsByNumber.values()) {
+			total += state.checkpoint.balanceCents;
+		}
+		return total;
+	}
+
+	/*
+	 * Return the balance of an account
+	 * 
+	 * @param accountNumber account number
+	 * 
+	 * @return balance in cents
+	 * 
+	 * @throws IllegalArgumentException if the account was not in the bank
+	 * when the snapshot was taken
+	 */
+	public long getBalanceCents(int accountNumber) {
+		return state(accountNumber).checkpoint.balanceCents;
+	}
+
+	/*
+	 * Return the transactions of an account
+	 * 
+	 * @param accountNumber account number
+	 * 
+	 * @return transactions in ledger order
+	 * 
+	 * @throws IllegalArgumentException if the account was not in the bank
+	 * when the snapshot was taken
+	 */
+	public List<Transaction> getTransactions(int accountNumber) {
+		return state(accountNumber).view().toTransactions();
+	}
+
+	private Account.Snapshot state(int accountNumber) {
+		Account.Snapshot state = accountsByNumber.get(accountNumber);
+		if (state == null) {
+			throw new IllegalArgumentException("account " + accountNumber + " is not in the snapshot");
+		}
+		return state;
+	}
+}
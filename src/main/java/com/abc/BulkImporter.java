@@ -0,0 +1,618 @@
+package com.abc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Imports transaction feed files into the accounts of a bank.
+ * 
+ * Each line of a feed holds an account number, an amount in dollars with at
+ * most two decimal places, negative for withdrawals, and an optional
+ * description, separated by commas; the description runs to the end of the
+ * line and may itself contain commas. Blank lines are skipped.
+ * 
+ * The file is memory-mapped and cut into chunks at line boundaries, which are
+ * parsed in parallel straight from the mapped bytes into primitive columns.
+ * Descriptions are interned through a per-chunk cache keyed by their bytes,
+ * so a String is only created the first time a chunk sees a description.
+ * Rows are then grouped by account, keeping their order in the file, and
+ * posted in batches with Account.applyEntries. Rows which cannot be parsed,
+ * name an unknown account or belong to a batch the account rejects are
+ * counted and sampled in the report instead of failing the import.
+ */
+public final class BulkImporter implements Closeable {
+	static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+
+	// Largest number of entries posted to an account at once
+	static final int BATCH_SIZE = 4096;
+
+	// Rejected rows kept in a report
+	static final int MAX_REJECT_SAMPLES = 100;
+
+	// Digits allowed before the decimal point, so that cents fit in a long
+	private static final int MAX_DOLLAR_DIGITS = 15;
+
+	private static final AtomicInteger poolNumber = new AtomicInteger();
+
+	private final Bank bank;
+	private final int parallelism;
+	private final int chunkSize;
+	private final ExecutorService workers;
+
+	/*
+	 * Create an importer for the given bank
+	 * 
+	 * @param bank bank holding the accounts named in the feeds
+	 * 
+	 * @param parallelism number of worker threads
+	 * 
+	 * @throws NullPointerException if the bank is null
+	 * 
+	 * @throws IllegalArgumentException if the parallelism is not positive
+	 */
+	public BulkImporter(Bank bank, int parallelism) {
+		this(bank, parallelism, DEFAULT_CHUNK_SIZE);
+	}
+
+	BulkImporter(Bank bank, int parallelism, int chunkSize) {
+		if (bank == null) {
+			throw new NullPointerException();
+		}
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("parallelism must be positive");
+		}
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("chunk size must be positive");
+		}
+		this.bank = bank;
+		this.parallelism = parallelism;
+		this.chunkSize = chunkSize;
+		final int pool = poolNumber.incrementAndGet();
+		this.workers = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "bulk-import-" + pool + "-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/*
+	 * Import every row of a feed file
+	 * 
+	 * @param file feed file
+	 * 
+	 * @return report of the run
+	 * 
+	 * @throws UncheckedIOException if the file cannot be read
+	 * 
+	 * @throws InterruptedException if interrupted while waiting for the workers
+	 */
+	public ImportReport importFile(Path file) throws InterruptedException {
+		long started = System.nanoTime();
+		final List<MappedByteBuffer> regions;
+		long bytes;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			bytes = channel.size();
+			regions = split(channel);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		long splitDone = System.nanoTime();
+
+		List<Callable<ParsedChunk>> parsers = new ArrayList<Callable<ParsedChunk>>(regions.size());
+		for (final MappedByteBuffer region : regions) {
+			parsers.add(new Callable<ParsedChunk>() {
+				@Override
+				public ParsedChunk call() {
+					return parse(region);
+				}
+			});
+		}
+		List<ParsedChunk> chunks = runAll(parsers);
+		long parseDone = System.nanoTime();
+
+		Outcome outcome = new Outcome();
+		List<Group> groups = group(chunks, outcome);
+		long groupDone = System.nanoTime();
+
+		List<Callable<Outcome>> appliers = new ArrayList<Callable<Outcome>>();
+		int slices = Math.min(groups.size(), parallelism * 4);
+		for (int s = 0; s < slices; s++) {
+			final List<Group> slice = groups.subList(s * groups.size() / slices, (s + 1) * groups.size() / slices);
+			appliers.add(new Callable<Outcome>() {
+				@Override
+				public Outcome call() {
+					Outcome applied = new Outcome();
+					for (Group group : slice) {
+						apply(group, applied);
+					}
+					return applied;
+				}
+			});
+		}
+		for (Outcome applied : runAll(appliers)) {
+			outcome.add(applied);
+		}
+		long applyDone = System.nanoTime();
+
+		long rows = 0;
+		for (ParsedChunk chunk : chunks) {
+			rows += chunk.rows;
+		}
+		Collections.sort(outcome.rejects, new Comparator<ImportReport.Reject>() {
+			@Override
+			public int compare(ImportReport.Reject a, ImportReport.Reject b) {
+				return Long.compare(a.getLine(), b.getLine());
+			}
+		});
+		List<ImportReport.Reject> sample = new ArrayList<ImportReport.Reject>(
+				outcome.rejects.subList(0, Math.min(MAX_REJECT_SAMPLES, outcome.rejects.size())));
+		return new ImportReport(bytes, rows, outcome.imported, outcome.rejected, sample, splitDone - started, parseDone - splitDone,
+				groupDone - parseDone, applyDone - groupDone);
+	}
+
+	/*
+	 * Stop the worker threads
+	 */
+	@Override
+	public void close() {
+		workers.shutdown();
+	}
+
+	/*
+	 * Cut the file into regions of about chunkSize bytes, each ending just
+	 * after a newline or at the end of the file, and map them
+	 */
+	private List<MappedByteBuffer> split(FileChannel channel) throws IOException {
+		List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+		ByteBuffer probe = ByteBuffer.allocate(4096);
+		long size = channel.size();
+		long start = 0;
+		while (start < size) {
+			long end = start + chunkSize;
+			if (end >= size) {
+				end = size;
+			} else {
+				end = nextLineStart(channel, probe, end, size);
+			}
+			if (end - start > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("line at byte " + start + " is too long");
+			}
+			regions.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+			start = end;
+		}
+		return regions;
+	}
+
+	private static long nextLineStart(FileChannel channel, ByteBuffer probe, long from, long size) throws IOException {
+		long position = from;
+		while (position < size) {
+			probe.clear();
+			int read = channel.read(probe, position);
+			if (read < 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (probe.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/*
+	 * Parse every line of a region into primitive columns
+	 */
+	private static ParsedChunk parse(ByteBuffer region) {
+		ParsedChunk chunk = new ParsedChunk();
+		DescriptionCache descriptions = new DescriptionCache();
+		int limit = region.limit();
+		int position = 0;
+		while (position < limit) {
+			int lineEnd = position;
+			while (lineEnd < limit && region.get(lineEnd) != '\n') {
+				lineEnd++;
+			}
+			chunk.lines++;
+			int end = lineEnd;
+			if (end > position && region.get(end - 1) == '\r') {
+				end--;
+			}
+			if (end > position) {
+				chunk.rows++;
+				parseRow(region, position, end, chunk, descriptions);
+			}
+			position = lineEnd + 1;
+		}
+		return chunk;
+	}
+
+	private static void parseRow(ByteBuffer region, int from, int end, ParsedChunk chunk, DescriptionCache descriptions) {
+		int line = chunk.lines;
+		int p = skipSpaces(region, from, end);
+		int digitsStart = p;
+		long accountNumber = 0;
+		while (p < end && isDigit(region.get(p))) {
+			accountNumber = accountNumber * 10 + (region.get(p) - '0');
+			if (accountNumber > Integer.MAX_VALUE) {
+				chunk.reject(line, "malformed account number");
+				return;
+			}
+			p++;
+		}
+		if (p == digitsStart) {
+			chunk.reject(line, "malformed account number");
+			return;
+		}
+		p = skipSpaces(region, p, end);
+		if (p == end || region.get(p) != ',') {
+			chunk.reject(line, "expected ',' after account number");
+			return;
+		}
+		p = skipSpaces(region, p + 1, end);
+
+		boolean negative = false;
+		if (p < end && (region.get(p) == '-' || region.get(p) == '+')) {
+			negative = region.get(p) == '-';
+			p++;
+		}
+		long cents = 0;
+		int dollarDigits = 0;
+		while (p < end && isDigit(region.get(p))) {
+			if (++dollarDigits > MAX_DOLLAR_DIGITS) {
+				chunk.reject(line, "amount out of range");
+				return;
+			}
+			cents = cents * 10 + (region.get(p) - '0');
+			p++;
+		}
+		int fractionDigits = 0;
+		if (p < end && region.get(p) == '.') {
+			p++;
+			while (p < end && isDigit(region.get(p))) {
+				if (++fractionDigits > 2) {
+					chunk.reject(line, "amount has more than two decimal places");
+					return;
+				}
+				cents = cents * 10 + (region.get(p) - '0');
+				p++;
+			}
+		}
+		if (dollarDigits == 0 && fractionDigits == 0) {
+			chunk.reject(line, "malformed amount");
+			return;
+		}
+		for (int i = fractionDigits; i < 2; i++) {
+			cents *= 10;
+		}
+		if (cents == 0) {
+			chunk.reject(line, "amount must not be zero");
+			return;
+		}
+		if (negative) {
+			cents = -cents;
+		}
+		p = skipSpaces(region, p, end);
+
+		int descriptionId = cents > 0 ? Ledger.DEPOSIT : Ledger.WITHDRAWAL;
+		if (p < end) {
+			if (region.get(p) != ',') {
+				chunk.reject(line, "malformed amount");
+				return;
+			}
+			p++;
+			if (p < end) {
+				if (end - p > Journal.MAX_STRING_BYTES) {
+					chunk.reject(line, "description too long");
+					return;
+				}
+				descriptionId = descriptions.lookup(region, p, end);
+				if (descriptionId == Ledger.INTEREST) {
+					chunk.reject(line, "description is reserved for interest postings");
+					return;
+				}
+			}
+		}
+		chunk.add((int) accountNumber, cents, descriptionId, line);
+	}
+
+	private static int skipSpaces(ByteBuffer region, int p, int end) {
+		while (p < end && region.get(p) == ' ') {
+			p++;
+		}
+		return p;
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	/*
+	 * Gather the rows of every chunk by account, in file order. Each chunk is
+	 * sorted by account in parallel, then the sorted runs are appended to
+	 * their account's group one run at a time.
+	 */
+	private List<Group> group(final List<ParsedChunk> chunks, Outcome outcome) throws InterruptedException {
+		List<Callable<long[]>> sorters = new ArrayList<Callable<long[]>>(chunks.size());
+		for (final ParsedChunk chunk : chunks) {
+			sorters.add(new Callable<long[]>() {
+				@Override
+				public long[] call() {
+					// Account number in the high half and row in the low half,
+					// so rows of an account stay in order
+					long[] keys = new long[chunk.count];
+					for (int i = 0; i < chunk.count; i++) {
+						keys[i] = ((long) chunk.accounts[i] << 32) | i;
+					}
+					Arrays.sort(keys);
+					return keys;
+				}
+			});
+		}
+		List<long[]> sorted = runAll(sorters);
+
+		Map<Integer, Group> groups = new HashMap<Integer, Group>();
+		List<Group> ordered = new ArrayList<Group>();
+		long firstLine = 1;
+		for (int c = 0; c < chunks.size(); c++) {
+			ParsedChunk chunk = chunks.get(c);
+			for (ImportReport.Reject reject : chunk.rejects) {
+				outcome.reject(firstLine - 1 + reject.getLine(), reject.getReason());
+			}
+			outcome.rejected += chunk.rejected - chunk.rejects.size();
+
+			long[] keys = sorted.get(c);
+			int i = 0;
+			while (i < keys.length) {
+				int accountNumber = (int) (keys[i] >>> 32);
+				int runEnd = i + 1;
+				while (runEnd < keys.length && (int) (keys[runEnd] >>> 32) == accountNumber) {
+					runEnd++;
+				}
+				Group group = groups.get(accountNumber);
+				if (group == null) {
+					group = new Group(bank.findAccount(accountNumber));
+					groups.put(accountNumber, group);
+					if (group.account != null) {
+						ordered.add(group);
+					}
+				}
+				for (int k = i; k < runEnd; k++) {
+					int row = (int) keys[k];
+					long line = firstLine - 1 + chunk.lineNumbers[row];
+					if (group.account == null) {
+						outcome.reject(line, "unknown account " + accountNumber);
+					} else {
+						group.add(chunk.amounts[row], chunk.descriptionIds[row], line);
+					}
+				}
+				i = runEnd;
+			}
+			firstLine += chunk.lines;
+		}
+		return ordered;
+	}
+
+	/*
+	 * Post a group's rows to its account in batches
+	 */
+	private static void apply(Group group, Outcome outcome) {
+		for (int from = 0; from < group.count; from += BATCH_SIZE) {
+			int to = Math.min(group.count, from + BATCH_SIZE);
+			try {
+				group.account.applyEntries(Arrays.copyOfRange(group.amounts, from, to), Arrays.copyOfRange(group.descriptionIds, from, to));
+				outcome.imported += to - from;
+			} catch (IllegalArgumentException e) {
+				for (int i = from; i < to; i++) {
+					outcome.reject(group.lines[i], e.getMessage());
+				}
+			}
+		}
+	}
+
+	private <T> List<T> runAll(List<Callable<T>> tasks) throws InterruptedException {
+		List<T> results = new ArrayList<T>(tasks.size());
+		for (Future<T> future : workers.invokeAll(tasks)) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new IllegalStateException(cause);
+			}
+		}
+		return results;
+	}
+
+	/*
+	 * Rows parsed from one chunk, as columns in file order. Line numbers are
+	 * relative to the start of the chunk.
+	 */
+	private static final class ParsedChunk {
+		int lines;
+		int rows;
+		int count;
+		int[] accounts = new int[1024];
+		long[] amounts = new long[1024];
+		int[] descriptionIds = new int[1024];
+		int[] lineNumbers = new int[1024];
+		int rejected;
+		final List<ImportReport.Reject> rejects = new ArrayList<ImportReport.Reject>();
+
+		void add(int accountNumber, long amountCents, int descriptionId, int line) {
+			if (count == accounts.length) {
+				int capacity = count * 2;
+				accounts = Arrays.copyOf(accounts, capacity);
+				amounts = Arrays.copyOf(amounts, capacity);
+				descriptionIds = Arrays.copyOf(descriptionIds, capacity);
+				lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+			}
+			accounts[count] = accountNumber;
+			amounts[count] = amountCents;
+			descriptionIds[count] = descriptionId;
+			lineNumbers[count] = line;
+			count++;
+		}
+
+		void reject(int line, String reason) {
+			rejected++;
+			if (rejects.size() < MAX_REJECT_SAMPLES) {
+				rejects.add(new ImportReport.Reject(line, reason));
+			}
+		}
+	}
+
+	/*
+	 * Rows for one account, in file order
+	 */
+	private static final class Group {
+		final Account account;
+		int count;
+		long[] amounts = new long[16];
+		int[] descriptionIds = new int[16];
+		long[] lines = new long[16];
+
+		Group(Account account) {
+			this.account = account;
+		}
+
+		void add(long amountCents, int descriptionId, long line) {
+			if (count == amounts.length) {
+				int capacity = count * 2;
+				amounts = Arrays.copyOf(amounts, capacity);
+				descriptionIds = Arrays.copyOf(descriptionIds, capacity);
+				lines = Arrays.copyOf(lines, capacity);
+			}
+			amounts[count] = amountCents;
+			descriptionIds[count] = descriptionId;
+			lines[count] = line;
+			count++;
+		}
+	}
+
+	/*
+	 * Counts and sampled rejects from one stage or worker
+	 */
+	private static final class Outcome {
+		long imported;
+		long rejected;
+		final List<ImportReport.Reject> rejects = new ArrayList<ImportReport.Reject>();
+
+		void reject(long line, String reason) {
+			rejected++;
+			if (rejects.size() < MAX_REJECT_SAMPLES) {
+				rejects.add(new ImportReport.Reject(line, reason));
+			}
+		}
+
+		void add(Outcome other) {
+			imported += other.imported;
+			rejected += other.rejected;
+			rejects.addAll(other.rejects);
+		}
+	}
+
+	/*
+	 * Description ids keyed by the bytes of the description, so that a row
+	 * only creates a String for a description its chunk has not seen
+	 */
+	private static final class DescriptionCache {
+		private byte[][] keys = new byte[64][];
+		private int[] hashes = new int[64];
+		private int[] ids = new int[64];
+		private int size;
+
+		int lookup(ByteBuffer region, int from, int to) {
+			int hash = 1;
+			for (int i = from; i < to; i++) {
+				hash = 31 * hash + region.get(i);
+			}
+			hash ^= hash >>> 16;
+			int mask = keys.length - 1;
+			int slot = hash & mask;
+			while (keys[slot] != null) {
+				if (hashes[slot] == hash && matches(keys[slot], region, from, to)) {
+					return ids[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			byte[] key = new byte[to - from];
+			for (int i = 0; i < key.length; i++) {
+				key[i] = region.get(from + i);
+			}
+			int id = Ledger.descriptionId(new String(key, StandardCharsets.UTF_8));
+			keys[slot] = key;
+			hashes[slot] = hash;
+			ids[slot] = id;
+			if (++size * 2 > keys.length) {
+				grow();
+			}
+			return id;
+		}
+
+		private static boolean matches(byte[] key, ByteBuffer region, int from, int to) {
+			if (key.length != to - from) {
+				return false;
+			}
+			for (int i = 0; i < key.length; i++) {
+				if (key[i] != region.get(from + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void grow() {
+			byte[][] oldKeys = keys;
+			int[] oldHashes = hashes;
+			int[] oldIds = ids;
+			keys = new byte[oldKeys.length * 2][];
+			hashes = new int[keys.length];
+			ids = new int[keys.length];
+			int mask = keys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != null) {
+					int slot = oldHashes[i] & mask;
+					while (keys[slot] != null) {
+						slot = (slot + 1) & mask;
+					}
+					keys[slot] = oldKeys[i];
+					hashes[slot] = oldHashes[i];
+					ids[slot] = oldIds[i];
+				}
+			}
+		}
+	}
+}
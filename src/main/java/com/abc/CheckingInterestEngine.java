@@ -0,0 +1,22 @@
+package com.abc;
+
+/*
+ * Checking accounts have a flat rate of 0.1% per-annum, accrued daily
+ */
+public class CheckingInterestEngine implements InterestEngine {
+	private static final double DAILY_FACTOR = 1 + 0.001 / 365;
+
+	/*
+	 * Assume all transactions end in the past. Assume customer is well-behaved
+	 * and never allows his balance to go below 0.
+	 */
+	@Override
+	public double accrue(double balance, int lowRateDays, int days) {
+		return balance * Math.pow(DAILY_FACTOR, days);
+	}
+
+	@Override
+	public int lowRateDaysAfterWithdrawal() {
+		return 0;
+	}
+}
@@ -2,21 +2,61 @@ package com.abc;
 
 import static java.lang.Math.abs;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /*
  * Contains all relevant account data for a given customer
  */
 public class Customer {
+	private static final AtomicInteger nextId = new AtomicInteger();
+
+	private final int id;
 	private String name;
 	private List<Account> accounts;
 
+	// Numbers of the accounts in the list, for constant time ownership checks
+	private final Set<Integer> accountNumbers = ConcurrentHashMap.newKeySet();
+
+	// Banks this customer has been added to, which index each new account
+	private final List<Bank> banks = new CopyOnWriteArrayList<Bank>();
+
 	public Customer(String name) {
+		this(nextId.incrementAndGet(), name);
+	}
+
+	/*
+	 * Recreate a customer with the id it had before a restart. Later customers
+	 * get higher ids.
+	 * 
+	 * @param id customer id
+	 * 
+	 * @param name customer name
+	 */
+	Customer(int id, String name) {
+		int current;
+		while ((current = nextId.get()) < id && !nextId.compareAndSet(current, id)) {
+		}
+		this.id = id;
 		this.name = name;
 		this.accounts = new ArrayList<Account>();
 	}
 
+	/*
+	 * Return the identifier of this customer, unique within the process
+	 * 
+	 * @return customer id
+	 */
+	public int getId() {
+		return id;
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -34,12 +74,28 @@ public class Customer {
 		if (account == null) {
 			throw new NullPointerException();
 		}
+		long requested = Metrics.lockRequested();
 		synchronized (accounts) {
+			long acquired = Metrics.lockAcquired(Metrics.Lock.ACCOUNTS, requested);
 			accounts.add(account);
+			Metrics.lockReleased(Metrics.Lock.ACCOUNTS, acquired);
 		}
+		accountNumbers.add(account.getAccountNumber());
+		for (Bank bank : banks)
+			bank.accountOpened(this, account);
 		return this;
 	}
 
+	/*
+	 * Register a bank to be told about accounts opened from now on. The bank
+	 * indexes the accounts that are already open itself, after registering.
+	 * 
+	 * @param bank bank the customer has been added to
+	 */
+	void addBank(Bank bank) {
+		banks.add(bank);
+	}
+
 	/*
 	 * Return the number of accounts associated with this customer
 	 * 
@@ -47,12 +103,32 @@ public class Customer {
 	 */
 	public int getNumberOfAccounts() {
 		int result;
+		long requested = Metrics.lockRequested();
 		synchronized (accounts) {
+			long acquired = Metrics.lockAcquired(Metrics.Lock.ACCOUNTS, requested);
 			result = accounts.size();
+			Metrics.lockReleased(Metrics.Lock.ACCOUNTS, acquired);
 		}
 		return result;
 	}
 
+	/*
+	 * Returns a defensive copy of the list of accounts, taken while holding the
+	 * accounts lock only for the duration of the copy
+	 * 
+	 * @return accounts in the order they were opened
+	 */
+	public List<Account> getAccounts() {
+		List<Account> copy;
+		long requested = Metrics.lockRequested();
+		synchronized (accounts) {
+			long acquired = Metrics.lockAcquired(Metrics.Lock.ACCOUNTS, requested);
+			copy = new ArrayList<Account>(accounts);
+			Metrics.lockReleased(Metrics.Lock.ACCOUNTS, acquired);
+		}
+		return copy;
+	}
+
 	/*
 	 * Return a sum of all interest earned for all accounts associated with this
 	 * customer
@@ -60,11 +136,19 @@ public class Customer {
 	 * @return dollar value of total interest earned
 	 */
 	public double totalInterestEarned() {
-		double total = 0;
-		synchronized (accounts) {
-			for (Account a : accounts)
-				total += a.interestEarned();
-		}
+		return Money.toDollars(totalInterestEarnedCents());
+	}
+
+	/*
+	 * Return the exact sum of interest earned for all accounts associated with
+	 * this customer, with each account's interest rounded to whole cents
+	 * 
+	 * @return total interest earned in cents
+	 */
+	public long totalInterestEarnedCents() {
+		long total = 0;
+		for (Account a : getAccounts())
+			total += Money.toCents(a.interestEarned());
 		return total;
 	}
 
@@ -74,52 +158,155 @@ public class Customer {
 	 * @return a user readable formatted statement in English
 	 */
 	public String getStatement() {
-		String statement = null;
-		statement = "Statement for " + name + "\n";
-		double total = 0.0;
-		synchronized (accounts) {
-			for (Account a : accounts) {
-				statement += "\n" + statementForAccount(a) + "\n";
-				total += a.sumTransactions();
-			}
+		StringBuilder statement = new StringBuilder();
+		try {
+			writeStatement(statement);
+		} catch (IOException e) {
+			// StringBuilder does not throw IOException
+			throw new UncheckedIOException(e);
+		}
+		return statement.toString();
+	}
+
+	/*
+	 * Return the statement for the given customer covering a time window.
+	 * Each account lists the transactions stamped within the window, found
+	 * by binary search, and totals them.
+	 * 
+	 * @param fromMillis start of the window, inclusive, in milliseconds since
+	 * the epoch
+	 * 
+	 * @param toMillis end of the window, exclusive
+	 * 
+	 * @return a user readable formatted statement in English
+	 * 
+	 * @throws IllegalArgumentException if the window ends before it starts
+	 */
+	public String getStatement(long fromMillis, long toMillis) {
+		StringBuilder statement = new StringBuilder();
+		try {
+			writeStatement(statement, fromMillis, toMillis);
+		} catch (IOException e) {
+			// StringBuilder does not throw IOException
+			throw new UncheckedIOException(e);
 		}
-		statement += "\nTotal In All Accounts " + toDollars(total);
-		return statement;
+		return statement.toString();
 	}
 
-	private String statementForAccount(Account a) {
-		String s = "";
+	/*
+	 * Write the statement for the given customer directly to a writer or
+	 * buffer. Each account's history is read from a snapshot of its ledger
+	 * without building Transaction objects.
+	 * 
+	 * @param out destination of the statement
+	 * 
+	 * @throws IOException if writing to the destination fails
+	 */
+	public void writeStatement(Appendable out) throws IOException {
+		List<Account> accounts = getAccounts();
+		Ledger.View[] views = new Ledger.View[accounts.size()];
+		for (int i = 0; i < views.length; i++) {
+			views[i] = accounts.get(i).view();
+		}
+		writeStatement(out, accounts, views);
+	}
+
+	/*
+	 * Write the statement for the given accounts of this customer, read from
+	 * the given views of their ledgers
+	 * 
+	 * @param out destination of the statement
+	 * 
+	 * @param accounts accounts in the order they were opened
+	 * 
+	 * @param views view of each account's ledger
+	 * 
+	 * @throws IOException if writing to the destination fails
+	 */
+	void writeStatement(Appendable out, List<Account> accounts, Ledger.View[] views) throws IOException {
+		long started = Metrics.start();
+		out.append("Statement for ").append(name).append('\n');
+		long total = 0;
+		for (int i = 0; i < views.length; i++) {
+			out.append('\n');
+			total += writeStatementForAccount(out, accounts.get(i), views[i], 0, views[i].size());
+			out.append('\n');
+		}
+		out.append("\nTotal In All Accounts ");
+		Money.appendDollars(out, abs(total));
+		Metrics.record(Metrics.Operation.STATEMENT, started);
+	}
+
+	/*
+	 * Write the statement for the given customer covering a time window
+	 * directly to a writer or buffer
+	 * 
+	 * @param out destination of the statement
+	 * 
+	 * @param fromMillis start of the window, inclusive, in milliseconds since
+	 * the epoch
+	 * 
+	 * @param toMillis end of the window, exclusive
+	 * 
+	 * @throws IOException if writing to the destination fails
+	 * 
+	 * @throws IllegalArgumentException if the window ends before it starts
+	 */
+	public void writeStatement(Appendable out, long fromMillis, long toMillis) throws IOException {
+		if (fromMillis > toMillis) {
+			throw new IllegalArgumentException("window ends before it starts");
+		}
+		long started = Metrics.start();
+		out.append("Statement for ").append(name).append('\n');
+		long total = 0;
+		for (Account a : getAccounts()) {
+			out.append('\n');
+			Ledger.View transactions = a.view();
+			int[] range = Account.range(transactions, fromMillis, toMillis);
+			total += writeStatementForAccount(out, a, transactions, range[0], range[1]);
+			out.append('\n');
+		}
+		out.append("\nTotal In All Accounts ");
+		Money.appendDollars(out, abs(total));
+		Metrics.record(Metrics.Operation.STATEMENT, started);
+	}
 
+	/*
+	 * Write the statement lines for a range of one account's entries
+	 * 
+	 * @return sum of the entries in cents
+	 */
+	private long writeStatementForAccount(Appendable out, Account a, Ledger.View transactions, int from, int to) throws IOException {
 		// Translate to pretty account type
 		switch (a.getAccountType()) {
 		case CHECKING:
-			s += "Checking Account\n";
+			out.append("Checking Account\n");
 			break;
 		case SAVINGS:
-			s += "Savings Account\n";
+			out.append("Savings Account\n");
 			break;
 		case MAXI_SAVINGS:
-			s += "Maxi Savings Account\n";
+			out.append("Maxi Savings Account\n");
 			break;
 		}
 
 		// Now total up all the transactions
-		double total = 0.0;
-		List<Transaction> transactions = a.getTransactions();
-		for (Transaction t : transactions) {
-			s += "  " + t.getDescription() + " " + toDollars(t.amount) + "\n";
-			total += t.amount;
+		long total = 0;
+		for (int i = from; i < to; i++) {
+			long amountCents = transactions.amountCents(i);
+			out.append("  ").append(transactions.description(i)).append(' ');
+			Money.appendDollars(out, abs(amountCents));
+			out.append('\n');
+			total += amountCents;
 		}
-		s += "Total " + toDollars(total);
-		return s;
-	}
-
-	private String toDollars(double d) {
-		return String.format("$%,.2f", abs(d));
+		out.append("Total ");
+		Money.appendDollars(out, abs(total));
+		return total;
 	}
 
 	/*
-	 * Transfer from one account to the other.
+	 * Transfer from one account to the other. Only the two accounts are
+	 * locked while the transfer is made.
 	 * 
 	 * @param srcAccount source of transfer
 	 * 
@@ -140,30 +327,20 @@ public class Customer {
 		if (srcAccount == null || destAccount == null) {
 			throw new NullPointerException();
 		}
-
-		synchronized (accounts) {
-			boolean foundSource = false, foundDest = false;
-			for (Account account : accounts) {
-				if (account.getAccountNumber() == srcAccount.getAccountNumber()) {
-					foundSource = true;
-				} else if (account.getAccountNumber() == destAccount.getAccountNumber()) {
-					foundDest = true;
-				}
-				if (foundSource && foundDest)
-					break;
-			}
-
-			if (!foundSource || !foundDest) {
-				throw new IllegalArgumentException();
-			}
-
-			if (srcAccount.sumTransactions() < amount) {
-				throw new IllegalStateException();
-			}
-
-			srcAccount.withdraw(amount, "transfer to " + destAccount.getAccountNumber());
-			destAccount.deposit(amount, "transfer from " + srcAccount.getAccountNumber());
+		if (!owns(srcAccount) || !owns(destAccount)) {
+			throw new IllegalArgumentException();
 		}
+		TransferEngine.transfer(srcAccount, destAccount, amount * Money.CENTS_PER_DOLLAR);
+	}
 
+	/*
+	 * Check whether an account is held by this customer
+	 * 
+	 * @param account account to look up
+	 * 
+	 * @return true if the account was opened by this customer
+	 */
+	boolean owns(Account account) {
+		return accountNumbers.contains(account.getAccountNumber());
 	}
 }
@@ -1,13 +1,34 @@
 package com.abc;
 
-import java.util.Calendar;
 import java.util.Date;
 
 public class DateProvider {
+	public static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+	/*
+	 * Source of the current time in milliseconds since the epoch. A clock can
+	 * be replaced to replay history at synthetic times.
+	 */
+	public interface Clock {
+		long millis();
+	}
+
+	/*
+	 * Clock reading the system time
+	 */
+	public static final Clock SYSTEM_CLOCK = new Clock() {
+		@Override
+		public long millis() {
+			return System.currentTimeMillis();
+		}
+	};
+
 	// Moved to eager initialization to avoid thread synchronization issues
 	// associated with lazy initialization
 	private static DateProvider instance = new DateProvider();
 
+	private volatile Clock clock = SYSTEM_CLOCK;
+
 	/*
 	 * Enforce singleton property with a private constructor
 	 */
@@ -24,6 +45,92 @@ public class DateProvider {
 		return instance;
 	}
 
+	/*
+	 * Replace the clock, e.g. with a synthetic one in tests or while replaying
+	 * history
+	 * 
+	 * @param clock new clock
+	 * 
+	 * @throws NullPointerException if the clock is null
+	 */
+	public void setClock(Clock clock) {
+		if (clock == null) {
+			throw new NullPointerException();
+		}
+		this.clock = clock;
+	}
+
+	/*
+	 * Return the clock in use
+	 * 
+	 * @return clock
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+
+	/*
+	 * Get current time without allocating
+	 * 
+	 * @return milliseconds since the epoch
+	 */
+	public long currentTimeMillis() {
+		return clock.millis();
+	}
+
+	/*
+	 * Get the current day
+	 * 
+	 * @return days since the epoch
+	 */
+	public long currentEpochDay() {
+		return epochDay(currentTimeMillis());
+	}
+
+	/*
+	 * Return the day a time falls on
+	 * 
+	 * @param millis milliseconds since the epoch
+	 * 
+	 * @return days since the epoch
+	 */
+	public static long epochDay(long millis) {
+		return Math.floorDiv(millis, MILLIS_PER_DAY);
+	}
+
+	/*
+	 * Return the number of whole days between two times
+	 * 
+	 * @param startMillis start in milliseconds since the epoch
+	 * 
+	 * @param endMillis end in milliseconds since the epoch
+	 * 
+	 * @return number of days
+	 * 
+	 * @throws IllegalArgumentException if the start comes after the end
+	 */
+	public int daysBetween(long startMillis, long endMillis) {
+		if (startMillis > endMillis) {
+			throw new IllegalArgumentException();
+		}
+
+		// Ignore error associated with time changes for now
+		return (int) ((endMillis - startMillis) / MILLIS_PER_DAY);
+	}
+
+	/*
+	 * Return the number of whole days between the given time and now
+	 * 
+	 * @param startMillis start in milliseconds since the epoch
+	 * 
+	 * @return number of days
+	 * 
+	 * @throws IllegalArgumentException if the start comes after now
+	 */
+	public int daysSince(long startMillis) {
+		return daysBetween(startMillis, currentTimeMillis());
+	}
+
 	/*
 	 * Return the number of days between the specified dates
 	 * 
@@ -41,19 +148,7 @@ public class DateProvider {
 		if (startDate == null || endDate == null) {
 			throw new NullPointerException();
 		}
-
-		long startTime = startDate.getTime();
-		long endTime = endDate.getTime();
-		if (startTime > endTime) {
-			throw new IllegalArgumentException();
-		}
-
-		// Ignore error associated with time changes for now. Alternatively this
-		// could
-		// be calculated by adding days to the startDate, until the
-		// startDate.getTime()
-		// exceeded endDate.getTime()
-		return (int) ((endTime - startTime) / (24 * 60 * 60 * 1000));
+		return daysBetween(startDate.getTime(), endDate.getTime());
 	}
 
 	/*
@@ -68,17 +163,16 @@ public class DateProvider {
 	 * @throws IllegalArgumentException if the startDate comes after the endDate
 	 */
 	public int daysSince(Date startDate) {
-		Date endDate = now();
-
-		return daysSince(startDate, endDate);
+		return daysSince(startDate, now());
 	}
 
 	/*
-	 * Get current time
+	 * Get current time. Kept for compatibility; prefer currentTimeMillis,
+	 * which does not allocate.
 	 * 
 	 * @return current time
 	 */
 	public Date now() {
-		return Calendar.getInstance().getTime();
+		return new Date(currentTimeMillis());
 	}
 }
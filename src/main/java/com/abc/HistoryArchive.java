@@ -0,0 +1,227 @@
+package com.abc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Moves old ledger history out of memory into compressed, append-only files,
+ * one per account.
+ * 
+ * Entries are archived a full ledger chunk at a time, once the last entry of
+ * the chunk is older than the horizon. Each chunk is written as one gzip
+ * member holding its amount, time, description and version columns, with the
+ * descriptions it uses spelled out so the file does not depend on the
+ * in-memory dictionary. The file is forced to disk before the chunk is
+ * dropped from memory and replaced by a PeriodSummary, which keeps the
+ * balances and the interest checkpoint at the end of the period and where
+ * its member lies in the file. Views read archived entries back on demand.
+ * 
+ * Period summaries live in memory only. Snapshots read archived history back
+ * and save it in full, so a recovered bank starts with its whole history in
+ * memory and archives it again; the members written before the restart are
+ * then no longer referenced.
+ */
+public final class HistoryArchive {
+	private static final String SUFFIX = ".archive";
+
+	private final Path directory;
+
+	/*
+	 * Create an archive in the given directory
+	 * 
+	 * @param directory directory holding the archive files
+	 * 
+	 * @throws UncheckedIOException if the directory cannot be created
+	 */
+	public HistoryArchive(Path directory) {
+		try {
+			Files.createDirectories(directory);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.directory = directory;
+	}
+
+	/*
+	 * Archive the old history of every account of a bank
+	 * 
+	 * @param bank bank to archive
+	 * 
+	 * @param horizonMillis entries before this time may be archived, in
+	 * milliseconds since the epoch
+	 * 
+	 * @return number of entries archived
+	 * 
+	 * @throws UncheckedIOException if an archive file cannot be written
+	 */
+	public long archive(Bank bank, long horizonMillis) {
+		long archived = 0;
+		for (Customer customer : bank.customerSnapshot()) {
+			for (Account account : customer.getAccounts()) {
+				archived += archive(account, horizonMillis);
+			}
+		}
+		return archived;
+	}
+
+	/*
+	 * Archive the full ledger chunks of an account whose entries are all
+	 * older than the horizon. The account keeps taking writes meanwhile.
+	 * 
+	 * @param account account to archive
+	 * 
+	 * @param horizonMillis entries before this time may be archived, in
+	 * milliseconds since the epoch
+	 * 
+	 * @return number of entries archived
+	 * 
+	 * @throws UncheckedIOException if the archive file cannot be written
+	 */
+	public long archive(Account account, long horizonMillis) {
+		Ledger ledger = account.getLedger();
+		// One archiver per ledger at a time, so periods are appended in order
+		synchronized (ledger) {
+			Ledger.Tail tail = ledger.tail();
+			Ledger.View view = ledger.view(tail);
+			List<PeriodSummary> periods = ledger.periods();
+			int chunkIndex = periods.size();
+			PeriodSummary previous = chunkIndex == 0 ? null : periods.get(chunkIndex - 1);
+			long archived = 0;
+			while ((chunkIndex + 1) * Ledger.CHUNK_SIZE <= tail.size) {
+				int from = chunkIndex * Ledger.CHUNK_SIZE;
+				int to = from + Ledger.CHUNK_SIZE;
+				if (view.time(to - 1) >= horizonMillis) {
+					break;
+				}
+				Account.Checkpoint end = account.checkpointAfter(previous, view, from, to);
+				long opening = previous == null ? 0 : previous.getClosingBalanceCents();
+				PeriodSummary period = write(account.getAccountNumber(), view, from, to, opening, end);
+				if (!ledger.archive(chunkIndex, period)) {
+					break;
+				}
+				previous = period;
+				archived += Ledger.CHUNK_SIZE;
+				chunkIndex++;
+			}
+			return archived;
+		}
+	}
+
+	private PeriodSummary write(int accountNumber, Ledger.View view, int from, int to, long openingBalanceCents, Account.Checkpoint end) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+				int count = to - from;
+				Map<Integer, String> descriptions = new HashMap<Integer, String>();
+				for (int i = from; i < to; i++) {
+					int id = view.descriptionId(i);
+					if (!descriptions.containsKey(id)) {
+						descriptions.put(id, Ledger.descriptionForId(id));
+					}
+				}
+				out.writeInt(descriptions.size());
+				for (Map.Entry<Integer, String> description : descriptions.entrySet()) {
+					out.writeInt(description.getKey());
+					out.writeUTF(description.getValue());
+				}
+				out.writeInt(count);
+				for (int i = from; i < to; i++) {
+					out.writeLong(view.amountCents(i));
+				}
+				for (int i = from; i < to; i++) {
+					out.writeLong(view.time(i));
+				}
+				for (int i = from; i < to; i++) {
+					out.writeInt(view.descriptionId(i));
+				}
+				for (int i = from; i < to; i++) {
+					out.writeLong(view.version(i));
+				}
+			}
+
+			Path file = fileFor(accountNumber);
+			long offset;
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+				offset = channel.size();
+				ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+				while (buffer.hasRemaining()) {
+					channel.write(buffer, offset + buffer.position());
+				}
+				channel.force(false);
+			}
+			return new PeriodSummary(from, to - from, view.time(from), view.time(to - 1), openingBalanceCents, end.balanceCents - openingBalanceCents,
+					end.accruedBalance, end.lowRateDaysRemaining, this, accountNumber, offset, bytes.size());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/*
+	 * Read the entries of an archived period
+	 * 
+	 * @param period period to read
+	 * 
+	 * @return chunk holding the entries
+	 * 
+	 * @throws UncheckedIOException if the archive file cannot be read
+	 */
+	Ledger.Chunk read(PeriodSummary period) {
+		byte[] member = new byte[period.getArchiveLength()];
+		try {
+			try (FileChannel channel = FileChannel.open(fileFor(period.getAccountNumber()), StandardOpenOption.READ)) {
+				ByteBuffer buffer = ByteBuffer.wrap(member);
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, period.getArchiveOffset() + buffer.position()) < 0) {
+						throw new IOException("archive of account " + period.getAccountNumber() + " is truncated");
+					}
+				}
+			}
+			try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(member)))) {
+				Map<Integer, Integer> descriptionIds = new HashMap<Integer, Integer>();
+				int descriptions = in.readInt();
+				for (int i = 0; i < descriptions; i++) {
+					int archivedId = in.readInt();
+					descriptionIds.put(archivedId, Ledger.descriptionId(in.readUTF()));
+				}
+				int count = in.readInt();
+				long[] amounts = new long[count];
+				long[] times = new long[count];
+				int[] ids = new int[count];
+				long[] versions = new long[count];
+				for (int i = 0; i < count; i++) {
+					amounts[i] = in.readLong();
+				}
+				for (int i = 0; i < count; i++) {
+					times[i] = in.readLong();
+				}
+				for (int i = 0; i < count; i++) {
+					ids[i] = descriptionIds.get(in.readInt());
+				}
+				for (int i = 0; i < count; i++) {
+					versions[i] = in.readLong();
+				}
+				return new Ledger.Chunk(amounts, times, ids, versions);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private Path fileFor(int accountNumber) {
+		return directory.resolve(String.format("%010d", accountNumber) + SUFFIX);
+	}
+}
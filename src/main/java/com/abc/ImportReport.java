@@ -0,0 +1,149 @@
+package com.abc;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Outcome of one bulk import run: row counts, the time spent in each stage
+ * and a sample of the rejected rows.
+ */
+public final class ImportReport {
+	/*
+	 * A row which was not imported, and why
+	 */
+	public static final class Reject {
+		private final long line;
+		private final String reason;
+
+		Reject(long line, String reason) {
+			this.line = line;
+			this.reason = reason;
+		}
+
+		/*
+		 * Return the line of the rejected row
+		 * 
+		 * @return line number, starting at 1
+		 */
+		public long getLine() {
+			return line;
+		}
+
+		public String getReason() {
+			return reason;
+		}
+
+		@Override
+		public String toString() {
+			return "line " + line + ": " + reason;
+		}
+	}
+
+	private final long bytes;
+	private final long rows;
+	private final long imported;
+	private final long rejected;
+	private final List<Reject> rejects;
+	private final long splitNanos;
+	private final long parseNanos;
+	private final long groupNanos;
+	private final long applyNanos;
+
+	ImportReport(long bytes, long rows, long imported, long rejected, List<Reject> rejects, long splitNanos, long parseNanos, long groupNanos,
+			long applyNanos) {
+		this.bytes = bytes;
+		this.rows = rows;
+		this.imported = imported;
+		this.rejected = rejected;
+		this.rejects = Collections.unmodifiableList(rejects);
+		this.splitNanos = splitNanos;
+		this.parseNanos = parseNanos;
+		this.groupNanos = groupNanos;
+		this.applyNanos = applyNanos;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	/*
+	 * Return the number of rows read, not counting blank lines
+	 * 
+	 * @return rows read
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	public long getImported() {
+		return imported;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	/*
+	 * Return a sample of the rejected rows, in file order. The sample is
+	 * bounded, so it may hold fewer rows than getRejected counts.
+	 * 
+	 * @return rejected rows
+	 */
+	public List<Reject> getRejects() {
+		return rejects;
+	}
+
+	/*
+	 * Time spent finding line boundaries and mapping the file
+	 */
+	public long getSplitNanos() {
+		return splitNanos;
+	}
+
+	/*
+	 * Time spent parsing rows
+	 */
+	public long getParseNanos() {
+		return parseNanos;
+	}
+
+	/*
+	 * Time spent grouping rows by account
+	 */
+	public long getGroupNanos() {
+		return groupNanos;
+	}
+
+	/*
+	 * Time spent posting batches to accounts
+	 */
+	public long getApplyNanos() {
+		return applyNanos;
+	}
+
+	public long getTotalNanos() {
+		return splitNanos + parseNanos + groupNanos + applyNanos;
+	}
+
+	/*
+	 * Return the import rate over the whole run
+	 * 
+	 * @return rows read per second
+	 */
+	public double getRowsPerSecond() {
+		long total = getTotalNanos();
+		return total == 0 ? 0 : rows * (double) TimeUnit.SECONDS.toNanos(1) / total;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%,d rows (%,d imported, %,d rejected) from %,d bytes in %.1f ms, %,.0f rows/s; split %.1f ms, parse %.1f ms, group %.1f ms, apply %.1f ms",
+				rows, imported, rejected, bytes, millis(getTotalNanos()), getRowsPerSecond(), millis(splitNanos), millis(parseNanos),
+				millis(groupNanos), millis(applyNanos));
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+}
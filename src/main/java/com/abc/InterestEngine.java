@@ -0,0 +1,31 @@
+package com.abc;
+
+/*
+ * Calculates compound interest for an account over a period during which no
+ * transactions take place. Implementations work out the whole period in closed
+ * form rather than compounding one day at a time.
+ */
+public interface InterestEngine {
+
+	/*
+	 * Compound a balance over a period without transactions
+	 * 
+	 * @param balance balance including interest at the start of the period
+	 * 
+	 * @param lowRateDays remaining days at which the account earns its reduced
+	 * rate
+	 * 
+	 * @param days number of days of accumulated interest
+	 * 
+	 * @return balance including interest at the end of the period
+	 */
+	double accrue(double balance, int lowRateDays, int days);
+
+	/*
+	 * Return the number of days the account earns its reduced rate after a
+	 * withdrawal
+	 * 
+	 * @return number of days, zero if withdrawals do not affect the rate
+	 */
+	int lowRateDaysAfterWithdrawal();
+}
@@ -0,0 +1,282 @@
+package com.abc;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * End-of-day batch job which posts the interest accrued on every account of a
+ * bank as an "interest" entry, moving each account's accrual checkpoint up to
+ * the end of the day.
+ * 
+ * A run covers one business day and accrues each account up to the last
+ * millisecond of that day, or to the time of the account's last entry if that
+ * is later. Interest accrues by whole days, so a posting is stamped a whole
+ * number of days after the account's last entry, within the day, and the rest
+ * of the day carries into the next run. An account which already has an
+ * interest entry stamped that day or later is skipped, so a run that failed
+ * part way, or a process that stopped part way, is finished by running the
+ * same day again. Customers are split across a pool of worker threads. An
+ * account which fails to post is counted and left for the next run rather
+ * than stopping the job.
+ */
+public final class InterestPostingJob implements Closeable {
+	// Customers handed to a worker at a time
+	private static final int SLICE_SIZE = 256;
+
+	/*
+	 * Outcome of one run
+	 */
+	public static final class Run {
+		private final long epochDay;
+		private final long posted;
+		private final long skipped;
+		private final long failed;
+		private final long interestCents;
+		private final long nanos;
+
+		Run(long epochDay, long posted, long skipped, long failed, long interestCents, long nanos) {
+			this.epochDay = epochDay;
+			this.posted = posted;
+			this.skipped = skipped;
+			this.failed = failed;
+			this.interestCents = interestCents;
+			this.nanos = nanos;
+		}
+
+		/*
+		 * Return the business day the run posted interest for
+		 * 
+		 * @return days since the epoch
+		 */
+		public long getEpochDay() {
+			return epochDay;
+		}
+
+		/*
+		 * Return the number of accounts given an interest entry
+		 */
+		public long getPosted() {
+			return posted;
+		}
+
+		/*
+		 * Return the number of accounts already posted for the day, or with no
+		 * interest due
+		 */
+		public long getSkipped() {
+			return skipped;
+		}
+
+		/*
+		 * Return the number of accounts which could not be posted; running the
+		 * same day again retries them
+		 */
+		public long getFailed() {
+			return failed;
+		}
+
+		public long getInterestCents() {
+			return interestCents;
+		}
+
+		/*
+		 * Return how long the run took
+		 * 
+		 * @return elapsed time in nanoseconds
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("day %d: %,d accounts posted, %,d skipped, %,d failed, %,d cents in %.1f ms", epochDay, posted, skipped, failed,
+					interestCents, nanos / 1e6);
+		}
+	}
+
+	private final Bank bank;
+	private final ExecutorService workers;
+	private final ScheduledExecutorService scheduler;
+	private ScheduledFuture<?> daily;
+	private volatile Run lastRun;
+
+	/*
+	 * Create a job for the given bank
+	 * 
+	 * @param bank bank whose accounts are posted
+	 * 
+	 * @param parallelism number of worker threads
+	 * 
+	 * @throws NullPointerException if the bank is null
+	 * 
+	 * @throws IllegalArgumentException if the parallelism is not positive
+	 */
+	public InterestPostingJob(Bank bank, int parallelism) {
+		if (bank == null) {
+			throw new NullPointerException();
+		}
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("parallelism must be positive");
+		}
+		this.bank = bank;
+		this.workers = Executors.newFixedThreadPool(parallelism, daemonThreads("interest-posting"));
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("interest-scheduler"));
+	}
+
+	private static ThreadFactory daemonThreads(final String name) {
+		return new ThreadFactory() {
+			private int count;
+
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name + "-" + ++count);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/*
+	 * Post interest for the day before the current day
+	 * 
+	 * @return outcome of the run
+	 * 
+	 * @throws InterruptedException if interrupted while waiting for the workers
+	 */
+	public Run run() throws InterruptedException {
+		return runFor(DateProvider.getInstance().currentEpochDay() - 1);
+	}
+
+	/*
+	 * Post interest accrued up to the end of the given day on every account
+	 * which has not been posted for it yet
+	 * 
+	 * @param epochDay business day, in days since the epoch
+	 * 
+	 * @return outcome of the run
+	 * 
+	 * @throws InterruptedException if interrupted while waiting for the workers
+	 */
+	public Run runFor(final long epochDay) throws InterruptedException {
+		long started = System.nanoTime();
+		final long endOfDay = (epochDay + 1) * DateProvider.MILLIS_PER_DAY - 1;
+		final Customer[] customers = bank.customerSnapshot();
+		List<Callable<long[]>> slices = new ArrayList<Callable<long[]>>();
+		for (int from = 0; from < customers.length; from += SLICE_SIZE) {
+			final int sliceFrom = from;
+			final int sliceTo = Math.min(customers.length, from + SLICE_SIZE);
+			slices.add(new Callable<long[]>() {
+				@Override
+				public long[] call() {
+					// Posted, skipped, failed and cents
+					long[] counts = new long[4];
+					for (int i = sliceFrom; i < sliceTo; i++) {
+						for (Account account : customers[i].getAccounts()) {
+							post(account, endOfDay, counts);
+						}
+					}
+					return counts;
+				}
+			});
+		}
+
+		long[] totals = new long[4];
+		for (Future<long[]> future : workers.invokeAll(slices)) {
+			long[] counts;
+			try {
+				counts = future.get();
+			} catch (ExecutionException e) {
+				// Account failures are counted, so a slice only fails on an
+				// Error
+				throw new IllegalStateException("interest posting failed", e.getCause());
+			}
+			for (int i = 0; i < totals.length; i++) {
+				totals[i] += counts[i];
+			}
+		}
+		Run run = new Run(epochDay, totals[0], totals[1], totals[2], totals[3], System.nanoTime() - started);
+		lastRun = run;
+		return run;
+	}
+
+	private static void post(Account account, long endOfDay, long[] counts) {
+		try {
+			if (account.interestPostedThrough(endOfDay)) {
+				counts[1]++;
+				return;
+			}
+			long cents = account.postInterest(endOfDay);
+			if (cents == 0) {
+				counts[1]++;
+			} else {
+				counts[0]++;
+				counts[3] += cents;
+			}
+		} catch (RuntimeException e) {
+			counts[2]++;
+		}
+	}
+
+	/*
+	 * Run the job shortly after the start of every day, for the day that just
+	 * ended. Days are in UTC, following the epoch days of DateProvider.
+	 * 
+	 * @param delayMillis time after midnight to start each run
+	 * 
+	 * @throws IllegalArgumentException if the delay is negative or a day or
+	 * more
+	 * 
+	 * @throws IllegalStateException if the job is already scheduled
+	 */
+	public synchronized void scheduleDaily(long delayMillis) {
+		if (delayMillis < 0 || delayMillis >= DateProvider.MILLIS_PER_DAY) {
+			throw new IllegalArgumentException("delay must be within a day");
+		}
+		if (daily != null) {
+			throw new IllegalStateException("already scheduled");
+		}
+		long now = DateProvider.getInstance().currentTimeMillis();
+		long next = (DateProvider.epochDay(now) + 1) * DateProvider.MILLIS_PER_DAY + delayMillis;
+		daily = scheduler.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					InterestPostingJob.this.run();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (RuntimeException e) {
+					// Leave the failed accounts for the next run
+				}
+			}
+		}, next - now, DateProvider.MILLIS_PER_DAY, TimeUnit.MILLISECONDS);
+	}
+
+	/*
+	 * Return the outcome of the most recent run
+	 * 
+	 * @return last run, or null if the job has not run
+	 */
+	public Run getLastRun() {
+		return lastRun;
+	}
+
+	/*
+	 * Stop the schedule and the worker threads
+	 */
+	@Override
+	public synchronized void close() {
+		scheduler.shutdownNow();
+		workers.shutdown();
+	}
+}
@@ -0,0 +1,711 @@
+package com.abc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/*
+ * Write-ahead journal of customers, accounts and transactions. Records are
+ * appended to memory-mapped segment files of a fixed size, and a record's log
+ * sequence number (LSN) is its byte position across all segments.
+ * 
+ * Each record is framed by its length and a CRC32 of its body, so a torn
+ * write at the end of the log is detected and discarded when the journal is
+ * reopened. Transactions are journaled in ledger order for each account and
+ * carry their ledger index, so replay can skip entries that are already
+ * present.
+ * 
+ * How long a write waits for the disk is set by the durability mode. Forcing
+ * is shared between threads: one thread forces the mapped segment on behalf of
+ * every record written before the force started (group commit).
+ */
+public final class Journal implements Closeable {
+	public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+	// Interval between forces in ASYNC mode
+	static final long ASYNC_FORCE_INTERVAL_MILLIS = 10;
+
+	static final byte CUSTOMER = 1;
+	static final byte ACCOUNT = 2;
+	static final byte DESCRIPTION = 3;
+	static final byte TRANSACTION = 4;
+
+	// Length and checksum in front of every record body
+	private static final int HEADER_SIZE = 8;
+	static final int MAX_STRING_BYTES = 0xFFFE;
+	private static final int NULL_STRING = 0xFFFF;
+	private static final String SEGMENT_SUFFIX = ".journal";
+
+	/*
+	 * When a journaled operation returns, relative to the disk
+	 */
+	public static enum Durability {
+		// Every operation forces the journal itself before returning
+		PER_OP,
+		// Operations wait until their record is forced, sharing each force with
+		// all concurrent operations
+		BATCHED,
+		// Operations return at once and a background thread forces the journal
+		// every few milliseconds; a crash can lose the last few operations
+		ASYNC
+	}
+
+	/*
+	 * Receives records read back from the journal, in log order
+	 */
+	interface Visitor {
+		void customer(int customerId, String name);
+
+		void account(int accountNumber, int customerId, Account.Type type);
+
+		void description(int descriptionId, String description);
+
+		void transaction(int accountNumber, int index, long amountCents, long time, int descriptionId);
+	}
+
+	/*
+	 * One mapped segment file
+	 */
+	private static final class Segment {
+		final long base;
+		final FileChannel channel;
+		final MappedByteBuffer buffer;
+
+		Segment(long base, FileChannel channel, MappedByteBuffer buffer) {
+			this.base = base;
+			this.channel = channel;
+			this.buffer = buffer;
+		}
+	}
+
+	private final Path directory;
+	private final Durability durability;
+	private final int segmentSize;
+
+	// Guards everything below up to the flush state, and each account's
+	// journaled size
+	private final Object appendLock = new Object();
+	private Segment current;
+	private long position;
+	private final ByteBuffer scratch = ByteBuffer.allocate(HEADER_SIZE + 1 + 4 + 2 + MAX_STRING_BYTES);
+	private final CRC32 crc = new CRC32();
+	private final BitSet journaledDescriptions = new BitSet();
+
+	private final Object flushLock = new Object();
+	private long durable;
+	private boolean flushing;
+	private long forceCount;
+
+	private final Thread flusher;
+	private volatile boolean closed;
+
+	/*
+	 * Open the journal in the given directory with the default segment size,
+	 * creating it if needed
+	 * 
+	 * @param directory directory holding the segment files
+	 * 
+	 * @param durability when operations return relative to the disk
+	 * 
+	 * @throws UncheckedIOException if the journal cannot be opened
+	 */
+	public Journal(Path directory, Durability durability) {
+		this(directory, durability, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/*
+	 * Open the journal in the given directory, creating it if needed. Writing
+	 * continues after the last intact record; anything after it is discarded.
+	 * 
+	 * @param directory directory holding the segment files
+	 * 
+	 * @param durability when operations return relative to the disk
+	 * 
+	 * @param segmentSize size of each segment file in bytes, used for new
+	 * segments
+	 * 
+	 * @throws NullPointerException if the directory or durability is null
+	 * 
+	 * @throws IllegalArgumentException if the segment size cannot hold the
+	 * largest record
+	 * 
+	 * @throws UncheckedIOException if the journal cannot be opened
+	 */
+	public Journal(Path directory, Durability durability, int segmentSize) {
+		if (directory == null || durability == null) {
+			throw new NullPointerException();
+		}
+		if (segmentSize < scratch.capacity()) {
+			throw new IllegalArgumentException("segment size must be at least " + scratch.capacity());
+		}
+		this.directory = directory;
+		this.durability = durability;
+		this.segmentSize = segmentSize;
+		try {
+			Files.createDirectories(directory);
+			recover();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.durable = position;
+
+		if (durability == Durability.ASYNC) {
+			flusher = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					flushPeriodically();
+				}
+			}, "journal-flusher");
+			flusher.setDaemon(true);
+			flusher.start();
+		} else {
+			flusher = null;
+		}
+	}
+
+	public Durability getDurability() {
+		return durability;
+	}
+
+	/*
+	 * Return the position after the last record written
+	 * 
+	 * @return log sequence number of the end of the journal
+	 */
+	public long getPosition() {
+		synchronized (appendLock) {
+			return position;
+		}
+	}
+
+	/*
+	 * Return the position up to which the journal is known to be on disk
+	 * 
+	 * @return durable log sequence number
+	 */
+	public long getDurablePosition() {
+		synchronized (flushLock) {
+			return durable;
+		}
+	}
+
+	/*
+	 * Return the number of times the journal has been forced to disk, e.g. to
+	 * measure how many writes share each force
+	 * 
+	 * @return force count
+	 */
+	public long getForceCount() {
+		synchronized (flushLock) {
+			return forceCount;
+		}
+	}
+
+	/*
+	 * Journal a new customer
+	 * 
+	 * @param customer customer added to a bank
+	 */
+	void logCustomer(Customer customer) {
+		long lsn;
+		synchronized (appendLock) {
+			ByteBuffer body = startRecord(CUSTOMER);
+			body.putInt(customer.getId());
+			putString(body, customer.getName());
+			lsn = append();
+		}
+		awaitDurable(lsn);
+	}
+
+	/*
+	 * Journal an account and every entry already in its ledger, and attach the
+	 * account to this journal so that later entries are journaled as they are
+	 * posted
+	 * 
+	 * @param owner customer holding the account
+	 * 
+	 * @param account account opened by the customer
+	 * 
+	 * @throws IllegalStateException if the account is attached to another
+	 * journal
+	 */
+	void logAccount(Customer owner, Account account) {
+		long lsn;
+		synchronized (appendLock) {
+			if (account.journal != this) {
+				if (account.journal != null) {
+					throw new IllegalStateException("account " + account.getAccountNumber() + " is journaled elsewhere");
+				}
+				ByteBuffer body = startRecord(ACCOUNT);
+				body.putInt(account.getAccountNumber());
+				body.putInt(owner.getId());
+				body.put((byte) account.getAccountType().ordinal());
+				append();
+
+				// Attach before reading the tail, so that an entry posted
+				// concurrently is either caught up here or journaled by its writer
+				account.journal = this;
+			}
+			writeEntries(account, account.getLedger().tail());
+			lsn = position;
+		}
+		awaitDurable(lsn);
+	}
+
+	/*
+	 * Attach an account whose entries were all recovered from this journal or a
+	 * snapshot taken from it, without writing them again
+	 * 
+	 * @param account recovered account
+	 */
+	void attachRecovered(Account account) {
+		synchronized (appendLock) {
+			account.journal = this;
+			account.journaledSize = account.getLedger().size();
+		}
+	}
+
+	/*
+	 * Delete the segments which only hold records before the given position,
+	 * e.g. once a snapshot covers them. The segment being written is kept.
+	 * 
+	 * @param lsn position from which the journal must still be readable
+	 * 
+	 * @throws UncheckedIOException if a segment cannot be deleted
+	 */
+	public void discardBefore(long lsn) {
+		long currentBase;
+		synchronized (appendLock) {
+			currentBase = current.base;
+		}
+		try {
+			List<Long> bases = segmentBases();
+			for (int s = 0; s + 1 < bases.size() && bases.get(s + 1) <= lsn && bases.get(s) < currentBase; s++) {
+				Files.delete(segmentPath(bases.get(s)));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/*
+	 * Journal every entry of an account's ledger up to and including the given
+	 * tail which is not journaled yet, in ledger order, and wait for them as
+	 * required by the durability mode. Called by the writer of each entry
+	 * after publishing it; if a later writer got here first, the entry is
+	 * already journaled.
+	 * 
+	 * @param account attached account
+	 * 
+	 * @param through tail published by the caller
+	 */
+	void logEntries(Account account, Ledger.Tail through) {
+		awaitDurable(appendEntries(account, through));
+	}
+
+	/*
+	 * Journal entries as logEntries does, without waiting for the disk. Used
+	 * by transfers, which wait only once their account locks are released.
+	 * 
+	 * @param account attached account
+	 * 
+	 * @param through tail published by the caller
+	 * 
+	 * @return position to pass to awaitDurable
+	 */
+	long appendEntries(Account account, Ledger.Tail through) {
+		synchronized (appendLock) {
+			writeEntries(account, through);
+			return position;
+		}
+	}
+
+	private void writeEntries(Account account, Ledger.Tail through) {
+		int from = account.journaledSize;
+		if (from >= through.size) {
+			return;
+		}
+		Ledger.View view = account.getLedger().view(through);
+		for (int i = from; i < through.size; i++) {
+			int descriptionId = view.descriptionId(i);
+			if (!journaledDescriptions.get(descriptionId)) {
+				ByteBuffer body = startRecord(DESCRIPTION);
+				body.putInt(descriptionId);
+				putString(body, Ledger.descriptionForId(descriptionId));
+				append();
+				journaledDescriptions.set(descriptionId);
+			}
+			ByteBuffer body = startRecord(TRANSACTION);
+			body.putInt(account.getAccountNumber());
+			body.putInt(i);
+			body.putLong(view.amountCents(i));
+			body.putLong(view.time(i));
+			body.putInt(descriptionId);
+			append();
+		}
+		account.journaledSize = through.size;
+	}
+
+	private ByteBuffer startRecord(byte type) {
+		scratch.clear();
+		scratch.position(HEADER_SIZE);
+		scratch.put(type);
+		return scratch;
+	}
+
+	private static void putString(ByteBuffer body, String value) {
+		if (value == null) {
+			body.putShort((short) NULL_STRING);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > MAX_STRING_BYTES) {
+			throw new IllegalArgumentException("string too long to journal");
+		}
+		body.putShort((short) bytes.length);
+		body.put(bytes);
+	}
+
+	/*
+	 * Frame the record in the scratch buffer and copy it into the current
+	 * segment, rolling to a new segment if it does not fit
+	 * 
+	 * @return position after the record
+	 */
+	private long append() {
+		int length = scratch.position() - HEADER_SIZE;
+		ByteBuffer body = (ByteBuffer) scratch.duplicate().flip().position(HEADER_SIZE);
+		crc.reset();
+		crc.update(body);
+		scratch.putInt(0, length);
+		scratch.putInt(4, (int) crc.getValue());
+		scratch.flip();
+
+		int offset = (int) (position - current.base);
+		if (offset + scratch.remaining() > current.buffer.capacity()) {
+			roll();
+			offset = 0;
+		}
+		ByteBuffer target = current.buffer.duplicate();
+		target.position(offset);
+		target.put(scratch);
+		position = current.base + target.position();
+		return position;
+	}
+
+	/*
+	 * Force the full segment and start the next one. The unused end of the
+	 * full segment stays zero, which readers take as the end of the segment.
+	 */
+	private void roll() {
+		Segment full = current;
+		full.buffer.force();
+		try {
+			full.channel.close();
+			current = openSegment(full.base + full.buffer.capacity(), segmentSize);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		position = current.base;
+	}
+
+	/*
+	 * Wait as long as the durability mode requires for the journal to be on
+	 * disk up to the given position
+	 */
+	void awaitDurable(long lsn) {
+		switch (durability) {
+		case PER_OP:
+			synchronized (flushLock) {
+				long target = force();
+				durable = Math.max(durable, target);
+			}
+			break;
+		case BATCHED:
+			groupCommit(lsn);
+			break;
+		case ASYNC:
+			break;
+		}
+	}
+
+	/*
+	 * Wait until the journal is durable up to the given position. The first
+	 * waiter forces the segment; waiters that arrive while a force is running
+	 * wait for it and, if it did not cover them, one of them starts the next
+	 * force for everything written in the meantime.
+	 */
+	private void groupCommit(long lsn) {
+		boolean interrupted = false;
+		try {
+			for (;;) {
+				synchronized (flushLock) {
+					while (flushing && durable < lsn) {
+						try {
+							flushLock.wait();
+						} catch (InterruptedException e) {
+							interrupted = true;
+						}
+					}
+					if (durable >= lsn) {
+						return;
+					}
+					flushing = true;
+				}
+				long target = -1;
+				try {
+					target = force();
+				} finally {
+					synchronized (flushLock) {
+						flushing = false;
+						durable = Math.max(durable, target);
+						flushLock.notifyAll();
+					}
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/*
+	 * Force the current segment. Segments before it were forced when they
+	 * filled up.
+	 * 
+	 * @return position covered by the force
+	 */
+	private long force() {
+		Segment segment;
+		long target;
+		synchronized (appendLock) {
+			segment = current;
+			target = position;
+		}
+		segment.buffer.force();
+		synchronized (flushLock) {
+			forceCount++;
+		}
+		return target;
+	}
+
+	private void flushPeriodically() {
+		while (!closed) {
+			try {
+				Thread.sleep(ASYNC_FORCE_INTERVAL_MILLIS);
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (getDurablePosition() < getPosition()) {
+				groupCommit(getPosition());
+			}
+		}
+	}
+
+	/*
+	 * Force everything written so far, regardless of the durability mode
+	 */
+	public void flush() {
+		groupCommit(getPosition());
+	}
+
+	/*
+	 * Read the journal back from the given position
+	 * 
+	 * @param from log sequence number to start at, e.g. 0 or a position
+	 * recorded in a snapshot
+	 * 
+	 * @param visitor receives each record
+	 * 
+	 * @return position after the last record read
+	 * 
+	 * @throws UncheckedIOException if the journal cannot be read
+	 */
+	long replay(long from, Visitor visitor) {
+		try {
+			return scan(from, visitor);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/*
+	 * Stop the flusher, force everything written so far and close the current
+	 * segment's channel. A journal cannot be used after it is closed. Java
+	 * has no public way to unmap a buffer, so the segment mappings are only
+	 * released once the garbage collector reclaims them.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if (flusher != null) {
+			flusher.interrupt();
+			try {
+				flusher.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		flush();
+		synchronized (appendLock) {
+			try {
+				current.channel.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/*
+	 * Find the end of the intact records, discard anything after it and map
+	 * the segment to continue writing in
+	 */
+	private void recover() throws IOException {
+		long end = scan(0, null);
+		long last = -1;
+		for (long base : segmentBases()) {
+			if (base > end) {
+				Files.delete(segmentPath(base));
+			} else {
+				last = base;
+			}
+		}
+		if (last < 0) {
+			current = openSegment(0, segmentSize);
+			position = 0;
+			return;
+		}
+		current = openSegment(last, (int) Files.size(segmentPath(last)));
+		position = end;
+
+		// Zero whatever a torn write left behind, so that a later scan cannot
+		// mistake it for records
+		ByteBuffer target = current.buffer.duplicate();
+		target.position((int) (end - current.base));
+		while (target.hasRemaining()) {
+			target.put((byte) 0);
+		}
+		current.buffer.force();
+	}
+
+	/*
+	 * Read records from the given position until the end of the journal or
+	 * the first damaged record
+	 * 
+	 * @return position after the last intact record
+	 */
+	private long scan(long from, Visitor visitor) throws IOException {
+		List<Long> bases = segmentBases();
+		if (!bases.isEmpty() && from < bases.get(0)) {
+			// Records before the first segment were discarded
+			from = bases.get(0);
+		}
+		long end = from;
+		CRC32 check = new CRC32();
+		for (int s = 0; s < bases.size(); s++) {
+			long base = bases.get(s);
+			long size = Files.size(segmentPath(base));
+			if (base + size <= from) {
+				continue;
+			}
+			if (base > end) {
+				// A missing segment means the journal ends before it
+				break;
+			}
+			try (FileChannel channel = FileChannel.open(segmentPath(base), StandardOpenOption.READ)) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+				int offset = (int) Math.max(0, from - base);
+				while (offset + HEADER_SIZE <= size) {
+					int length = buffer.getInt(offset);
+					if (length <= 0 || offset + HEADER_SIZE + length > size) {
+						break;
+					}
+					ByteBuffer body = (ByteBuffer) buffer.duplicate().limit(offset + HEADER_SIZE + length).position(offset + HEADER_SIZE);
+					check.reset();
+					check.update(body.duplicate());
+					if ((int) check.getValue() != buffer.getInt(offset + 4)) {
+						return base + offset;
+					}
+					if (visitor != null) {
+						dispatch(body, visitor);
+					}
+					offset += HEADER_SIZE + length;
+				}
+				end = base + offset;
+				if (s == bases.size() - 1 || (offset + HEADER_SIZE <= size && buffer.getInt(offset) != 0)) {
+					// End of the last segment, or a damaged record
+					return end;
+				}
+				// The rest of a full segment is unused; continue in the next one
+				end = bases.get(s + 1);
+			}
+		}
+		return end;
+	}
+
+	private static void dispatch(ByteBuffer body, Visitor visitor) {
+		byte type = body.get();
+		switch (type) {
+		case CUSTOMER:
+			visitor.customer(body.getInt(), getString(body));
+			break;
+		case ACCOUNT:
+			visitor.account(body.getInt(), body.getInt(), Account.Type.values()[body.get()]);
+			break;
+		case DESCRIPTION:
+			visitor.description(body.getInt(), getString(body));
+			break;
+		case TRANSACTION:
+			visitor.transaction(body.getInt(), body.getInt(), body.getLong(), body.getLong(), body.getInt());
+			break;
+		default:
+			throw new IllegalStateException("unknown journal record type " + type);
+		}
+	}
+
+	private static String getString(ByteBuffer body) {
+		int length = body.getShort() & 0xFFFF;
+		if (length == NULL_STRING) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		body.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private Segment openSegment(long base, int size) throws IOException {
+		FileChannel channel = FileChannel.open(segmentPath(base), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		return new Segment(base, channel, buffer);
+	}
+
+	private Path segmentPath(long base) {
+		return directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+	}
+
+	private List<Long> segmentBases() throws IOException {
+		List<Long> bases = new ArrayList<Long>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+			for (Path path : stream) {
+				String name = path.getFileName().toString();
+				bases.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+			}
+		}
+		Collections.sort(bases);
+		return bases;
+	}
+}
@@ -0,0 +1,615 @@
+package com.abc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Columnar, append-only transaction log for an account. Amounts in cents,
+ * timestamps and description ids are kept in chunks of primitive arrays, and
+ * Transaction objects are only created when a caller asks for them.
+ * 
+ * The ledger is lock-free. Its published state is an immutable Tail holding
+ * the length and the last entry, and writers append with a single
+ * compare-and-set of the tail. Before replacing a tail, a writer copies the
+ * entries it holds into the column arrays, so every entry before the last
+ * tail's entries is always in the arrays. Entries below the published length
+ * are never modified, so readers take a stable snapshot from one read of the
+ * tail, without copying or locking.
+ * 
+ * Full chunks of old entries can be moved to a HistoryArchive. The chunk is
+ * then replaced by one holding only its PeriodSummary, and views read its
+ * entries back from the archive when they are asked for.
+ * 
+ * Every entry also carries a version from the VersionClock, which never
+ * decreases along the ledger, so a BankSnapshot can cut the ledger at the
+ * last entry posted before it started.
+ */
+final class Ledger {
+	static final int CHUNK_SHIFT = 10;
+	static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	// Capacity of the first chunk; it doubles until it reaches CHUNK_SIZE so
+	// that accounts with short histories stay small
+	private static final int INITIAL_CAPACITY = 8;
+
+	static final int DEPOSIT = 0;
+	static final int WITHDRAWAL = 1;
+
+	// Reserved for interest postings, which only accounts make
+	static final int INTEREST = 2;
+
+	// Descriptions are interned into a dictionary shared by all ledgers, so each
+	// entry only stores an int id. The id array is copy-on-write so that
+	// readers look descriptions up without locking.
+	private static final Map<String, Integer> descriptionIds = new ConcurrentHashMap<String, Integer>();
+	private static volatile String[] descriptions = new String[16];
+	private static int descriptionCount;
+	private static final Object descriptionLock = new Object();
+
+	static {
+		descriptionId("deposit");
+		descriptionId("withdrawal");
+		descriptionId("interest");
+	}
+
+	/*
+	 * Published state of a ledger: its length and its last entry, and when the
+	 * tail was appended as part of a batch, the batch entries before it.
+	 * Subclasses carry state that has to change atomically with the ledger.
+	 */
+	static class Tail {
+		final int size;
+		final long amountCents;
+		final long time;
+		final int descriptionId;
+		final Batch batch;
+		// Version of the tail's entries, batch entries included
+		final long version;
+
+		Tail(int size, long amountCents, long time, int descriptionId) {
+			this(size, amountCents, time, descriptionId, null);
+		}
+
+		Tail(int size, long amountCents, long time, int descriptionId, Batch batch) {
+			this(size, amountCents, time, descriptionId, batch, 0);
+		}
+
+		Tail(int size, long amountCents, long time, int descriptionId, Batch batch, long version) {
+			this.size = size;
+			this.amountCents = amountCents;
+			this.time = time;
+			this.descriptionId = descriptionId;
+			this.batch = batch;
+			this.version = version;
+		}
+	}
+
+	/*
+	 * Entries appended together with a tail, all stamped with the tail's time.
+	 * The last of them is the tail's own entry; the others are copied into the
+	 * column arrays when the tail is materialized. The arrays must not be
+	 * modified once the batch is published.
+	 */
+	static final class Batch {
+		final long[] amounts;
+		final int[] descriptionIds;
+
+		Batch(long[] amounts, int[] descriptionIds) {
+			if (amounts.length == 0 || amounts.length != descriptionIds.length) {
+				throw new IllegalArgumentException("batch columns must be non-empty and of equal length");
+			}
+			this.amounts = amounts;
+			this.descriptionIds = descriptionIds;
+		}
+
+		int size() {
+			return amounts.length;
+		}
+	}
+
+	/*
+	 * One chunk of each column, or the summary of an archived chunk
+	 */
+	static final class Chunk {
+		final long[] amounts;
+		final long[] times;
+		final int[] descriptionIds;
+		final long[] versions;
+		final PeriodSummary period;
+
+		Chunk(int capacity) {
+			this(new long[capacity], new long[capacity], new int[capacity], new long[capacity]);
+		}
+
+		Chunk(long[] amounts, long[] times, int[] descriptionIds, long[] versions) {
+			this.amounts = amounts;
+			this.times = times;
+			this.descriptionIds = descriptionIds;
+			this.versions = versions;
+			this.period = null;
+		}
+
+		/*
+		 * Create the placeholder for an archived chunk
+		 */
+		Chunk(PeriodSummary period) {
+			this.amounts = null;
+			this.times = null;
+			this.descriptionIds = null;
+			this.versions = null;
+			this.period = period;
+		}
+
+		Chunk grow(int capacity) {
+			Chunk grown = new Chunk(capacity);
+			System.arraycopy(amounts, 0, grown.amounts, 0, amounts.length);
+			System.arraycopy(times, 0, grown.times, 0, times.length);
+			System.arraycopy(descriptionIds, 0, grown.descriptionIds, 0, descriptionIds.length);
+			System.arraycopy(versions, 0, grown.versions, 0, versions.length);
+			return grown;
+		}
+	}
+
+	/*
+	 * Immutable snapshot of the first entries of a ledger. Archived entries
+	 * are read back a chunk at a time; the last chunk read is kept, so reading
+	 * in order reads each chunk once. A view holding archived chunks must not
+	 * be shared between threads.
+	 */
+	static final class View {
+		private final Chunk[] chunks;
+		private final int size;
+		private int loadedIndex = -1;
+		private Chunk loaded;
+
+		View(Chunk[] chunks, int size) {
+			this.chunks = chunks;
+			this.size = size;
+		}
+
+		int size() {
+			return size;
+		}
+
+		long amountCents(int index) {
+			return chunk(index).amounts[index & CHUNK_MASK];
+		}
+
+		long time(int index) {
+			return chunk(index).times[index & CHUNK_MASK];
+		}
+
+		String description(int index) {
+			return descriptionForId(descriptionId(index));
+		}
+
+		int descriptionId(int index) {
+			return chunk(index).descriptionIds[index & CHUNK_MASK];
+		}
+
+		long version(int index) {
+			return chunk(index).versions[index & CHUNK_MASK];
+		}
+
+		/*
+		 * Return a view of the first entries of this one, with its own cache
+		 * of archived chunks
+		 * 
+		 * @param size number of entries, at most the size of this view
+		 * 
+		 * @return view of the entries
+		 */
+		View prefix(int size) {
+			if (size > this.size) {
+				throw new IllegalArgumentException("prefix is longer than the view");
+			}
+			return new View(chunks, size);
+		}
+
+		private Chunk chunk(int index) {
+			int chunkIndex = index >>> CHUNK_SHIFT;
+			Chunk chunk = chunks[chunkIndex];
+			if (chunk.period == null) {
+				return chunk;
+			}
+			if (loadedIndex != chunkIndex) {
+				loaded = chunk.period.load();
+				loadedIndex = chunkIndex;
+			}
+			return loaded;
+		}
+
+		/*
+		 * Calculate the sum of all amounts by walking the amount column
+		 * 
+		 * @return value of all entries in cents
+		 */
+		long sumCents() {
+			long amount = 0;
+			int remaining = size;
+			for (int c = 0; remaining > 0; c++) {
+				int n = Math.min(remaining, CHUNK_SIZE);
+				PeriodSummary period = chunks[c].period;
+				if (period != null) {
+					// Archived chunks are always full
+					amount += period.getNetFlowCents();
+				} else {
+					long[] amounts = chunks[c].amounts;
+					for (int i = 0; i < n; i++) {
+						amount += amounts[i];
+					}
+				}
+				remaining -= n;
+			}
+			return amount;
+		}
+
+		/*
+		 * Build a Transaction object for the given entry
+		 * 
+		 * @param index position in the ledger
+		 * 
+		 * @return transaction
+		 */
+		Transaction transaction(int index) {
+			return new Transaction(amountCents(index), description(index), time(index));
+		}
+
+		/*
+		 * Build Transaction objects for every entry
+		 * 
+		 * @return list of transactions in ledger order
+		 */
+		List<Transaction> toTransactions() {
+			return toTransactions(0, size);
+		}
+
+		/*
+		 * Build Transaction objects for a range of entries
+		 * 
+		 * @param from index of the first entry
+		 * 
+		 * @param to index after the last entry
+		 * 
+		 * @return list of transactions in ledger order
+		 */
+		List<Transaction> toTransactions(int from, int to) {
+			List<Transaction> result = new ArrayList<Transaction>(to - from);
+			for (int i = from; i < to; i++) {
+				result.add(transaction(i));
+			}
+			return result;
+		}
+
+		/*
+		 * Find the first entry stamped at or after the given time. Entry times
+		 * must not decrease along the ledger, as accounts ensure.
+		 * 
+		 * The chunk is found from the first time of each chunk, which archived
+		 * chunks keep in their PeriodSummary, and the entry by a binary search
+		 * within it, so at most one archived chunk is read back.
+		 * 
+		 * @param time milliseconds since the epoch
+		 * 
+		 * @return index of the entry, or size if every entry is earlier
+		 */
+		int indexOf(long time) {
+			// Last chunk whose first entry is earlier than the time
+			int low = 0;
+			int high = (size + CHUNK_MASK) >>> CHUNK_SHIFT;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (firstTime(mid) < time) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			if (low == 0) {
+				return 0;
+			}
+			int from = (low - 1) << CHUNK_SHIFT;
+			int to = Math.min(size, low << CHUNK_SHIFT);
+			while (from < to) {
+				int mid = (from + to) >>> 1;
+				if (time(mid) < time) {
+					from = mid + 1;
+				} else {
+					to = mid;
+				}
+			}
+			return from;
+		}
+
+		private long firstTime(int chunkIndex) {
+			Chunk chunk = chunks[chunkIndex];
+			return chunk.period != null ? chunk.period.getFirstTime() : chunk.times[0];
+		}
+	}
+
+	private final AtomicReference<Tail> tail;
+	private final AtomicReference<Chunk[]> chunks = new AtomicReference<Chunk[]>(new Chunk[0]);
+
+	Ledger() {
+		this(new Tail(0, 0, 0, DEPOSIT));
+	}
+
+	/*
+	 * Create an empty ledger
+	 * 
+	 * @param empty initial tail, which must have a size of zero
+	 * 
+	 * @throws IllegalArgumentException if the tail is not empty
+	 */
+	Ledger(Tail empty) {
+		if (empty.size != 0) {
+			throw new IllegalArgumentException("initial tail must be empty");
+		}
+		this.tail = new AtomicReference<Tail>(empty);
+	}
+
+	/*
+	 * Return the id for the given description, adding it to the dictionary if
+	 * needed
+	 * 
+	 * @param description transaction description
+	 * 
+	 * @return description id
+	 * 
+	 * @throws NullPointerException if the description is null
+	 */
+	static int descriptionId(String description) {
+		Integer id = descriptionIds.get(description);
+		if (id != null) {
+			return id;
+		}
+		synchronized (descriptionLock) {
+			id = descriptionIds.get(description);
+			if (id == null) {
+				String[] current = descriptions;
+				id = descriptionCount++;
+				if (id == current.length) {
+					current = Arrays.copyOf(current, id * 2);
+				}
+				current[id] = description;
+				descriptions = current;
+				descriptionIds.put(description, id);
+			}
+		}
+		return id;
+	}
+
+	/*
+	 * Return the description for the given id
+	 * 
+	 * @param id description id
+	 * 
+	 * @return description
+	 */
+	static String descriptionForId(int id) {
+		return descriptions[id];
+	}
+
+	/*
+	 * Return every description in the dictionary, indexed by id
+	 * 
+	 * @return copy of the dictionary
+	 */
+	static String[] descriptionDictionary() {
+		synchronized (descriptionLock) {
+			return Arrays.copyOf(descriptions, descriptionCount);
+		}
+	}
+
+	/*
+	 * Return the published state of the ledger
+	 * 
+	 * @return current tail
+	 */
+	Tail tail() {
+		return tail.get();
+	}
+
+	/*
+	 * Append an entry if the ledger has not changed since the expected tail was
+	 * read
+	 * 
+	 * @param expected tail the new entry follows
+	 * 
+	 * @param next tail holding the new entry, one longer than expected
+	 * 
+	 * @return true if the entry was appended, false if another writer got there
+	 * first and the caller should retry from the new tail
+	 */
+	boolean compareAndAppend(Tail expected, Tail next) {
+		int appended = next.batch == null ? 1 : next.batch.size();
+		if (next.size != expected.size + appended) {
+			throw new IllegalArgumentException("next tail must follow the expected tail");
+		}
+		materialize(expected);
+		return tail.compareAndSet(expected, next);
+	}
+
+	/*
+	 * Append an entry to the end of the ledger
+	 * 
+	 * @param amountCents value in cents, negative for withdrawals
+	 * 
+	 * @param time transaction time in milliseconds since the epoch
+	 * 
+	 * @param descriptionId id of the transaction description
+	 */
+	void append(long amountCents, long time, int descriptionId) {
+		Tail current;
+		do {
+			current = tail.get();
+		} while (!compareAndAppend(current, new Tail(current.size + 1, amountCents, time, descriptionId, null, current.version)));
+	}
+
+	/*
+	 * Fill an empty ledger with entries in bulk, e.g. from a snapshot
+	 * 
+	 * @param amounts amount column
+	 * 
+	 * @param times time column
+	 * 
+	 * @param descriptionIds description column
+	 * 
+	 * @param last tail holding the last entry, whose size is the number of
+	 * entries to load; like any tail, it carries the last entry itself
+	 * 
+	 * @throws IllegalStateException if the ledger is not empty
+	 */
+	void load(long[] amounts, long[] times, int[] descriptionIds, Tail last) {
+		Tail empty = tail.get();
+		if (empty.size != 0) {
+			throw new IllegalStateException("ledger is not empty");
+		}
+		int count = last.size - 1;
+		int chunkCount = (count + CHUNK_SIZE - 1) >>> CHUNK_SHIFT;
+		Chunk[] loaded = new Chunk[chunkCount];
+		for (int c = 0; c < chunkCount; c++) {
+			int from = c << CHUNK_SHIFT;
+			int n = Math.min(CHUNK_SIZE, count - from);
+			Chunk chunk = new Chunk(c == 0 ? Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, n - 1)) << 1) : CHUNK_SIZE);
+			System.arraycopy(amounts, from, chunk.amounts, 0, n);
+			System.arraycopy(times, from, chunk.times, 0, n);
+			System.arraycopy(descriptionIds, from, chunk.descriptionIds, 0, n);
+			loaded[c] = chunk;
+		}
+		Chunk[] current = chunks.get();
+		if (current.length != 0 || !chunks.compareAndSet(current, loaded) || !tail.compareAndSet(empty, last)) {
+			throw new IllegalStateException("ledger changed while loading");
+		}
+	}
+
+	/*
+	 * Replace a full chunk with the summary of its entries, once they are in
+	 * the archive
+	 * 
+	 * @param chunkIndex index of the chunk
+	 * 
+	 * @param period summary of the chunk's entries
+	 * 
+	 * @return true if the chunk was replaced, false if it is not a full chunk
+	 * held in memory
+	 */
+	boolean archive(int chunkIndex, PeriodSummary period) {
+		for (;;) {
+			Chunk[] current = chunks.get();
+			if (chunkIndex >= current.length || current[chunkIndex].period != null || current[chunkIndex].amounts.length != CHUNK_SIZE) {
+				return false;
+			}
+			Chunk[] archived = current.clone();
+			archived[chunkIndex] = new Chunk(period);
+			if (chunks.compareAndSet(current, archived)) {
+				return true;
+			}
+		}
+	}
+
+	/*
+	 * Return the summaries of the archived chunks, which always come first
+	 * 
+	 * @return period summaries in ledger order
+	 */
+	List<PeriodSummary> periods() {
+		List<PeriodSummary> periods = new ArrayList<PeriodSummary>();
+		for (Chunk chunk : chunks.get()) {
+			if (chunk.period == null) {
+				break;
+			}
+			periods.add(chunk.period);
+		}
+		return periods;
+	}
+
+	/*
+	 * Copy the entries held by a tail into the column arrays. Any thread may
+	 * do this, and repeating it writes the same values again.
+	 */
+	private void materialize(Tail t) {
+		if (t.size == 0) {
+			return;
+		}
+		Batch batch = t.batch;
+		if (batch != null) {
+			int first = t.size - batch.size();
+			for (int i = 0; i < batch.size() - 1; i++) {
+				write(first + i, batch.amounts[i], t.time, batch.descriptionIds[i], t.version);
+			}
+		}
+		write(t.size - 1, t.amountCents, t.time, t.descriptionId, t.version);
+	}
+
+	/*
+	 * Write one entry into the column arrays, growing them if needed
+	 */
+	private void write(int index, long amountCents, long time, int descriptionId, long version) {
+		int chunkIndex = index >>> CHUNK_SHIFT;
+		int offset = index & CHUNK_MASK;
+		for (;;) {
+			Chunk[] current = chunks.get();
+			if (chunkIndex < current.length && current[chunkIndex].period != null) {
+				// Archived with the same values by now
+				return;
+			}
+			if (chunkIndex == current.length || offset >= current[chunkIndex].amounts.length) {
+				Chunk[] grown = Arrays.copyOf(current, Math.max(current.length, chunkIndex + 1));
+				if (chunkIndex == current.length) {
+					grown[chunkIndex] = new Chunk(chunkIndex == 0 ? INITIAL_CAPACITY : CHUNK_SIZE);
+				} else {
+					grown[chunkIndex] = current[chunkIndex].grow(current[chunkIndex].amounts.length * 2);
+				}
+				chunks.compareAndSet(current, grown);
+				continue;
+			}
+			Chunk chunk = current[chunkIndex];
+			chunk.amounts[offset] = amountCents;
+			chunk.times[offset] = time;
+			chunk.descriptionIds[offset] = descriptionId;
+			chunk.versions[offset] = version;
+
+			// A chunk grown concurrently may have copied the arrays before this
+			// write, in which case write again into the new chunk
+			if (chunks.get() == current) {
+				return;
+			}
+		}
+	}
+
+	/*
+	 * Return the published length
+	 * 
+	 * @return number of readable entries
+	 */
+	int size() {
+		return tail.get().size;
+	}
+
+	/*
+	 * Return a snapshot of every published entry
+	 * 
+	 * @return view of the ledger
+	 */
+	View view() {
+		return view(tail.get());
+	}
+
+	/*
+	 * Return a snapshot of the ledger as of the given tail
+	 * 
+	 * @param t tail previously read from this ledger
+	 * 
+	 * @return view of the first t.size entries
+	 */
+	View view(Tail t) {
+		materialize(t);
+		return new View(chunks.get(), t.size);
+	}
+}
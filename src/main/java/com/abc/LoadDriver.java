@@ -0,0 +1,566 @@
+package com.abc;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Load generator which builds a bank of a given size and drives a weighted
+ * mix of operations against it from many concurrent workers, then reports
+ * throughput and latency percentiles per operation and checks the bank's
+ * invariants.
+ * 
+ * Each worker runs on its own virtual thread when the JVM provides them,
+ * found by reflection so the driver still runs on older JVMs, where workers
+ * share a bounded pool of platform threads instead. Accounts are picked with
+ * a skew: a share of the operations goes to a small set of hot accounts, the
+ * rest is spread over all accounts.
+ * 
+ * Latencies are kept per worker in log-linear histograms and merged at the
+ * end, so percentiles are accurate to within 1/16 of the value.
+ * 
+ * Run from the command line with
+ * java com.abc.LoadDriver [customers [accountsPerCustomer [workers [operationsPerWorker]]]]
+ */
+public final class LoadDriver {
+	// Platform threads used for workers when virtual threads are unavailable
+	private static final int MAX_PLATFORM_THREADS = 256;
+	// Opening balance of every account
+	private static final long OPENING_CENTS = 100000;
+	// Largest amount moved by one operation
+	private static final long MAX_AMOUNT_CENTS = 5000;
+	// Violations listed in a report; further ones are only counted
+	private static final int MAX_VIOLATIONS = 20;
+
+	/*
+	 * Operations in the mix
+	 */
+	public static enum Operation {
+		DEPOSIT("deposit", 30), WITHDRAW("withdraw", 20), TRANSFER("transfer", 30), STATEMENT("getStatement", 15), CUSTOMER_SUMMARY("customerSummary",
+				1), TOTAL_INTEREST_PAID("totalInterestPaid", 4);
+
+		private final String label;
+		private final int defaultWeight;
+
+		Operation(String label, int defaultWeight) {
+			this.label = label;
+			this.defaultWeight = defaultWeight;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/*
+	 * Outcome of one run
+	 */
+	public static final class Report {
+		private final Map<Operation, Latencies> latencies;
+		private final Map<Operation, Long> rejected;
+		private final List<String> violations;
+		private final long violationCount;
+		private final long nanos;
+		private final boolean virtualThreads;
+
+		Report(Map<Operation, Latencies> latencies, Map<Operation, Long> rejected, List<String> violations, long violationCount, long nanos,
+				boolean virtualThreads) {
+			this.latencies = latencies;
+			this.rejected = rejected;
+			this.violations = Collections.unmodifiableList(violations);
+			this.violationCount = violationCount;
+			this.nanos = nanos;
+			this.virtualThreads = virtualThreads;
+		}
+
+		/*
+		 * Return the number of times an operation ran, including transfers
+		 * rejected for insufficient funds
+		 */
+		public long getCount(Operation operation) {
+			return latencies.get(operation).count();
+		}
+
+		/*
+		 * Return the number of runs refused for insufficient funds, which only
+		 * transfers check
+		 */
+		public long getRejected(Operation operation) {
+			return rejected.get(operation);
+		}
+
+		public long getTotalCount() {
+			long count = 0;
+			for (Operation operation : Operation.values()) {
+				count += getCount(operation);
+			}
+			return count;
+		}
+
+		/*
+		 * Return an upper bound of a latency percentile, accurate to within
+		 * 1/16 of the value
+		 * 
+		 * @param percentile between 0 and 100
+		 * 
+		 * @return latency in nanoseconds, or 0 if the operation never ran
+		 */
+		public long getPercentileNanos(Operation operation, double percentile) {
+			return latencies.get(operation).percentile(percentile);
+		}
+
+		/*
+		 * Return the operations completed per second over the whole run
+		 */
+		public double getThroughput() {
+			return nanos == 0 ? 0 : getTotalCount() * 1e9 / nanos;
+		}
+
+		/*
+		 * Return the invariant violations found after the run and the
+		 * unexpected exceptions thrown during it, up to a limit
+		 * 
+		 * @return descriptions of the violations; empty if the bank is
+		 * consistent
+		 */
+		public List<String> getViolations() {
+			return violations;
+		}
+
+		/*
+		 * Return the number of violations, including those not listed
+		 */
+		public long getViolationCount() {
+			return violationCount;
+		}
+
+		/*
+		 * Return how long the operations took, from the release of the
+		 * workers until the last one finished
+		 * 
+		 * @return elapsed time in nanoseconds
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/*
+		 * Return whether the workers ran on virtual threads
+		 */
+		public boolean isVirtualThreads() {
+			return virtualThreads;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder out = new StringBuilder();
+			out.append(String.format("%,d operations in %.1f ms on %s threads: %,.0f ops/s%n", getTotalCount(), nanos / 1e6,
+					virtualThreads ? "virtual" : "platform", getThroughput()));
+			out.append(String.format("%-18s %12s %10s %12s %12s %12s%n", "operation", "count", "rejected", "p50 us", "p99 us", "p99.9 us"));
+			for (Operation operation : Operation.values()) {
+				out.append(String.format("%-18s %,12d %,10d %,12.1f %,12.1f %,12.1f%n", operation.label, getCount(operation), getRejected(operation),
+						getPercentileNanos(operation, 50) / 1e3, getPercentileNanos(operation, 99) / 1e3, getPercentileNanos(operation, 99.9) / 1e3));
+			}
+			out.append(String.format("%,d invariant violations%n", violationCount));
+			for (String violation : violations) {
+				out.append("  ").append(violation).append(String.format("%n"));
+			}
+			return out.toString();
+		}
+	}
+
+	/*
+	 * Log-linear histogram of non-negative values: exact below 16, then 16
+	 * buckets per power of two. Not thread-safe; each worker keeps its own.
+	 */
+	static final class Latencies {
+		private static final int SUB_BITS = 4;
+		private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+		private final long[] counts = new long[64 * SUB_BUCKETS];
+
+		void record(long value) {
+			counts[bucket(Math.max(0, value))]++;
+		}
+
+		void add(Latencies other) {
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] += other.counts[i];
+			}
+		}
+
+		long count() {
+			long count = 0;
+			for (long c : counts) {
+				count += c;
+			}
+			return count;
+		}
+
+		long percentile(double percentile) {
+			long count = count();
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+			long seen = 0;
+			for (int b = 0; b < counts.length; b++) {
+				seen += counts[b];
+				if (seen >= rank) {
+					return upperBound(b);
+				}
+			}
+			return Long.MAX_VALUE;
+		}
+
+		static int bucket(long value) {
+			if (value < SUB_BUCKETS) {
+				return (int) value;
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+			return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+		}
+
+		static long upperBound(int bucket) {
+			if (bucket < SUB_BUCKETS) {
+				return bucket;
+			}
+			int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+			long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+			return lower + (1L << (exponent - SUB_BITS)) - 1;
+		}
+	}
+
+	private final Bank bank;
+	private final Customer[] customers;
+	private final Account[] accounts;
+	private final int accountsPerCustomer;
+	private final Map<Operation, Integer> weights = new EnumMap<Operation, Integer>(Operation.class);
+	private double hotFraction = 0.01;
+	private double hotShare = 0.5;
+
+	/*
+	 * Build a bank of the given size. Customers hold one account of each type
+	 * in turn, and every account opens with $1,000.00.
+	 * 
+	 * @param customers number of customers
+	 * 
+	 * @param accountsPerCustomer number of accounts of each customer
+	 * 
+	 * @throws IllegalArgumentException if either count is not positive
+	 */
+	public LoadDriver(int customers, int accountsPerCustomer) {
+		if (customers <= 0 || accountsPerCustomer <= 0) {
+			throw new IllegalArgumentException("bank size must be positive");
+		}
+		this.bank = new Bank();
+		this.customers = new Customer[customers];
+		this.accounts = new Account[customers * accountsPerCustomer];
+		this.accountsPerCustomer = accountsPerCustomer;
+		Account.Type[] types = Account.Type.values();
+		for (int c = 0; c < customers; c++) {
+			Customer customer = new Customer("Customer " + c);
+			for (int a = 0; a < accountsPerCustomer; a++) {
+				Account account = new Account(types[(c + a) % types.length]);
+				account.depositCents(OPENING_CENTS, "opening");
+				customer.openAccount(account);
+				accounts[c * accountsPerCustomer + a] = account;
+			}
+			bank.addCustomer(customer);
+			this.customers[c] = customer;
+		}
+		for (Operation operation : Operation.values()) {
+			weights.put(operation, operation.defaultWeight);
+		}
+	}
+
+	/*
+	 * Return the bank the load runs against
+	 */
+	public Bank getBank() {
+		return bank;
+	}
+
+	/*
+	 * Set the relative weight of an operation in the mix
+	 * 
+	 * @param operation operation to weigh
+	 * 
+	 * @param weight relative weight; zero leaves the operation out
+	 * 
+	 * @throws IllegalArgumentException if the weight is negative
+	 */
+	public void setWeight(Operation operation, int weight) {
+		if (weight < 0) {
+			throw new IllegalArgumentException("weight must not be negative");
+		}
+		weights.put(operation, weight);
+	}
+
+	/*
+	 * Set the skew toward hot accounts
+	 * 
+	 * @param hotFraction fraction of the accounts which are hot, at least
+	 * one account
+	 * 
+	 * @param hotShare fraction of the operations directed at hot accounts
+	 * 
+	 * @throws IllegalArgumentException if either fraction is outside [0, 1]
+	 */
+	public void setSkew(double hotFraction, double hotShare) {
+		if (!(hotFraction >= 0 && hotFraction <= 1 && hotShare >= 0 && hotShare <= 1)) {
+			throw new IllegalArgumentException("fractions must be between 0 and 1");
+		}
+		this.hotFraction = hotFraction;
+		this.hotShare = hotShare;
+	}
+
+	/*
+	 * Run the mix and check the bank afterwards
+	 * 
+	 * @param workers number of concurrent workers
+	 * 
+	 * @param operationsPerWorker operations each worker runs
+	 * 
+	 * @return outcome of the run
+	 * 
+	 * @throws IllegalArgumentException if a count is not positive or every
+	 * weight is zero
+	 * 
+	 * @throws InterruptedException if interrupted while waiting for the
+	 * workers
+	 */
+	public Report run(int workers, final int operationsPerWorker) throws InterruptedException {
+		if (workers <= 0 || operationsPerWorker <= 0) {
+			throw new IllegalArgumentException("counts must be positive");
+		}
+		final Operation[] operations = Operation.values();
+		final int[] cumulative = new int[operations.length];
+		int total = 0;
+		for (int i = 0; i < operations.length; i++) {
+			total += weights.get(operations[i]);
+			cumulative[i] = total;
+		}
+		if (total == 0) {
+			throw new IllegalArgumentException("mix is empty");
+		}
+		final int totalWeight = total;
+		final int hotAccounts = Math.max(1, (int) (accounts.length * hotFraction));
+
+		final Map<Operation, Latencies> latencies = new EnumMap<Operation, Latencies>(Operation.class);
+		final Map<Operation, LongAdder> rejected = new EnumMap<Operation, LongAdder>(Operation.class);
+		for (Operation operation : operations) {
+			latencies.put(operation, new Latencies());
+			rejected.put(operation, new LongAdder());
+		}
+		final LongAdder deposited = new LongAdder();
+		final LongAdder withdrawn = new LongAdder();
+		final List<String> violations = new ArrayList<String>();
+		final LongAdder violationCount = new LongAdder();
+		long balanceBefore = totalBalanceCents();
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(workers);
+		ExecutorService executor = virtualThreadExecutor();
+		boolean virtualThreads = executor != null;
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(Math.min(workers, MAX_PLATFORM_THREADS));
+		}
+		try {
+			for (int w = 0; w < workers; w++) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						Latencies[] local = new Latencies[operations.length];
+						for (int i = 0; i < local.length; i++) {
+							local[i] = new Latencies();
+						}
+						try {
+							start.await();
+							ThreadLocalRandom random = ThreadLocalRandom.current();
+							for (int n = 0; n < operationsPerWorker; n++) {
+								int pick = random.nextInt(totalWeight);
+								int o = 0;
+								while (cumulative[o] <= pick) {
+									o++;
+								}
+								long started = System.nanoTime();
+								try {
+									execute(operations[o], random, hotAccounts, deposited, withdrawn);
+								} catch (IllegalStateException e) {
+									// Insufficient funds
+									rejected.get(operations[o]).increment();
+								} catch (RuntimeException e) {
+									violation(violations, violationCount, operations[o].label + " threw " + e);
+								}
+								local[o].record(System.nanoTime() - started);
+							}
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						} finally {
+							synchronized (latencies) {
+								for (int i = 0; i < local.length; i++) {
+									latencies.get(operations[i]).add(local[i]);
+								}
+							}
+							done.countDown();
+						}
+					}
+				});
+			}
+			long started = System.nanoTime();
+			start.countDown();
+			done.await();
+			long nanos = System.nanoTime() - started;
+
+			checkInvariants(balanceBefore + deposited.sum() - withdrawn.sum(), violations, violationCount);
+			Map<Operation, Long> rejectedCounts = new EnumMap<Operation, Long>(Operation.class);
+			for (Operation operation : operations) {
+				rejectedCounts.put(operation, rejected.get(operation).sum());
+			}
+			return new Report(latencies, rejectedCounts, violations, violationCount.sum(), nanos, virtualThreads);
+		} finally {
+			executor.shutdownNow();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+	}
+
+	private void execute(Operation operation, ThreadLocalRandom random, int hotAccounts, LongAdder deposited, LongAdder withdrawn) {
+		long cents = 1 + random.nextLong(MAX_AMOUNT_CENTS);
+		switch (operation) {
+		case DEPOSIT:
+			accounts[pick(random, hotAccounts)].depositCents(cents, "deposit");
+			deposited.add(cents);
+			break;
+		case WITHDRAW:
+			accounts[pick(random, hotAccounts)].withdrawCents(cents, "withdrawal");
+			withdrawn.add(cents);
+			break;
+		case TRANSFER:
+			if (accounts.length > 1) {
+				int source = pick(random, hotAccounts);
+				int destination = pick(random, hotAccounts);
+				if (source == destination) {
+					// Any other account
+					destination = (source + 1 + random.nextInt(accounts.length - 1)) % accounts.length;
+				}
+				bank.transfer(accounts[source].getAccountNumber(), accounts[destination].getAccountNumber(), cents);
+			}
+			break;
+		case STATEMENT:
+			customers[pick(random, hotAccounts) / accountsPerCustomer].getStatement();
+			break;
+		case CUSTOMER_SUMMARY:
+			bank.customerSummary();
+			break;
+		case TOTAL_INTEREST_PAID:
+			bank.totalInterestPaidCents();
+			break;
+		}
+	}
+
+	/*
+	 * Pick an account, from the hot set with probability hotShare
+	 * 
+	 * @return index of the account
+	 */
+	private int pick(ThreadLocalRandom random, int hotAccounts) {
+		return random.nextDouble() < hotShare ? random.nextInt(hotAccounts) : random.nextInt(accounts.length);
+	}
+
+	private long totalBalanceCents() {
+		long total = 0;
+		for (Account account : accounts) {
+			total += account.getBalanceCents();
+		}
+		return total;
+	}
+
+	/*
+	 * Check that no money was lost or made, that every account's balance
+	 * matches its history, and that account numbers are unique and resolve to
+	 * their accounts. Withdrawals may overdraw an account; only transfers
+	 * check funds.
+	 */
+	private void checkInvariants(long expectedCents, List<String> violations, LongAdder violationCount) {
+		long total = totalBalanceCents();
+		if (total != expectedCents) {
+			violation(violations, violationCount, "bank holds " + total + " cents, expected " + expectedCents);
+		}
+		Set<Integer> numbers = new HashSet<Integer>();
+		for (Account account : accounts) {
+			int number = account.getAccountNumber();
+			if (!numbers.add(number)) {
+				violation(violations, violationCount, "duplicate account number " + number);
+			}
+			if (bank.findAccount(number) != account) {
+				violation(violations, violationCount, "account " + number + " does not resolve to itself");
+			}
+			// The running balance against a walk of the entries it follows
+			Account.Checkpoint tail = (Account.Checkpoint) account.getLedger().tail();
+			long sum = account.getLedger().view(tail).sumCents();
+			if (tail.balanceCents != sum) {
+				violation(violations, violationCount, "account " + number + " balance " + tail.balanceCents + " does not match its transactions, which sum to "
+						+ sum);
+			}
+		}
+		if (bank.getNumberOfCustomers() != customers.length) {
+			violation(violations, violationCount, "bank has " + bank.getNumberOfCustomers() + " customers, expected " + customers.length);
+		}
+	}
+
+	private static void violation(List<String> violations, LongAdder violationCount, String violation) {
+		violationCount.increment();
+		synchronized (violations) {
+			if (violations.size() < MAX_VIOLATIONS) {
+				violations.add(violation);
+			}
+		}
+	}
+
+	/*
+	 * Create an executor starting a virtual thread per task, if the JVM
+	 * supports them
+	 * 
+	 * @return executor, or null on JVMs without virtual threads
+	 */
+	static ExecutorService virtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (IllegalAccessException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			// Virtual threads are a preview feature which is not enabled
+			return null;
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int customers = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int accountsPerCustomer = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		int workers = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+		int operationsPerWorker = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+		LoadDriver driver = new LoadDriver(customers, accountsPerCustomer);
+		Report report = driver.run(workers, operationsPerWorker);
+		System.out.print(report);
+		if (report.getViolationCount() != 0) {
+			System.exit(1);
+		}
+	}
+}
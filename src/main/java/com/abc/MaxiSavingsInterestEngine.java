@@ -0,0 +1,32 @@
+package com.abc;
+
+/*
+ * Maxi-Savings accounts have a rate of 5% per-annum, accrued daily, assuming no
+ * withdrawals in the past 10 days otherwise 0.1%. A period is split into at
+ * most two segments: the remaining low-rate days and the days after them.
+ */
+public class MaxiSavingsInterestEngine implements InterestEngine {
+	private static final int LOW_RATE_DAYS = 10;
+	private static final double LOW_DAILY_FACTOR = 1 + 0.001 / 365;
+	private static final double HIGH_DAILY_FACTOR = 1 + 0.05 / 365;
+
+	@Override
+	public double accrue(double balance, int lowRateDays, int days) {
+		if (days <= 0) {
+			return balance;
+		}
+		int daysAtLowRate = Math.min(Math.max(lowRateDays, 0), days);
+		if (daysAtLowRate > 0) {
+			balance *= Math.pow(LOW_DAILY_FACTOR, daysAtLowRate);
+		}
+		if (days > daysAtLowRate) {
+			balance *= Math.pow(HIGH_DAILY_FACTOR, days - daysAtLowRate);
+		}
+		return balance;
+	}
+
+	@Override
+	public int lowRateDaysAfterWithdrawal() {
+		return LOW_RATE_DAYS;
+	}
+}
@@ -0,0 +1,400 @@
+package com.abc;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/*
+ * Counters and latency histograms for the hot paths of the bank, published
+ * through the MetricsMXBean registered as com.abc:type=Metrics.
+ * 
+ * Recording is striped over LongAdders and never allocates once an adder's
+ * cells exist. Latencies go into power-of-two buckets, so a percentile is
+ * known to within a factor of two. Instrumentation is switched off for the
+ * life of the JVM with -Dcom.abc.metrics=false; ENABLED is then a constant
+ * false and the JIT removes the recording code, timer reads included.
+ * 
+ * Call sites read start() when an operation begins and pass the result to
+ * record() when it completes. Monitors are timed with lockRequested() before
+ * entering, lockAcquired() on entry and lockReleased() on the way out.
+ */
+public final class Metrics {
+	public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("com.abc.metrics", "true"));
+
+	static final String OBJECT_NAME = "com.abc:type=Metrics";
+
+	// Values up to 2^63 fall in one of 64 buckets, plus one for zero
+	private static final int BUCKETS = 65;
+
+	/*
+	 * Timed operations
+	 */
+	public static enum Operation {
+		DEPOSIT("deposit"), WITHDRAW("withdraw"), TRANSFER("transfer"), INTEREST_EARNED("interestEarned"), STATEMENT("getStatement"), CUSTOMER_SUMMARY(
+				"customerSummary"), TOTAL_INTEREST_PAID("totalInterestPaid");
+
+		private final String label;
+		final Histogram latency = new Histogram();
+
+		Operation(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/*
+	 * Instrumented monitors
+	 */
+	public static enum Lock {
+		// Bank customer list
+		CUSTOMERS("customers"),
+		// Customer account list
+		ACCOUNTS("accounts"),
+		// Per-account locks taken by transfers, both counted as one acquisition
+		TRANSFER("transfer");
+
+		private final String label;
+		final Histogram wait = new Histogram();
+		final Histogram hold = new Histogram();
+
+		Lock(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/*
+	 * Striped histogram of non-negative values in power-of-two buckets
+	 */
+	static final class Histogram {
+		private final LongAdder[] buckets = new LongAdder[BUCKETS];
+		private final LongAdder sum = new LongAdder();
+
+		Histogram() {
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		void record(long value) {
+			record(value, 1);
+		}
+
+		/*
+		 * Record the same value a number of times
+		 */
+		void record(long value, long times) {
+			if (value < 0) {
+				value = 0;
+			}
+			buckets[bucket(value)].add(times);
+			sum.add(value * times);
+		}
+
+		long count() {
+			long count = 0;
+			for (LongAdder bucket : buckets) {
+				count += bucket.sum();
+			}
+			return count;
+		}
+
+		long sum() {
+			return sum.sum();
+		}
+
+		/*
+		 * Return an upper bound of the given percentile
+		 * 
+		 * @param percentile between 0 and 100
+		 * 
+		 * @return smallest bucket bound at or below which the percentile of the
+		 * values falls, or 0 if nothing was recorded
+		 */
+		long percentile(double percentile) {
+			long[] counts = new long[BUCKETS];
+			long count = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = buckets[i].sum();
+				count += counts[i];
+			}
+			if (count == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(count * percentile / 100);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= Math.max(1, rank)) {
+					return upperBound(i);
+				}
+			}
+			return upperBound(BUCKETS - 1);
+		}
+
+		void reset() {
+			for (LongAdder bucket : buckets) {
+				bucket.reset();
+			}
+			sum.reset();
+		}
+	}
+
+	// Accounts by history length, bucketed by power of two: bucket 0 holds
+	// empty accounts, bucket b holds lengths from 2^(b-1) to 2^b - 1
+	private static final LongAdder[] historyLengths = new LongAdder[33];
+
+	static {
+		for (int i = 0; i < historyLengths.length; i++) {
+			historyLengths[i] = new LongAdder();
+		}
+		if (ENABLED) {
+			register();
+		}
+	}
+
+	private Metrics() {
+	}
+
+	/*
+	 * Read the timer at the start of an operation
+	 * 
+	 * @return start time, or 0 if metrics are disabled
+	 */
+	static long start() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	/*
+	 * Count an operation and record its latency
+	 * 
+	 * @param operation operation which completed
+	 * 
+	 * @param started value returned by start when the operation began
+	 */
+	static void record(Operation operation, long started) {
+		if (ENABLED) {
+			operation.latency.record(System.nanoTime() - started);
+		}
+	}
+
+	/*
+	 * Count the deposits and withdrawals posted together in a batch, each
+	 * with an equal share of the batch's latency
+	 * 
+	 * @param deposits number of deposits in the batch
+	 * 
+	 * @param withdrawals number of withdrawals in the batch
+	 * 
+	 * @param started value returned by start when the batch began
+	 */
+	static void recordBatch(int deposits, int withdrawals, long started) {
+		if (ENABLED && deposits + withdrawals > 0) {
+			long share = (System.nanoTime() - started) / (deposits + withdrawals);
+			Operation.DEPOSIT.latency.record(share, deposits);
+			Operation.WITHDRAW.latency.record(share, withdrawals);
+		}
+	}
+
+	/*
+	 * Read the timer before waiting for a monitor
+	 * 
+	 * @return request time, or 0 if metrics are disabled
+	 */
+	static long lockRequested() {
+		return start();
+	}
+
+	/*
+	 * Record the wait for a monitor, once it is held
+	 * 
+	 * @param lock monitor acquired
+	 * 
+	 * @param requested value returned by lockRequested
+	 * 
+	 * @return acquisition time, to pass to lockReleased
+	 */
+	static long lockAcquired(Lock lock, long requested) {
+		if (!ENABLED) {
+			return 0;
+		}
+		long acquired = System.nanoTime();
+		lock.wait.record(acquired - requested);
+		return acquired;
+	}
+
+	/*
+	 * Record how long a monitor was held
+	 * 
+	 * @param lock monitor about to be released
+	 * 
+	 * @param acquired value returned by lockAcquired
+	 */
+	static void lockReleased(Lock lock, long acquired) {
+		if (ENABLED) {
+			lock.hold.record(System.nanoTime() - acquired);
+		}
+	}
+
+	/*
+	 * Move an account to the history length bucket of its new size. Accounts
+	 * are counted from when they are created, with a size of zero, and are
+	 * never removed, whether or not they belong to a bank.
+	 * 
+	 * @param previousSize number of entries before the change, or -1 for a
+	 * new account
+	 * 
+	 * @param size number of entries after the change
+	 */
+	static void historyGrew(int previousSize, int size) {
+		if (!ENABLED) {
+			return;
+		}
+		int to = bucket(size);
+		if (previousSize < 0) {
+			historyLengths[to].increment();
+			return;
+		}
+		int from = bucket(previousSize);
+		if (from != to) {
+			historyLengths[from].decrement();
+			historyLengths[to].increment();
+		}
+	}
+
+	private static int bucket(long value) {
+		return 64 - Long.numberOfLeadingZeros(value);
+	}
+
+	private static long upperBound(int bucket) {
+		return bucket == 0 ? 0 : bucket >= 64 ? Long.MAX_VALUE : (1L << bucket) - 1;
+	}
+
+	/*
+	 * Register the MXBean with the platform MBean server. A second copy of
+	 * this class, as loaded by some test runners, finds the name taken and
+	 * leaves the first registration in place.
+	 */
+	private static void register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new View(), new ObjectName(OBJECT_NAME));
+		} catch (JMException e) {
+			// Already registered, or JMX is unavailable; recording still works
+		} catch (SecurityException e) {
+			// Not permitted to register; recording still works
+		}
+	}
+
+	/*
+	 * Read-only view of the metrics published over JMX
+	 */
+	static final class View implements MetricsMXBean {
+		@Override
+		public boolean isEnabled() {
+			return ENABLED;
+		}
+
+		@Override
+		public Map<String, Long> getOperationCounts() {
+			Map<String, Long> result = new LinkedHashMap<String, Long>();
+			for (Operation operation : Operation.values()) {
+				result.put(operation.label, operation.latency.count());
+			}
+			return result;
+		}
+
+		@Override
+		public Map<String, Long> getOperationMeanNanos() {
+			Map<String, Long> result = new LinkedHashMap<String, Long>();
+			for (Operation operation : Operation.values()) {
+				result.put(operation.label, mean(operation.latency));
+			}
+			return result;
+		}
+
+		@Override
+		public Map<String, Long> getOperationP99Nanos() {
+			Map<String, Long> result = new LinkedHashMap<String, Long>();
+			for (Operation operation : Operation.values()) {
+				result.put(operation.label, operation.latency.percentile(99));
+			}
+			return result;
+		}
+
+		@Override
+		public Map<String, Long> getLockAcquisitions() {
+			Map<String, Long> result = new LinkedHashMap<String, Long>();
+			for (Lock lock : Lock.values()) {
+				result.put(lock.label, lock.wait.count());
+			}
+			return result;
+		}
+
+		@Override
+		public Map<String, Long> getLockWaitNanos() {
+			Map<String, Long> result = new LinkedHashMap<String, Long>();
+			for (Lock lock : Lock.values()) {
+				result.put(lock.label, lock.wait.sum());
+			}
+			return result;
+		}
+
+		@Override
+		public Map<String, Long> getLockHoldNanos() {
+			Map<String, Long> result = new LinkedHashMap<String, Long>();
+			for (Lock lock : Lock.values()) {
+				result.put(lock.label, lock.hold.sum());
+			}
+			return result;
+		}
+
+		@Override
+		public Map<String, Long> getHistoryLengthDistribution() {
+			Map<String, Long> result = new LinkedHashMap<String, Long>();
+			for (int b = 0; b < historyLengths.length; b++) {
+				long count = historyLengths[b].sum();
+				if (count != 0) {
+					long low = b == 0 ? 0 : 1L << (b - 1);
+					result.put(low + "-" + upperBound(b), count);
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public long operationPercentileNanos(String operation, double percentile) {
+			for (Operation o : Operation.values()) {
+				if (o.label.equals(operation)) {
+					return o.latency.percentile(percentile);
+				}
+			}
+			throw new IllegalArgumentException("unknown operation " + operation);
+		}
+
+		@Override
+		public void reset() {
+			for (Operation operation : Operation.values()) {
+				operation.latency.reset();
+			}
+			for (Lock lock : Lock.values()) {
+				lock.wait.reset();
+				lock.hold.reset();
+			}
+		}
+
+		private static long mean(Histogram histogram) {
+			long count = histogram.count();
+			return count == 0 ? 0 : histogram.sum() / count;
+		}
+	}
+}
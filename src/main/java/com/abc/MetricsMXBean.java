@@ -0,0 +1,62 @@
+package com.abc;
+
+import java.util.Map;
+
+/*
+ * JMX view of the bank metrics. Maps are keyed by operation or lock label;
+ * times are in nanoseconds.
+ */
+public interface MetricsMXBean {
+	/*
+	 * Return whether metrics are recorded in this JVM
+	 */
+	boolean isEnabled();
+
+	Map<String, Long> getOperationCounts();
+
+	Map<String, Long> getOperationMeanNanos();
+
+	/*
+	 * Return an upper bound of each operation's 99th percentile latency,
+	 * accurate to within a factor of two
+	 */
+	Map<String, Long> getOperationP99Nanos();
+
+	Map<String, Long> getLockAcquisitions();
+
+	/*
+	 * Return the total time spent waiting to enter each monitor
+	 */
+	Map<String, Long> getLockWaitNanos();
+
+	/*
+	 * Return the total time each monitor was held
+	 */
+	Map<String, Long> getLockHoldNanos();
+
+	/*
+	 * Return the number of accounts by history length, in power-of-two
+	 * ranges such as "4-7"; empty ranges are left out. Every account created
+	 * in this JVM is counted, including accounts no longer in use.
+	 */
+	Map<String, Long> getHistoryLengthDistribution();
+
+	/*
+	 * Return an upper bound of a latency percentile for an operation
+	 * 
+	 * @param operation operation label, e.g. "deposit"
+	 * 
+	 * @param percentile between 0 and 100
+	 * 
+	 * @return latency in nanoseconds
+	 * 
+	 * @throws IllegalArgumentException if the operation is unknown
+	 */
+	long operationPercentileNanos(String operation, double percentile);
+
+	/*
+	 * Clear the operation and lock statistics. The history length
+	 * distribution counts every account created and is not cleared.
+	 */
+	void reset();
+}
@@ -0,0 +1,90 @@
+package com.abc;
+
+import java.io.IOException;
+
+/*
+ * Conversions between dollar amounts held as doubles and the fixed-point
+ * representation used internally, a long count of cents. Sums of cents are
+ * exact, so totals do not depend on the order in which they are added up.
+ */
+public final class Money {
+	public static final long CENTS_PER_DOLLAR = 100;
+
+	// Largest dollar amount that converts to cents without overflowing
+	private static final double MAX_DOLLARS = Long.MAX_VALUE / CENTS_PER_DOLLAR;
+
+	private Money() {
+
+	}
+
+	/*
+	 * Convert a dollar amount to cents. Fractions of a cent are rounded
+	 * half-even, which is also the rounding policy applied to interest.
+	 * 
+	 * @param dollars dollar amount
+	 * 
+	 * @return amount in cents
+	 * 
+	 * @throws IllegalArgumentException if the amount is not finite or too large
+	 */
+	public static long toCents(double dollars) {
+		if (Double.isNaN(dollars) || Math.abs(dollars) > MAX_DOLLARS) {
+			throw new IllegalArgumentException("amount out of range: " + dollars);
+		}
+		return (long) Math.rint(dollars * CENTS_PER_DOLLAR);
+	}
+
+	/*
+	 * Convert cents to a dollar amount
+	 * 
+	 * @param cents amount in cents
+	 * 
+	 * @return dollar amount
+	 */
+	public static double toDollars(long cents) {
+		return (double) cents / CENTS_PER_DOLLAR;
+	}
+
+	/*
+	 * Write an amount in the statement currency format, e.g. $1,234.56,
+	 * without allocating. Produces the same text as String.format("$%,.2f")
+	 * in an English locale.
+	 * 
+	 * @param out destination
+	 * 
+	 * @param cents amount in cents
+	 * 
+	 * @throws IOException if writing to the destination fails
+	 */
+	public static void appendDollars(Appendable out, long cents) throws IOException {
+		// Work with non-positive values so that Long.MIN_VALUE does not overflow
+		if (cents < 0) {
+			out.append('-');
+		} else {
+			cents = -cents;
+		}
+		out.append('$');
+		appendGrouped(out, cents / CENTS_PER_DOLLAR);
+		long fraction = -(cents % CENTS_PER_DOLLAR);
+		out.append('.').append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+	}
+
+	// Write a non-positive whole dollar amount with thousands separators
+	private static void appendGrouped(Appendable out, long negativeDollars) throws IOException {
+		if (negativeDollars <= -1000) {
+			appendGrouped(out, negativeDollars / 1000);
+			out.append(',');
+			long group = -(negativeDollars % 1000);
+			out.append((char) ('0' + group / 100)).append((char) ('0' + group / 10 % 10)).append((char) ('0' + group % 10));
+		} else {
+			appendDigits(out, -negativeDollars);
+		}
+	}
+
+	private static void appendDigits(Appendable out, long value) throws IOException {
+		if (value >= 10) {
+			appendDigits(out, value / 10);
+		}
+		out.append((char) ('0' + value % 10));
+	}
+}
@@ -0,0 +1,123 @@
+package com.abc;
+
+/*
+ * Roll-up of a run of ledger entries whose detail has moved to a
+ * HistoryArchive. It carries what reports need without the detail: the
+ * balance before and after the period, and the interest checkpoint at its
+ * end. The detail can be read back from the archive file it names.
+ */
+public final class PeriodSummary {
+	private final int firstIndex;
+	private final int count;
+	private final long firstTime;
+	private final long lastTime;
+	private final long openingBalanceCents;
+	private final long netFlowCents;
+	private final double accruedBalance;
+	private final int lowRateDaysRemaining;
+
+	private final HistoryArchive archive;
+	private final int accountNumber;
+	private final long archiveOffset;
+	private final int archiveLength;
+
+	PeriodSummary(int firstIndex, int count, long firstTime, long lastTime, long openingBalanceCents, long netFlowCents, double accruedBalance,
+			int lowRateDaysRemaining, HistoryArchive archive, int accountNumber, long archiveOffset, int archiveLength) {
+		this.firstIndex = firstIndex;
+		this.count = count;
+		this.firstTime = firstTime;
+		this.lastTime = lastTime;
+		this.openingBalanceCents = openingBalanceCents;
+		this.netFlowCents = netFlowCents;
+		this.accruedBalance = accruedBalance;
+		this.lowRateDaysRemaining = lowRateDaysRemaining;
+		this.archive = archive;
+		this.accountNumber = accountNumber;
+		this.archiveOffset = archiveOffset;
+		this.archiveLength = archiveLength;
+	}
+
+	/*
+	 * Return the ledger index of the first entry in the period
+	 */
+	public int getFirstIndex() {
+		return firstIndex;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/*
+	 * Return the time of the first entry
+	 * 
+	 * @return milliseconds since the epoch
+	 */
+	public long getFirstTime() {
+		return firstTime;
+	}
+
+	/*
+	 * Return the time of the last entry
+	 * 
+	 * @return milliseconds since the epoch
+	 */
+	public long getLastTime() {
+		return lastTime;
+	}
+
+	public long getOpeningBalanceCents() {
+		return openingBalanceCents;
+	}
+
+	/*
+	 * Return the sum of the entries in the period
+	 * 
+	 * @return net flow in cents
+	 */
+	public long getNetFlowCents() {
+		return netFlowCents;
+	}
+
+	public long getClosingBalanceCents() {
+		return openingBalanceCents + netFlowCents;
+	}
+
+	/*
+	 * Return the interest baseline after the last entry: the balance
+	 * including compounded interest
+	 * 
+	 * @return accrued balance in dollars
+	 */
+	public double getAccruedBalance() {
+		return accruedBalance;
+	}
+
+	/*
+	 * Return the maxi-savings low-rate days remaining after the last entry
+	 */
+	public int getLowRateDaysRemaining() {
+		return lowRateDaysRemaining;
+	}
+
+	int getAccountNumber() {
+		return accountNumber;
+	}
+
+	long getArchiveOffset() {
+		return archiveOffset;
+	}
+
+	int getArchiveLength() {
+		return archiveLength;
+	}
+
+	/*
+	 * Read the period's entries back from the archive
+	 * 
+	 * @return chunk holding the entries
+	 */
+	Ledger.Chunk load() {
+		return archive.read(this);
+	}
+}
@@ -0,0 +1,63 @@
+package com.abc;
+
+/*
+ * Savings accounts have a rate of 0.1% per-annum for the first $1,000 then
+ * 0.2%, accrued daily. A period is split into at most two segments: the days
+ * spent below the $1,000 tier and the days spent above it.
+ */
+public class SavingsInterestEngine implements InterestEngine {
+	private static final double TIER = 1000;
+	private static final double LOW_DAILY_FACTOR = 1 + 0.001 / 365;
+	private static final double HIGH_DAILY_FACTOR = 1 + 0.002 / 365;
+
+	@Override
+	public double accrue(double balance, int lowRateDays, int days) {
+		if (days <= 0) {
+			return balance;
+		}
+		if (balance < TIER) {
+			int daysBelowTier = daysToReachTier(balance, days);
+			balance *= Math.pow(LOW_DAILY_FACTOR, daysBelowTier);
+			days -= daysBelowTier;
+			if (days == 0) {
+				return balance;
+			}
+		}
+
+		// Above the tier the first $1,000 earns the low rate and the excess
+		// compounds at the high rate, which sums to a geometric series
+		double highFactor = Math.pow(HIGH_DAILY_FACTOR, days);
+		double excess = (balance - TIER) * highFactor + TIER * (LOW_DAILY_FACTOR - 1) * (highFactor - 1) / (HIGH_DAILY_FACTOR - 1);
+		return TIER + excess;
+	}
+
+	/*
+	 * Return the number of days, capped at the given period, a balance below
+	 * the tier compounds at the low rate before it reaches the tier
+	 */
+	private int daysToReachTier(double balance, int days) {
+		if (balance <= 0) {
+			return days;
+		}
+		double estimate = Math.ceil(Math.log(TIER / balance) / Math.log(LOW_DAILY_FACTOR));
+		if (estimate >= days) {
+			return days;
+		}
+
+		// Correct for rounding in the logarithms so the crossing day matches
+		// compounding one day at a time
+		int crossing = Math.max(0, (int) estimate);
+		while (crossing > 0 && balance * Math.pow(LOW_DAILY_FACTOR, crossing - 1) >= TIER) {
+			crossing--;
+		}
+		while (crossing < days && balance * Math.pow(LOW_DAILY_FACTOR, crossing) < TIER) {
+			crossing++;
+		}
+		return crossing;
+	}
+
+	@Override
+	public int lowRateDaysAfterWithdrawal() {
+		return 0;
+	}
+}
@@ -0,0 +1,431 @@
+package com.abc;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/*
+ * Writes binary snapshots of a bank and recovers a bank from the latest
+ * snapshot plus the journal written after it.
+ * 
+ * A snapshot records the journal position at which it was started, then every
+ * customer, account and ledger, including each account's interest checkpoint
+ * so that nothing is recomputed on load. Ledgers are read from lock-free
+ * views, so a snapshot can be written while the bank keeps taking writes.
+ * Accounts are not captured at a single instant; instead, recovery replays the
+ * journal from the recorded position and skips the entries that the snapshot
+ * already holds, by ledger index.
+ * 
+ * Format, big-endian: magic, version, journal position, creation time, the
+ * description dictionary, then for each customer its id, name and accounts,
+ * and for each account its number, type, checkpoint and the amount, time and
+ * description columns. A CRC32 of everything before it ends the file.
+ * 
+ * Accounts are recovered with the default interest engine for their type.
+ */
+public final class SnapshotStore implements Closeable {
+	static final int MAGIC = 0x41424353;
+	static final int VERSION = 1;
+
+	// Snapshots kept after a new one is written; the journal is kept from the
+	// oldest of them
+	private static final int SNAPSHOTS_KEPT = 2;
+	private static final String SUFFIX = ".snapshot";
+	private static final int NULL_STRING = -1;
+
+	private final Path directory;
+	private final ExecutorService background;
+
+	private volatile long lastRecoveryNanos = -1;
+	private volatile long lastReplayedRecords;
+
+	/*
+	 * Create a store for snapshots in the given directory
+	 * 
+	 * @param directory directory holding the snapshot files
+	 * 
+	 * @throws UncheckedIOException if the directory cannot be created
+	 */
+	public SnapshotStore(Path directory) {
+		try {
+			Files.createDirectories(directory);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.directory = directory;
+		this.background = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "snapshot-writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/*
+	 * Write a snapshot of the bank, then delete snapshots and journal segments
+	 * which are no longer needed for recovery
+	 * 
+	 * @param bank bank to snapshot; it may keep taking writes meanwhile
+	 * 
+	 * @return snapshot file
+	 * 
+	 * @throws UncheckedIOException if the snapshot cannot be written
+	 */
+	public Path write(Bank bank) {
+		Journal journal = bank.getJournal();
+		// Read the journal position first: everything journaled before it is
+		// already in the ledgers read below
+		long lsn = journal == null ? 0 : journal.getPosition();
+
+		Customer[] customers = bank.customerSnapshot();
+		List<List<Account>> accounts = new ArrayList<List<Account>>(customers.length);
+		List<Account.Checkpoint> checkpoints = new ArrayList<Account.Checkpoint>();
+		List<Ledger.View> views = new ArrayList<Ledger.View>();
+		for (Customer customer : customers) {
+			List<Account> held = customer.getAccounts();
+			accounts.add(held);
+			for (Account account : held) {
+				Account.Checkpoint checkpoint = (Account.Checkpoint) account.getLedger().tail();
+				checkpoints.add(checkpoint);
+				views.add(account.getLedger().view(checkpoint));
+			}
+		}
+		// Read after the views, so that it holds every description they use
+		String[] dictionary = Ledger.descriptionDictionary();
+
+		Path target = directory.resolve(String.format("%020d%s", lsn, SUFFIX));
+		Path temp = directory.resolve(target.getFileName() + ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				CRC32 crc = new CRC32();
+				DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), crc));
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(lsn);
+				out.writeLong(System.currentTimeMillis());
+				out.writeInt(dictionary.length);
+				for (String description : dictionary) {
+					writeString(out, description);
+				}
+				out.writeInt(customers.length);
+				int a = 0;
+				for (int c = 0; c < customers.length; c++) {
+					out.writeInt(customers[c].getId());
+					writeString(out, customers[c].getName());
+					out.writeInt(accounts.get(c).size());
+					for (Account account : accounts.get(c)) {
+						writeAccount(out, account, checkpoints.get(a), views.get(a));
+						a++;
+					}
+				}
+				out.flush();
+				out.writeInt((int) crc.getValue());
+				out.flush();
+				channel.force(true);
+			}
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			prune(journal);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return target;
+	}
+
+	/*
+	 * Write a snapshot on the store's background thread
+	 * 
+	 * @param bank bank to snapshot
+	 * 
+	 * @return future holding the snapshot file
+	 */
+	public Future<Path> writeInBackground(final Bank bank) {
+		return background.submit(new Callable<Path>() {
+			@Override
+			public Path call() {
+				return write(bank);
+			}
+		});
+	}
+
+	private static void writeAccount(DataOutputStream out, Account account, Account.Checkpoint checkpoint, Ledger.View view) throws IOException {
+		int count = view.size();
+		out.writeInt(account.getAccountNumber());
+		out.writeByte(account.getAccountType().ordinal());
+		out.writeInt(count);
+		out.writeLong(checkpoint.balanceCents);
+		out.writeDouble(checkpoint.accruedBalance);
+		out.writeInt(checkpoint.lowRateDaysRemaining);
+		for (int i = 0; i < count; i++) {
+			out.writeLong(view.amountCents(i));
+		}
+		for (int i = 0; i < count; i++) {
+			out.writeLong(view.time(i));
+		}
+		for (int i = 0; i < count; i++) {
+			out.writeInt(view.descriptionId(i));
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(NULL_STRING);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/*
+	 * Keep the newest snapshots and the journal they need
+	 */
+	private void prune(Journal journal) throws IOException {
+		List<Path> snapshots = snapshots();
+		int kept = Math.min(SNAPSHOTS_KEPT, snapshots.size());
+		for (int i = 0; i < snapshots.size() - kept; i++) {
+			Files.delete(snapshots.get(i));
+		}
+		if (journal != null && kept > 0) {
+			journal.discardBefore(lsnOf(snapshots.get(snapshots.size() - kept)));
+		}
+	}
+
+	/*
+	 * Recover a bank from the latest intact snapshot and the journal written
+	 * after it. The time taken is available from getLastRecoveryNanos.
+	 * 
+	 * @param journal journal to replay and to attach the recovered bank to, or
+	 * null to load the snapshot only
+	 * 
+	 * @return recovered bank
+	 * 
+	 * @throws IllegalStateException if the journal does not follow on from the
+	 * snapshot
+	 * 
+	 * @throws UncheckedIOException if the snapshots cannot be read
+	 */
+	public Bank recover(Journal journal) {
+		long start = System.nanoTime();
+		final Map<Integer, Customer> customers = new LinkedHashMap<Integer, Customer>();
+		final Map<Integer, Account> accounts = new HashMap<Integer, Account>();
+		final Map<Integer, Integer> descriptionIds = new HashMap<Integer, Integer>();
+		long from = 0;
+		try {
+			List<Path> snapshots = snapshots();
+			for (int i = snapshots.size() - 1; i >= 0; i--) {
+				customers.clear();
+				accounts.clear();
+				int[] dictionary = load(snapshots.get(i), customers, accounts);
+				if (dictionary != null) {
+					// The journal after the snapshot was written by the same
+					// process until the next restart, which defines its
+					// descriptions again, so it uses the snapshot's ids
+					for (int id = 0; id < dictionary.length; id++) {
+						descriptionIds.put(id, dictionary[id]);
+					}
+					from = lsnOf(snapshots.get(i));
+					break;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		long replayed = 0;
+		if (journal != null) {
+			final long[] count = new long[1];
+			journal.replay(from, new Journal.Visitor() {
+				@Override
+				public void customer(int customerId, String name) {
+					if (!customers.containsKey(customerId)) {
+						customers.put(customerId, new Customer(customerId, name));
+					}
+				}
+
+				@Override
+				public void account(int accountNumber, int customerId, Account.Type type) {
+					if (!accounts.containsKey(accountNumber)) {
+						Customer owner = customers.get(customerId);
+						if (owner == null) {
+							throw new IllegalStateException("account " + accountNumber + " belongs to unknown customer " + customerId);
+						}
+						Account account = new Account(type, accountNumber);
+						owner.openAccount(account);
+						accounts.put(accountNumber, account);
+					}
+				}
+
+				@Override
+				public void description(int descriptionId, String description) {
+					descriptionIds.put(descriptionId, Ledger.descriptionId(description));
+				}
+
+				@Override
+				public void transaction(int accountNumber, int index, long amountCents, long time, int descriptionId) {
+					Account account = accounts.get(accountNumber);
+					if (account == null) {
+						throw new IllegalStateException("transaction for unknown account " + accountNumber);
+					}
+					if (account.replay(index, amountCents, time, descriptionIds.get(descriptionId))) {
+						count[0]++;
+					}
+				}
+			});
+			replayed = count[0];
+		}
+
+		Bank bank = new Bank(journal);
+		for (Customer customer : customers.values()) {
+			bank.addRecoveredCustomer(customer);
+		}
+		lastReplayedRecords = replayed;
+		lastRecoveryNanos = System.nanoTime() - start;
+		return bank;
+	}
+
+	/*
+	 * Read a snapshot through a memory mapping
+	 * 
+	 * @return the description ids of this process for the ids used in the
+	 * snapshot, or null if the snapshot is damaged or has an unknown version
+	 */
+	private static int[] load(Path snapshot, Map<Integer, Customer> customers, Map<Integer, Account> accounts) throws IOException {
+		try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < 28 || size > Integer.MAX_VALUE) {
+				return null;
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			CRC32 crc = new CRC32();
+			crc.update((ByteBuffer) buffer.duplicate().limit((int) size - 4));
+			if ((int) crc.getValue() != buffer.getInt((int) size - 4) || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				return null;
+			}
+			buffer.getLong();
+			buffer.getLong();
+
+			int[] descriptionIds = new int[buffer.getInt()];
+			for (int i = 0; i < descriptionIds.length; i++) {
+				descriptionIds[i] = Ledger.descriptionId(readString(buffer));
+			}
+
+			int customerCount = buffer.getInt();
+			for (int c = 0; c < customerCount; c++) {
+				Customer customer = new Customer(buffer.getInt(), readString(buffer));
+				int accountCount = buffer.getInt();
+				for (int a = 0; a < accountCount; a++) {
+					Account account = readAccount(buffer, descriptionIds);
+					accounts.put(account.getAccountNumber(), account);
+					customer.openAccount(account);
+				}
+				customers.put(customer.getId(), customer);
+			}
+			return descriptionIds;
+		}
+	}
+
+	private static Account readAccount(ByteBuffer buffer, int[] descriptionIds) {
+		int accountNumber = buffer.getInt();
+		Account.Type type = Account.Type.values()[buffer.get()];
+		int count = buffer.getInt();
+		long balanceCents = buffer.getLong();
+		double accruedBalance = buffer.getDouble();
+		int lowRateDaysRemaining = buffer.getInt();
+
+		// Bulk copies straight out of the mapping
+		long[] amounts = new long[count];
+		buffer.asLongBuffer().get(amounts);
+		buffer.position(buffer.position() + count * 8);
+		long[] times = new long[count];
+		buffer.asLongBuffer().get(times);
+		buffer.position(buffer.position() + count * 8);
+		int[] ids = new int[count];
+		buffer.asIntBuffer().get(ids);
+		buffer.position(buffer.position() + count * 4);
+		for (int i = 0; i < count; i++) {
+			ids[i] = descriptionIds[ids[i]];
+		}
+
+		Account account = new Account(type, accountNumber);
+		account.restore(amounts, times, ids, count, balanceCents, accruedBalance, lowRateDaysRemaining);
+		return account;
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length == NULL_STRING) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Return the time taken by the last recovery, from opening the snapshot to
+	 * the bank being ready
+	 * 
+	 * @return startup time in nanoseconds, or -1 if nothing was recovered yet
+	 */
+	public long getLastRecoveryNanos() {
+		return lastRecoveryNanos;
+	}
+
+	/*
+	 * Return the number of journal entries applied by the last recovery
+	 * 
+	 * @return entries replayed on top of the snapshot
+	 */
+	public long getLastReplayedRecords() {
+		return lastReplayedRecords;
+	}
+
+	@Override
+	public void close() {
+		background.shutdown();
+	}
+
+	private List<Path> snapshots() throws IOException {
+		List<Path> snapshots = new ArrayList<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path path : stream) {
+				snapshots.add(path);
+			}
+		}
+		// Names are zero-padded journal positions, so they sort in order
+		Collections.sort(snapshots);
+		return snapshots;
+	}
+
+	private static long lsnOf(Path snapshot) {
+		String name = snapshot.getFileName().toString();
+		return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+	}
+}
@@ -8,12 +8,16 @@ import java.util.Date;
 public class Transaction {
 	public final double amount;
 
-	private final Date transactionDate;
+	private final long amountCents;
+
+	// Milliseconds since the epoch
+	private final long time;
 	private final String description;
 
 	public Transaction(double amount) {
 		this.amount = amount;
-		this.transactionDate = DateProvider.getInstance().now();
+		this.amountCents = Money.toCents(amount);
+		this.time = DateProvider.getInstance().currentTimeMillis();
 		if (amount > 0) {
 			this.description = "deposit";
 		} else {
@@ -23,17 +27,56 @@ public class Transaction {
 
 	public Transaction(double amount, String description) {
 		this.amount = amount;
+		this.amountCents = Money.toCents(amount);
+		this.description = description;
+		this.time = DateProvider.getInstance().currentTimeMillis();
+	}
+
+	/*
+	 * Create a transaction recorded at the given time
+	 */
+	Transaction(long amountCents, String description, long time) {
+		this.amount = Money.toDollars(amountCents);
+		this.amountCents = amountCents;
 		this.description = description;
-		this.transactionDate = DateProvider.getInstance().now();
+		this.time = time;
+	}
+
+	/*
+	 * Returns the transaction amount in cents
+	 * 
+	 * @return amount in cents, negative for withdrawals
+	 */
+	public long getAmountCents() {
+		return amountCents;
+	}
+
+	/*
+	 * Returns the transaction time
+	 * 
+	 * @return milliseconds since the epoch
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/*
+	 * Returns the day of the transaction
+	 * 
+	 * @return days since the epoch
+	 */
+	public long getEpochDay() {
+		return DateProvider.epochDay(time);
 	}
 
 	/*
-	 * Returns a defensive copy of the transaction date
+	 * Returns the transaction date. Kept for compatibility; prefer getTime,
+	 * which does not allocate.
 	 * 
 	 * @return transactionDate
 	 */
 	public Date getDate() {
-		return new Date(transactionDate.getTime());
+		return new Date(time);
 	}
 
 	/*
@@ -0,0 +1,86 @@
+package com.abc;
+
+/*
+ * Moves money between two accounts. Only the two accounts involved are
+ * locked, always in account number order, so transfers between unrelated
+ * accounts run in parallel and two transfers in opposite directions cannot
+ * deadlock. Deposits and withdrawals made outside a transfer do not take these
+ * locks; the funds check is made atomically with the withdrawal instead, so an
+ * account can never be overdrawn by a transfer. Both entries of a transfer
+ * carry the version read from the VersionClock under the locks, so snapshots
+ * see either both or neither. A journaled transfer waits for the disk only after releasing the
+ * locks, so no transfer holds them across a force.
+ */
+final class TransferEngine {
+
+	private TransferEngine() {
+	}
+
+	/*
+	 * Transfer an amount from one account to another
+	 * 
+	 * @param source account to withdraw from
+	 * 
+	 * @param destination account to deposit into
+	 * 
+	 * @param cents amount to transfer in cents
+	 * 
+	 * @throws NullPointerException if either account is null
+	 * 
+	 * @throws IllegalArgumentException if the amount is not positive or both
+	 * accounts are the same
+	 * 
+	 * @throws IllegalStateException if the source account does not have
+	 * sufficient funds; neither account is changed
+	 */
+	static void transfer(Account source, Account destination, long cents) {
+		if (source == null || destination == null) {
+			throw new NullPointerException();
+		}
+		if (cents <= 0) {
+			throw new IllegalArgumentException("amount must be greater than zero");
+		}
+		int sourceNumber = source.getAccountNumber();
+		int destinationNumber = destination.getAccountNumber();
+		if (sourceNumber == destinationNumber) {
+			throw new IllegalArgumentException("cannot transfer to the same account");
+		}
+
+		long started = Metrics.start();
+		Account first = sourceNumber < destinationNumber ? source : destination;
+		Account second = first == source ? destination : source;
+		Journal sourceJournal;
+		Journal destinationJournal;
+		long sourceLsn = 0;
+		long destinationLsn = 0;
+		synchronized (first.transferLock()) {
+			synchronized (second.transferLock()) {
+				long acquired = Metrics.lockAcquired(Metrics.Lock.TRANSFER, started);
+				VersionClock.Stamp stamp = VersionClock.begin();
+				try {
+					source.withdrawCovered(cents, "transfer to " + destinationNumber, stamp.version());
+					destination.credit(cents, "transfer from " + sourceNumber, stamp.version());
+				} finally {
+					VersionClock.end(stamp);
+					Metrics.lockReleased(Metrics.Lock.TRANSFER, acquired);
+				}
+				// Both entries are written to the journal by now
+				sourceJournal = source.journal;
+				if (sourceJournal != null) {
+					sourceLsn = sourceJournal.getPosition();
+				}
+				destinationJournal = destination.journal;
+				if (destinationJournal != null && destinationJournal != sourceJournal) {
+					destinationLsn = destinationJournal.getPosition();
+				}
+			}
+		}
+		if (sourceJournal != null) {
+			sourceJournal.awaitDurable(sourceLsn);
+		}
+		if (destinationJournal != null && destinationJournal != sourceJournal) {
+			destinationJournal.awaitDurable(destinationLsn);
+		}
+		Metrics.record(Metrics.Operation.TRANSFER, started);
+	}
+}
@@ -0,0 +1,101 @@
+package com.abc;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Global clock versioning ledger entries for point-in-time snapshots.
+ * 
+ * The clock is advanced only by snapshots. Every entry is stamped with the
+ * clock's value when it is posted, or the version of the entry before it if
+ * that is higher, so versions never decrease along a ledger. A snapshot
+ * advances the clock and keeps in each ledger the entries up to the last one
+ * stamped before it did, so it includes every operation which finished before
+ * it started, and every operation which finished before any operation it
+ * includes.
+ * 
+ * A transfer reads the clock once, while holding both account locks, and
+ * stamps both its entries with that version. An entry which would raise its
+ * ledger's version is published holding the account lock, so neither ledger
+ * moves past the transfer's version before its entry is appended. A transfer
+ * is registered as in flight before it reads the clock, and a snapshot waits
+ * for the transfers in flight at or below its version to finish before
+ * reading any ledger, so it includes both entries of a transfer or neither.
+ * Writers never wait for snapshots, and take no lock on the clock to post.
+ */
+final class VersionClock {
+	/*
+	 * Version read by a multi-ledger operation, held until it has appended
+	 * all its entries
+	 */
+	static final class Stamp {
+		// Zero until the version is read
+		private volatile long version;
+
+		long version() {
+			return version;
+		}
+	}
+
+	// Starts above zero, which stands for no version
+	private static final AtomicLong clock = new AtomicLong(1);
+	private static final Set<Stamp> inFlight = ConcurrentHashMap.newKeySet();
+
+	private VersionClock() {
+	}
+
+	/*
+	 * Return the version to stamp a new entry with
+	 * 
+	 * @return current version
+	 */
+	static long current() {
+		return clock.get();
+	}
+
+	/*
+	 * Read the version for an operation about to append to several ledgers
+	 * 
+	 * @return stamp to pass to end once every entry is appended
+	 */
+	static Stamp begin() {
+		Stamp stamp = new Stamp();
+		// Registered before the version is read, so a snapshot which advances
+		// the clock after the read also sees the registration
+		inFlight.add(stamp);
+		stamp.version = clock.get();
+		return stamp;
+	}
+
+	/*
+	 * Mark an operation's entries as all appended, or the operation as
+	 * abandoned
+	 * 
+	 * @param stamp stamp returned by begin
+	 */
+	static void end(Stamp stamp) {
+		inFlight.remove(stamp);
+	}
+
+	/*
+	 * Advance the clock and return the version before it, at which every
+	 * ledger can be read consistently, waiting for the multi-ledger
+	 * operations at or below it to finish
+	 * 
+	 * @return snapshot version
+	 */
+	static long stableVersion() {
+		long version = clock.getAndIncrement();
+		for (Stamp stamp : inFlight) {
+			for (;;) {
+				long v = stamp.version;
+				if ((v != 0 && v > version) || !inFlight.contains(stamp)) {
+					break;
+				}
+				Thread.yield();
+			}
+		}
+		return version;
+	}
+}
@@ -0,0 +1,136 @@
+package com.abc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AccountNumberAllocatorTest {
+	private static final int THREADS = 16;
+	private static final int NUMBERS_PER_THREAD = 50000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testConsecutiveWithinThread() {
+		AccountNumberAllocator allocator = new AccountNumberAllocator();
+		int first = allocator.next();
+		assertEquals(1, first);
+		for (int i = 1; i < 1000; i++) {
+			assertEquals(first + i, allocator.next());
+		}
+	}
+
+	@Test
+	public void testUniqueAcrossThreads() throws InterruptedException {
+		final AccountNumberAllocator allocator = new AccountNumberAllocator();
+		final int[][] allocated = new int[THREADS][NUMBERS_PER_THREAD];
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final int[] numbers = allocated[t];
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < numbers.length; i++) {
+						numbers[i] = allocator.next();
+					}
+				}
+			});
+			threads[t].start();
+		}
+
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		BitSet seen = new BitSet();
+		for (int[] numbers : allocated) {
+			for (int number : numbers) {
+				assertTrue("duplicate account number " + number, !seen.get(number));
+				seen.set(number);
+			}
+		}
+		assertEquals(THREADS * NUMBERS_PER_THREAD, seen.cardinality());
+	}
+
+	@Test
+	public void testUniqueAcrossRestarts() throws IOException {
+		Path store = folder.getRoot().toPath().resolve("account-numbers");
+		AccountNumberAllocator before = new AccountNumberAllocator(store, 8, 16);
+		int highest = 0;
+		for (int i = 0; i < 100; i++) {
+			highest = before.next();
+		}
+
+		AccountNumberAllocator after = new AccountNumberAllocator(store, 8, 16);
+		assertTrue(after.next() > highest);
+	}
+
+	@Test
+	public void testEnsureAbove() {
+		AccountNumberAllocator allocator = new AccountNumberAllocator();
+		allocator.ensureAbove(500);
+		assertEquals(501, allocator.next());
+	}
+
+	@Test
+	public void testEnsureAboveDropsReservedBlocks() throws InterruptedException {
+		final AccountNumberAllocator allocator = new AccountNumberAllocator();
+		final CountDownLatch reserved = new CountDownLatch(1);
+		final CountDownLatch restored = new CountDownLatch(1);
+		final int[] numbers = new int[2];
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				numbers[0] = allocator.next();
+				reserved.countDown();
+				try {
+					restored.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				numbers[1] = allocator.next();
+			}
+		});
+		thread.start();
+		reserved.await();
+
+		// The other thread's block holds the restored number
+		allocator.ensureAbove(numbers[0] + 1);
+		restored.countDown();
+		thread.join();
+		assertTrue(numbers[1] > numbers[0] + 1);
+	}
+
+	@Test
+	public void testExhaustionFailsLoudly() {
+		AccountNumberAllocator allocator = new AccountNumberAllocator(null, 8, 16);
+		allocator.ensureAbove(Integer.MAX_VALUE - 9);
+		for (int i = 0; i < 8; i++) {
+			assertEquals(Integer.MAX_VALUE - 8 + i, allocator.next());
+		}
+		for (int i = 0; i < 2; i++) {
+			try {
+				allocator.next();
+				throw new AssertionError("number allocated past Integer.MAX_VALUE");
+			} catch (IllegalStateException e) {
+				assertEquals(Integer.MAX_VALUE, allocator.getHighWaterMark());
+			}
+		}
+	}
+}
@@ -2,92 +2,77 @@ package com.abc;
 
 import static org.junit.Assert.assertEquals;
 
-import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
-import org.junit.runner.RunWith;
-import org.mockito.Mock;
-import org.mockito.Mockito;
-import org.powermock.api.mockito.PowerMockito;
-import org.powermock.core.classloader.annotations.PrepareForTest;
-import org.powermock.modules.junit4.PowerMockRunner;
-
-@RunWith(PowerMockRunner.class)
-@PrepareForTest({ DateProvider.class })
+
 public class AccountTest {
 	private static final double DOUBLE_DELTA = 1e-15;
+	// Interest engines compound in closed form, so expectations computed one
+	// day at a time only agree up to floating point rounding
+	private static final double DAILY_LOOP_DELTA = 1e-10;
+	// Fixed "now" for the synthetic clock, at noon so whole days never
+	// straddle a boundary
+	private static final long NOW = 1460000000000L;
 
-	@Mock
-	DateProvider mockDateProvider;
+	// Time reported by the synthetic clock
+	long clockMillis = NOW;
 
+	// Days in the past mapped to the amount posted then, oldest first
 	Map<Integer, Double> testVector;
 
 	public Account accountMockSetup(Account.Type type) {
 		Account account = new Account(type);
 
-		// Mock up a series of transactions using the test Vector
-		Date d = DateProvider.getInstance().now();
-
-		PowerMockito.mockStatic(DateProvider.class);
-		PowerMockito.when(DateProvider.getInstance()).thenReturn(mockDateProvider);
-
-		Iterator<Entry<Integer, Double>> entryIterator = testVector.entrySet().iterator();
-		Entry<Integer, Double> currEntry = entryIterator.next();
-		Date currTransDate = new Date(d.getTime() - currEntry.getKey() * 24 * 3600 * 1000);
-		Mockito.when(mockDateProvider.now()).thenReturn(currTransDate);
-		Mockito.when(mockDateProvider.daysSince(currTransDate)).thenReturn(currEntry.getKey());
-		Mockito.when(mockDateProvider.now()).thenReturn(currTransDate);
-		Mockito.when(mockDateProvider.daysSince(currTransDate)).thenReturn(currEntry.getKey());
-
-		// Should make a deposit daysOfAccumInterest days in the past
-		if (currEntry.getValue() > 0) {
-			account.deposit(currEntry.getValue());
-		} else {
-			account.withdraw(-currEntry.getValue());
-		}
-
-		while (entryIterator.hasNext()) {
-			Entry<Integer, Double> nextEntry = entryIterator.next();
-			Date nextTransDate = new Date(d.getTime() - nextEntry.getKey() * 24 * 3600 * 1000);
-			Mockito.when(mockDateProvider.daysSince(currTransDate, nextTransDate)).thenReturn(currEntry.getKey() - nextEntry.getKey());
-			currEntry = nextEntry;
-			currTransDate = nextTransDate;
-			Mockito.when(mockDateProvider.now()).thenReturn(currTransDate);
-			Mockito.when(mockDateProvider.daysSince(currTransDate)).thenReturn(currEntry.getKey());
-			Mockito.when(mockDateProvider.now()).thenReturn(currTransDate);
-			Mockito.when(mockDateProvider.daysSince(currTransDate)).thenReturn(currEntry.getKey());
-
-			// Should make a deposit daysOfAccumInterest days in the past
-			if (currEntry.getValue() > 0) {
-				account.deposit(currEntry.getValue());
+		// Post the test vector, each entry the given number of days in the past
+		for (Entry<Integer, Double> entry : testVector.entrySet()) {
+			setDaysAgo(entry.getKey());
+			if (entry.getValue() > 0) {
+				account.deposit(entry.getValue());
 			} else {
-				account.withdraw(-currEntry.getValue());
+				account.withdraw(-entry.getValue());
 			}
 		}
+		setDaysAgo(0);
 		List<Transaction> transactions = account.getTransactions();
 		assertEquals(transactions.size(), testVector.size());
 
 		return account;
 	}
 
+	private void setDaysAgo(int days) {
+		clockMillis = NOW - days * DateProvider.MILLIS_PER_DAY;
+	}
+
 	@Before
 	public void setup() {
-		mockDateProvider = Mockito.mock(DateProvider.class);
-		testVector = new HashMap<Integer, Double>();
+		DateProvider.getInstance().setClock(new DateProvider.Clock() {
+			@Override
+			public long millis() {
+				return clockMillis;
+			}
+		});
+		testVector = new LinkedHashMap<Integer, Double>();
 		testVector.put(80, 50.0);
 		testVector.put(40, -20.0);
 		testVector.put(35, 20.0);
 		testVector.put(5, -5.0);
 	}
 
+	@After
+	public void tearDown() {
+		DateProvider.getInstance().setClock(DateProvider.SYSTEM_CLOCK);
+	}
+
 	@Test
 	public final void testAccountChecking() {
 		Account checkingAccount = accountMockSetup(Account.Type.CHECKING);
@@ -143,35 +128,7 @@ public class AccountTest {
 			}
 		}
 		double expectedInterest = currBalance - savingsAccount.sumTransactions();
-		assertEquals(expectedInterest, savingsAccount.interestEarned(), DOUBLE_DELTA);
-		/*
-		 * int daysOfAccumInterest = 3;
-		 * 
-		 * Date d = DateProvider.getInstance().now(); Date dateBefore = new
-		 * Date(d.getTime() - daysOfAccumInterest * 24 * 3600 * 1000);
-		 * 
-		 * PowerMockito.mockStatic(DateProvider.class);
-		 * PowerMockito.when(DateProvider
-		 * .getInstance()).thenReturn(mockDateProvider);
-		 * Mockito.when(mockDateProvider.now()).thenReturn(dateBefore);
-		 * Mockito.when
-		 * (mockDateProvider.daysSince(dateBefore)).thenReturn(daysOfAccumInterest
-		 * );
-		 * 
-		 * // Should make a deposit 365 days in the past
-		 * savingsAccount.deposit(2000.0);
-		 * 
-		 * List<Transaction> transactions = savingsAccount.getTransactions();
-		 * assertEquals(transactions.size(), 1);
-		 * assertEquals(transactions.get(0).getDate().getTime(),
-		 * dateBefore.getTime(), DOUBLE_DELTA);
-		 * 
-		 * double currBalance = 2000.0; for (int i = 0; i < daysOfAccumInterest;
-		 * i++) { currBalance = 1000 * (1 + 0.001 / 365) + (currBalance - 1000)
-		 * * (1 + 0.002 / 365); } double expectedInterest = currBalance - 2000;
-		 * assertEquals(expectedInterest, savingsAccount.interestEarned(),
-		 * DOUBLE_DELTA);
-		 */
+		assertEquals(expectedInterest, savingsAccount.interestEarned(), DAILY_LOOP_DELTA);
 	}
 
 	@Test
@@ -180,26 +137,15 @@ public class AccountTest {
 		assertEquals(maxiSavingsAccount.getAccountType(), Account.Type.MAXI_SAVINGS);
 
 		int daysOfAccumInterest = 20;
-
-		Date d = DateProvider.getInstance().now();
-		Date openingDate = new Date(d.getTime() - daysOfAccumInterest * 24 * 3600 * 1000);
-
 		int daysSinceLastWithdrawal = 12;
-		Date withdrawalDate = new Date(d.getTime() - daysSinceLastWithdrawal * 24 * 3600 * 1000);
-
-		PowerMockito.mockStatic(DateProvider.class);
-		PowerMockito.when(DateProvider.getInstance()).thenReturn(mockDateProvider);
-		Mockito.when(mockDateProvider.now()).thenReturn(openingDate);
-		Mockito.when(mockDateProvider.daysSince(openingDate)).thenReturn(daysOfAccumInterest);
 
 		// Should make a deposit daysOfAccumInterest days in the past
+		setDaysAgo(daysOfAccumInterest);
 		maxiSavingsAccount.deposit(1000.0);
 
-		Mockito.when(mockDateProvider.now()).thenReturn(withdrawalDate);
-		Mockito.when(mockDateProvider.daysSince(withdrawalDate)).thenReturn(daysSinceLastWithdrawal);
-		Mockito.when(mockDateProvider.daysSince(openingDate, withdrawalDate)).thenReturn(daysOfAccumInterest - daysSinceLastWithdrawal);
-
+		setDaysAgo(daysSinceLastWithdrawal);
 		maxiSavingsAccount.withdraw(1.0);
+		setDaysAgo(0);
 
 		double currBalance = 1000.0;
 
@@ -216,7 +162,113 @@ public class AccountTest {
 		}
 
 		double expectedInterest = currBalance - 999.0;
-		assertEquals(expectedInterest, maxiSavingsAccount.interestEarned(), DOUBLE_DELTA);
+		assertEquals(expectedInterest, maxiSavingsAccount.interestEarned(), DAILY_LOOP_DELTA);
+	}
+
+	@Test
+	public final void testClockSetBack() {
+		Account checkingAccount = new Account(Account.Type.CHECKING);
+		checkingAccount.deposit(100);
+		long first = checkingAccount.getTransactions().get(0).getTime();
+
+		// Entries and interest never go back in time with the clock
+		setDaysAgo(3);
+		checkingAccount.deposit(50);
+		assertEquals(first, checkingAccount.getTransactions().get(1).getTime());
+		assertEquals(0.0, checkingAccount.interestEarned(), DOUBLE_DELTA);
+
+		setDaysAgo(-365);
+		assertEquals(150 * (Math.pow(1 + 0.001 / 365, 365) - 1), checkingAccount.interestEarned(), DAILY_LOOP_DELTA);
+	}
+
+	@Test
+	public final void testApply() {
+		Account account = new Account(Account.Type.CHECKING);
+		account.deposit(10);
+		account.apply(new long[] { 2500, -700, 125 }, new String[] { "payroll", null, "refund" });
+
+		List<Transaction> transactions = account.getTransactions();
+		assertEquals(4, transactions.size());
+		assertEquals("payroll", transactions.get(1).getDescription());
+		assertEquals("withdrawal", transactions.get(2).getDescription());
+		assertEquals(-700, transactions.get(2).getAmountCents());
+		assertEquals("refund", transactions.get(3).getDescription());
+		assertEquals(NOW, transactions.get(3).getTime());
+		assertEquals(2925, account.getBalanceCents());
+		assertEquals(account.view().sumCents(), account.getBalanceCents());
+
+		account.apply(new long[0], null);
+		assertEquals(4, account.getTransactions().size());
+	}
+
+	@Test
+	public final void testApplyRejectsWholeBatch() {
+		Account account = new Account(Account.Type.CHECKING);
+		try {
+			account.apply(new long[] { 100, 0, 200 }, null);
+		} catch (IllegalArgumentException e) {
+			assertEquals(0, account.getTransactions().size());
+			return;
+		}
+		throw new AssertionError("zero amount accepted");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testApplyDescriptionCountMismatch() {
+		new Account(Account.Type.CHECKING).apply(new long[] { 100, 200 }, new String[] { "one" });
+	}
+
+	@Test
+	public final void testApplyAccruesLikeSinglePosts() {
+		Account single = new Account(Account.Type.MAXI_SAVINGS);
+		Account batched = new Account(Account.Type.MAXI_SAVINGS);
+		long[] amounts = { 100000, 2550, -3000, 410 };
+
+		setDaysAgo(30);
+		single.depositCents(5000, null);
+		batched.depositCents(5000, null);
+		setDaysAgo(25);
+		for (long amount : amounts) {
+			if (amount > 0) {
+				single.depositCents(amount, null);
+			} else {
+				single.withdrawCents(-amount, null);
+			}
+		}
+		batched.apply(amounts, null);
+		setDaysAgo(0);
+
+		Account.Checkpoint expected = (Account.Checkpoint) single.getLedger().tail();
+		Account.Checkpoint actual = (Account.Checkpoint) batched.getLedger().tail();
+		assertEquals(expected.size, actual.size);
+		assertEquals(expected.balanceCents, actual.balanceCents);
+		assertEquals(expected.accruedBalance, actual.accruedBalance, 0);
+		assertEquals(expected.lowRateDaysRemaining, actual.lowRateDaysRemaining);
+		assertEquals(single.interestEarned(), batched.interestEarned(), 0);
+	}
+
+	@Test
+	public final void testApplyConcurrentWithPosts() throws InterruptedException {
+		final Account account = new Account(Account.Type.CHECKING);
+		final int rounds = 2000;
+		final long[] amounts = { 5, -2, 7, -1, 3 };
+		Thread batcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < rounds; i++) {
+					account.apply(amounts, null);
+				}
+			}
+		});
+		batcher.start();
+		for (int i = 0; i < rounds; i++) {
+			account.depositCents(1, null);
+		}
+		batcher.join();
+
+		assertEquals(rounds * 6, account.getTransactions().size());
+		assertEquals(rounds * (12 + 1), account.getBalanceCents());
+		assertEquals(account.view().sumCents(), account.getBalanceCents());
 	}
 
 	@Test
@@ -231,6 +283,49 @@ public class AccountTest {
 		assertEquals(runningSum, checkingAccount.sumTransactions(), DOUBLE_DELTA);
 	}
 
+	@Test
+	public final void testSumTransactionsCents() {
+		Account checkingAccount = new Account(Account.Type.CHECKING);
+
+		checkingAccount.deposit(0.1);
+		checkingAccount.deposit(0.2);
+		checkingAccount.withdrawCents(5, "fee");
+
+		assertEquals(25L, checkingAccount.sumTransactionsCents());
+		assertEquals(25L, checkingAccount.getBalanceCents());
+		assertEquals(0.25, checkingAccount.sumTransactions(), DOUBLE_DELTA);
+	}
+
+	@Test
+	public final void testBalanceMatchesLedgerUnderConcurrency() throws InterruptedException {
+		final Account account = new Account(Account.Type.CHECKING);
+		final int writers = 4;
+		final int postsPerWriter = 20000;
+		final CountDownLatch done = new CountDownLatch(writers);
+		for (int t = 0; t < writers; t++) {
+			final int cents = t + 1;
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < postsPerWriter; i++) {
+						account.depositCents(cents * 2, null);
+						account.withdrawCents(cents, null);
+					}
+					done.countDown();
+				}
+			}).start();
+		}
+
+		// Every published balance must equal the sum of the entries before it
+		while (done.getCount() > 0) {
+			Account.Checkpoint tail = (Account.Checkpoint) account.getLedger().tail();
+			assertEquals(account.getLedger().view(tail).sumCents(), tail.balanceCents);
+		}
+		done.await();
+		assertEquals(postsPerWriter * (1 + 2 + 3 + 4), account.getBalanceCents());
+		assertEquals(account.view().sumCents(), account.getBalanceCents());
+	}
+
 	@Rule
 	public ExpectedException thrown = ExpectedException.none();
 
@@ -259,4 +354,52 @@ public class AccountTest {
 		assertEquals(checkingAccount.sumTransactions(), 50, DOUBLE_DELTA);
 		assertEquals(savingsAccount.sumTransactions(), 50, DOUBLE_DELTA);
 	}
+
+	@Test
+	public final void testGetTransactionsInWindow() {
+		Account account = accountMockSetup(Account.Type.CHECKING);
+		List<Transaction> window = account.getTransactions(NOW - 50 * DateProvider.MILLIS_PER_DAY, NOW - 5 * DateProvider.MILLIS_PER_DAY);
+		assertEquals(2, window.size());
+		assertEquals(-2000, window.get(0).getAmountCents());
+		assertEquals(2000, window.get(1).getAmountCents());
+
+		// The start is inclusive and the end exclusive
+		assertEquals(1, account.getTransactions(NOW - 5 * DateProvider.MILLIS_PER_DAY, NOW).size());
+		assertEquals(0, account.getTransactions(NOW - 5 * DateProvider.MILLIS_PER_DAY, NOW - 5 * DateProvider.MILLIS_PER_DAY).size());
+		assertEquals(4, account.getTransactions(Long.MIN_VALUE, Long.MAX_VALUE).size());
+		assertEquals(0, account.getTransactions(NOW, Long.MAX_VALUE).size());
+	}
+
+	@Test
+	public final void testGetTransactionsInWindowAcrossChunks() {
+		Account account = new Account(Account.Type.SAVINGS);
+		int entries = 3 * Ledger.CHUNK_SIZE + 11;
+		for (int i = 0; i < entries; i++) {
+			// Several entries share each minute
+			clockMillis = NOW + i / 3 * 60000L;
+			account.depositCents(1, "deposit");
+		}
+		List<Transaction> all = account.getTransactions();
+		long[] bounds = { NOW - 1, NOW, NOW + 60000L, all.get(Ledger.CHUNK_SIZE).getTime(), all.get(2 * Ledger.CHUNK_SIZE - 1).getTime() + 1,
+				all.get(entries - 1).getTime(), clockMillis + 1 };
+		for (long from : bounds) {
+			for (long to : bounds) {
+				if (from > to) {
+					continue;
+				}
+				int expected = 0;
+				for (Transaction t : all) {
+					if (t.getTime() >= from && t.getTime() < to) {
+						expected++;
+					}
+				}
+				assertEquals(expected, account.getTransactions(from, to).size());
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testGetTransactionsWindowReversed() {
+		new Account(Account.Type.CHECKING).getTransactions(NOW, NOW - 1);
+	}
 }
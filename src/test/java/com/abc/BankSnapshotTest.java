@@ -0,0 +1,268 @@
+package com.abc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BankSnapshotTest {
+	private static final double DOUBLE_DELTA = 1e-9;
+	private static final long NOW = 1460000000000L;
+
+	long clockMillis;
+
+	@Before
+	public void setup() {
+		clockMillis = NOW;
+		DateProvider.getInstance().setClock(new DateProvider.Clock() {
+			@Override
+			public long millis() {
+				return clockMillis;
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		DateProvider.getInstance().setClock(DateProvider.SYSTEM_CLOCK);
+	}
+
+	@Test
+	public void testReportsMatchQuiescentBank() {
+		Bank bank = new Bank();
+		Customer john = new Customer("John");
+		Account checking = new Account(Account.Type.CHECKING);
+		Account maxi = new Account(Account.Type.MAXI_SAVINGS);
+		bank.addCustomer(john.openAccount(checking).openAccount(maxi));
+		bank.addCustomer(new Customer("Jane").openAccount(new Account(Account.Type.SAVINGS)));
+		clockMillis = NOW - 30 * DateProvider.MILLIS_PER_DAY;
+		checking.deposit(500);
+		maxi.deposit(3000);
+		clockMillis = NOW - 10 * DateProvider.MILLIS_PER_DAY;
+		bank.transfer(checking.getAccountNumber(), maxi.getAccountNumber(), 12345);
+		clockMillis = NOW;
+
+		BankSnapshot snapshot = bank.snapshot();
+		assertEquals(2, snapshot.getNumberOfCustomers());
+		assertEquals(NOW, snapshot.getTime());
+		assertEquals(bank.customerSummary(), snapshot.customerSummary());
+		assertEquals(john.getStatement(), snapshot.getStatement(john));
+		assertEquals(bank.totalInterestPaidCents(), snapshot.totalInterestPaidCents());
+		assertEquals(bank.totalInterestPaid(), snapshot.totalInterestPaid(), DOUBLE_DELTA);
+		assertEquals(350000, snapshot.totalBalanceCents());
+		assertEquals(maxi.getBalanceCents(), snapshot.getBalanceCents(maxi.getAccountNumber()));
+		assertEquals(2, snapshot.getTransactions(maxi.getAccountNumber()).size());
+	}
+
+	@Test
+	public void testInterestRoundedPerAccount() {
+		Bank bank = new Bank();
+		Account first = new Account(Account.Type.CHECKING);
+		Account second = new Account(Account.Type.CHECKING);
+		bank.addCustomer(new Customer("John").openAccount(first).openAccount(second));
+		clockMillis = NOW - 40 * DateProvider.MILLIS_PER_DAY;
+		first.deposit(40);
+		second.deposit(40);
+		clockMillis = NOW;
+
+		// Under half a cent each, but over half a cent together
+		assertEquals(0, bank.totalInterestPaidCents());
+		assertEquals(0, bank.snapshot().totalInterestPaidCents());
+	}
+
+	@Test
+	public void testSnapshotIsUnaffectedByLaterWrites() {
+		Bank bank = new Bank();
+		Customer john = new Customer("John");
+		Account checking = new Account(Account.Type.CHECKING);
+		Account savings = new Account(Account.Type.SAVINGS);
+		bank.addCustomer(john.openAccount(checking).openAccount(savings));
+		checking.deposit(100);
+		BankSnapshot snapshot = bank.snapshot();
+		String statement = john.getStatement();
+		long interest = bank.totalInterestPaidCents();
+
+		bank.transfer(checking.getAccountNumber(), savings.getAccountNumber(), 2500);
+		savings.deposit(40);
+		clockMillis = NOW + 365 * DateProvider.MILLIS_PER_DAY;
+
+		assertEquals(statement, snapshot.getStatement(john));
+		assertEquals(interest, snapshot.totalInterestPaidCents());
+		assertEquals(10000, snapshot.getBalanceCents(checking.getAccountNumber()));
+		assertEquals(0, snapshot.getBalanceCents(savings.getAccountNumber()));
+		assertEquals(7500, checking.getBalanceCents());
+	}
+
+	@Test
+	public void testAccountCutAtVersion() {
+		Account source = new Account(Account.Type.CHECKING);
+		Account maxi = new Account(Account.Type.MAXI_SAVINGS);
+		source.deposit(10000);
+		clockMillis = NOW - 20 * DateProvider.MILLIS_PER_DAY;
+		maxi.deposit(1000);
+		long first = VersionClock.stableVersion();
+		clockMillis = NOW - 15 * DateProvider.MILLIS_PER_DAY;
+		TransferEngine.transfer(source, maxi, 30000);
+		clockMillis = NOW - 12 * DateProvider.MILLIS_PER_DAY;
+		maxi.withdraw(5);
+		long version = VersionClock.stableVersion();
+		long balance = maxi.getBalanceCents();
+		double interest = maxi.interestEarned();
+		int size = maxi.getTransactions().size();
+
+		// Entries posted after the version was taken fall outside the cut
+		clockMillis = NOW - 5 * DateProvider.MILLIS_PER_DAY;
+		TransferEngine.transfer(source, maxi, 100);
+		maxi.deposit(7);
+		clockMillis = NOW;
+
+		Account.Snapshot state = maxi.snapshot(version);
+		assertEquals(size, state.view().size());
+		assertEquals(balance, state.checkpoint.balanceCents);
+		clockMillis = NOW - 12 * DateProvider.MILLIS_PER_DAY;
+		assertEquals(interest, maxi.interestEarned(state.checkpoint, clockMillis), DOUBLE_DELTA);
+		assertEquals(100000, maxi.snapshot(first).checkpoint.balanceCents);
+	}
+
+	@Test
+	public void testCutBehindSeveralNewerTransfers() {
+		Account source = new Account(Account.Type.CHECKING);
+		Account maxi = new Account(Account.Type.MAXI_SAVINGS);
+		source.deposit(10000);
+		for (int i = 0; i < 2500; i++) {
+			clockMillis = NOW - (3000 - i) * DateProvider.MILLIS_PER_DAY;
+			if (i % 100 == 99) {
+				TransferEngine.transfer(source, maxi, 100);
+			} else if (i % 7 == 6) {
+				maxi.withdraw(1);
+			} else {
+				maxi.deposit(2);
+			}
+		}
+		long version = VersionClock.stableVersion();
+		Account.Checkpoint expected = (Account.Checkpoint) maxi.getLedger().tail();
+
+		for (int i = 0; i < 3; i++) {
+			clockMillis += DateProvider.MILLIS_PER_DAY;
+			TransferEngine.transfer(source, maxi, 100);
+			maxi.deposit(3);
+		}
+
+		Account.Snapshot state = maxi.snapshot(version);
+		assertEquals(expected.size, state.view().size());
+		assertEquals(expected.size, state.checkpoint.size);
+		assertEquals(expected.balanceCents, state.checkpoint.balanceCents);
+		assertEquals(expected.accruedBalance, state.checkpoint.accruedBalance, 0);
+		assertEquals(expected.lowRateDaysRemaining, state.checkpoint.lowRateDaysRemaining);
+	}
+
+	@Test
+	public void testTransfersNeverSeenHalfApplied() throws Exception {
+		final Bank bank = new Bank(2);
+		final int accounts = 8;
+		final int[] numbers = new int[accounts];
+		for (int i = 0; i < accounts; i++) {
+			Account account = new Account(Account.Type.SAVINGS);
+			account.deposit(1000);
+			bank.addCustomer(new Customer("C" + i).openAccount(account));
+			numbers[i] = account.getAccountNumber();
+		}
+
+		final AtomicInteger running = new AtomicInteger(4);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int t = 0; t < 4; t++) {
+			final int seed = t;
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 5000; i++) {
+						int from = (seed * 3 + i) % accounts;
+						int to = (from + 1 + i % (accounts - 1)) % accounts;
+						try {
+							bank.transfer(numbers[from], numbers[to], 1 + i % 3000);
+						} catch (IllegalStateException e) {
+							// Insufficient funds
+						}
+					}
+					running.decrementAndGet();
+				}
+			}));
+		}
+		try {
+			int snapshots = 0;
+			while (running.get() > 0 || snapshots == 0) {
+				snapshots++;
+				BankSnapshot snapshot = bank.snapshot();
+				assertEquals(accounts * 100000, snapshot.totalBalanceCents());
+				for (int number : numbers) {
+					long sum = 0;
+					for (Transaction transaction : snapshot.getTransactions(number)) {
+						sum += transaction.getAmountCents();
+					}
+					assertEquals(snapshot.getBalanceCents(number), sum);
+					assertTrue(sum >= 0);
+				}
+			}
+		} finally {
+			for (Future<?> f : futures)
+				f.get();
+			executor.shutdown();
+			bank.shutdown();
+		}
+	}
+
+	@Test
+	public void testDepositsNeverSeenOutOfOrder() throws Exception {
+		final Bank bank = new Bank();
+		final Account first = new Account(Account.Type.CHECKING);
+		final Account second = new Account(Account.Type.CHECKING);
+		bank.addCustomer(new Customer("First").openAccount(first));
+		bank.addCustomer(new Customer("Second").openAccount(second));
+
+		// Each deposit into the second account starts after the matching one
+		// into the first has finished
+		final AtomicBoolean running = new AtomicBoolean(true);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Future<?> writer = executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 200000 && running.get(); i++) {
+					first.deposit(1);
+					second.deposit(1);
+				}
+				running.set(false);
+			}
+		});
+		try {
+			int snapshots = 0;
+			while (running.get() || snapshots == 0) {
+				snapshots++;
+				BankSnapshot snapshot = bank.snapshot();
+				long firstCents = snapshot.getBalanceCents(first.getAccountNumber());
+				long secondCents = snapshot.getBalanceCents(second.getAccountNumber());
+				assertTrue(firstCents + " before " + secondCents, firstCents == secondCents || firstCents == secondCents + 100);
+			}
+		} finally {
+			running.set(false);
+			writer.get();
+			executor.shutdown();
+			bank.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownCustomer() {
+		new Bank().snapshot().getStatement(new Customer("Nobody"));
+	}
+}
@@ -3,6 +3,17 @@ package com.abc;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -34,6 +45,31 @@ public class BankTest {
 		assertEquals("Customer Summary\n - John (1 account)", bank.customerSummary());
 	}
 
+	@Test
+	public void testPagedCustomerSummary() throws IOException {
+		Bank bank = new Bank();
+		for (int i = 0; i < 2500; i++) {
+			Customer c = new Customer("C" + i);
+			for (int a = 0; a < i % 3; a++)
+				c.openAccount(new Account(Account.Type.CHECKING));
+			bank.addCustomer(c);
+		}
+
+		StringBuilder page = new StringBuilder();
+		assertEquals(2, bank.writeCustomerSummary(page, 1, 2));
+		assertEquals("Customer Summary\n - C1 (1 account)\n - C2 (2 accounts)", page.toString());
+
+		StringWriter tail = new StringWriter();
+		assertEquals(500, bank.writeCustomerSummary(tail, 2000, 1000));
+		assertTrue(tail.toString().endsWith("\n - C2499 (0 accounts)"));
+
+		StringWriter all = new StringWriter();
+		assertEquals(2500, bank.writeCustomerSummary(all, 0, Integer.MAX_VALUE));
+		assertEquals(bank.customerSummary(), all.toString());
+
+		assertEquals(0, bank.writeCustomerSummary(new StringBuilder(), 3000, 10));
+	}
+
 	@Test
 	public void testTotalInterestPaid() {
 		Bank bank = new Bank();
@@ -46,6 +82,101 @@ public class BankTest {
 		assertEquals(150.0, bank.totalInterestPaid(), DOUBLE_DELTA);
 	}
 
+	@Test
+	public void testParallelTotalInterestPaid() {
+		// Credits a fixed fraction of the balance regardless of elapsed days
+		InterestEngine engine = new InterestEngine() {
+			@Override
+			public double accrue(double balance, int lowRateDays, int days) {
+				return balance * 1.0123;
+			}
+
+			@Override
+			public int lowRateDaysAfterWithdrawal() {
+				return 0;
+			}
+		};
+
+		Bank bank = new Bank();
+		for (int c = 0; c < 2000; c++) {
+			Customer customer = new Customer("Customer " + c);
+			for (int a = 0; a < 3; a++) {
+				Account account = new Account(Account.Type.CHECKING, engine);
+				account.deposit(1 + c * 0.37 + a * 11.03);
+				customer.openAccount(account);
+			}
+			bank.addCustomer(customer);
+		}
+
+		long sequential = bank.totalInterestPaidCents();
+		bank.setReportParallelism(4);
+		assertEquals(sequential, bank.totalInterestPaidCents());
+		assertEquals(Money.toDollars(sequential), bank.totalInterestPaid(), DOUBLE_DELTA);
+		bank.setReportParallelism(0);
+	}
+
+	@Test
+	public void testFindCustomerAndAccount() {
+		Bank bank = new Bank();
+		Account before = new Account(Account.Type.CHECKING);
+		Customer john = new Customer("John").openAccount(before);
+		bank.addCustomer(john);
+		Account after = new Account(Account.Type.SAVINGS);
+		john.openAccount(after);
+
+		assertSame(john, bank.findCustomer(john.getId()));
+		assertSame(john, bank.findCustomer("John"));
+		assertSame(before, bank.findAccount(before.getAccountNumber()));
+		assertSame(after, bank.findAccount(after.getAccountNumber()));
+		assertSame(john, bank.findAccountOwner(after.getAccountNumber()));
+		assertNull(bank.findCustomer("Jane"));
+		assertNull(bank.findAccount(new Account(Account.Type.CHECKING).getAccountNumber()));
+	}
+
+	@Test
+	public void testConcurrentRegistration() throws Exception {
+		final Bank bank = new Bank();
+		final int threads = 8;
+		final int customersPerThread = 500;
+		final List<Customer> registered = Collections.synchronizedList(new ArrayList<Customer>());
+		final List<Account> opened = Collections.synchronizedList(new ArrayList<Account>());
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int t = 0; t < threads; t++) {
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < customersPerThread; i++) {
+						Customer c = new Customer("C" + Thread.currentThread().getId() + "-" + i);
+						Account first = new Account(Account.Type.CHECKING);
+						c.openAccount(first);
+						bank.addCustomer(c);
+						registered.add(c);
+						opened.add(first);
+
+						// Open more accounts on customers that other threads registered
+						Customer other = registered.get(i * 7 % registered.size());
+						Account more = new Account(Account.Type.SAVINGS);
+						other.openAccount(more);
+						opened.add(more);
+					}
+				}
+			}));
+		}
+		for (Future<?> f : futures)
+			f.get();
+		executor.shutdown();
+
+		assertEquals(threads * customersPerThread, bank.getNumberOfCustomers());
+		for (Customer c : registered) {
+			assertSame(c, bank.findCustomer(c.getId()));
+			for (Account a : c.getAccounts())
+				assertSame(c, bank.findAccountOwner(a.getAccountNumber()));
+		}
+		for (Account a : opened)
+			assertSame(a, bank.findAccount(a.getAccountNumber()));
+	}
+
 	@Test
 	public void testAddCustomer() {
 		Bank bank = new Bank();
@@ -59,4 +190,119 @@ public class BankTest {
 
 		assertNotNull(bank.getFirstCustomer());
 	}
+
+	@Test
+	public void testShardedReportsMatchUnsharded() throws IOException {
+		Bank unsharded = new Bank();
+		Bank sharded = new Bank(4);
+		assertEquals(4, sharded.getShardCount());
+		assertNull(sharded.getFirstCustomer());
+		for (int c = 0; c < 1500; c++) {
+			Customer customer = new Customer("Customer " + c);
+			Account account = new Account(Account.Type.values()[c % 3]);
+			account.deposit(10 + c);
+			customer.openAccount(account);
+			if (c % 5 == 0) {
+				customer.openAccount(new Account(Account.Type.SAVINGS));
+			}
+			unsharded.addCustomer(customer);
+			sharded.addCustomer(customer);
+		}
+
+		assertEquals(1500, sharded.getNumberOfCustomers());
+		assertEquals("Customer 0", sharded.getFirstCustomer());
+		assertEquals(unsharded.customerSummary(), sharded.customerSummary());
+		StringWriter expected = new StringWriter();
+		StringWriter actual = new StringWriter();
+		assertEquals(unsharded.writeCustomerSummary(expected, 1020, 30), sharded.writeCustomerSummary(actual, 1020, 30));
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals(0, sharded.writeCustomerSummary(new StringBuilder(), 2000, 10));
+		assertEquals(unsharded.totalInterestPaidCents(), sharded.totalInterestPaidCents());
+		sharded.shutdown();
+	}
+
+	@Test
+	public void testShardedPagesSkipEarlierCustomers() throws IOException {
+		Bank bank = new Bank(4);
+		for (int c = 0; c < 20000; c++) {
+			bank.addCustomer(new Customer("C" + c));
+		}
+
+		StringBuilder paged = new StringBuilder("Customer Summary");
+		for (int offset = 0; offset < 20000; offset += 777) {
+			StringBuilder page = new StringBuilder();
+			assertEquals(Math.min(777, 20000 - offset), bank.writeCustomerSummary(page, offset, 777));
+			paged.append(page, "Customer Summary".length(), page.length());
+		}
+		assertEquals(bank.customerSummary(), paged.toString());
+
+		// A page near the end takes the shard locks no more often than the
+		// first page, rather than once per page of the customers before it
+		Metrics.View metrics = new Metrics.View();
+		String lock = Metrics.Lock.CUSTOMERS.getLabel();
+		long before = metrics.getLockAcquisitions().get(lock);
+		bank.writeCustomerSummary(new StringBuilder(), 0, 10);
+		long first = metrics.getLockAcquisitions().get(lock) - before;
+		before = metrics.getLockAcquisitions().get(lock);
+		StringBuilder last = new StringBuilder();
+		assertEquals(10, bank.writeCustomerSummary(last, 19990, 10));
+		long deep = metrics.getLockAcquisitions().get(lock) - before;
+		assertTrue(last.toString().startsWith("Customer Summary\n - C19990 ("));
+		if (Metrics.ENABLED) {
+			assertEquals(first, deep);
+		}
+		bank.shutdown();
+	}
+
+	@Test
+	public void testConcurrentCrossShardTransfers() throws Exception {
+		final Bank bank = new Bank(4);
+		final int accounts = 16;
+		final int[] numbers = new int[accounts];
+		for (int i = 0; i < accounts; i++) {
+			Account account = new Account(Account.Type.CHECKING);
+			account.deposit(1000);
+			bank.addCustomer(new Customer("C" + i).openAccount(account));
+			numbers[i] = account.getAccountNumber();
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int t = 0; t < 8; t++) {
+			final int seed = t;
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 2000; i++) {
+						int from = (seed + i) % accounts;
+						// Alternate directions between the same pairs
+						int to = (from + (i % 2 == 0 ? 1 : accounts - 1)) % accounts;
+						try {
+							bank.transfer(numbers[from], numbers[to], 1 + i % 700);
+						} catch (IllegalStateException e) {
+							// Insufficient funds
+						}
+					}
+				}
+			}));
+		}
+		for (Future<?> f : futures)
+			f.get();
+		executor.shutdown();
+
+		long total = 0;
+		for (int number : numbers) {
+			Account account = bank.findAccount(number);
+			assertTrue(account.getBalanceCents() >= 0);
+			assertEquals(account.getBalanceCents(), account.sumTransactionsCents());
+			total += account.getBalanceCents();
+		}
+		assertEquals(accounts * 100000, total);
+		bank.shutdown();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testShardCountMustBePositive() {
+		new Bank(0);
+	}
 }
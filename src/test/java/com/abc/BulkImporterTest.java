@@ -0,0 +1,126 @@
+package com.abc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BulkImporterTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testImport() throws Exception {
+		Bank bank = new Bank();
+		Account checking = new Account(Account.Type.CHECKING);
+		Account savings = new Account(Account.Type.SAVINGS);
+		bank.addCustomer(new Customer("John").openAccount(checking).openAccount(savings));
+		int c = checking.getAccountNumber();
+		int s = savings.getAccountNumber();
+		int unknown = new Account(Account.Type.CHECKING).getAccountNumber();
+
+		String feed = c + ",100.00,payroll\n"
+				+ s + ", 25.5\r\n"
+				+ "\n"
+				+ c + ",-12.34,coffee, large\n"
+				+ "abc,1.00\n"
+				+ unknown + ",5\n"
+				+ c + ",0.00\n"
+				+ s + ",1.234\n"
+				+ c + ",.5,payroll";
+		Path file = write(feed);
+
+		BulkImporter importer = new BulkImporter(bank, 2, 16);
+		ImportReport report = importer.importFile(file);
+		importer.close();
+
+		assertEquals(8, report.getRows());
+		assertEquals(4, report.getImported());
+		assertEquals(4, report.getRejected());
+		assertEquals(feed.length(), report.getBytes());
+
+		List<ImportReport.Reject> rejects = report.getRejects();
+		assertEquals(4, rejects.size());
+		assertEquals(5, rejects.get(0).getLine());
+		assertEquals("malformed account number", rejects.get(0).getReason());
+		assertEquals(6, rejects.get(1).getLine());
+		assertEquals("unknown account " + unknown, rejects.get(1).getReason());
+		assertEquals(7, rejects.get(2).getLine());
+		assertEquals(8, rejects.get(3).getLine());
+
+		assertEquals(10000 - 1234 + 50, checking.getBalanceCents());
+		assertEquals(2550, savings.getBalanceCents());
+		List<Transaction> transactions = checking.getTransactions();
+		assertEquals("payroll", transactions.get(0).getDescription());
+		assertEquals("coffee, large", transactions.get(1).getDescription());
+		assertEquals("payroll", transactions.get(2).getDescription());
+		assertEquals("deposit", savings.getTransactions().get(0).getDescription());
+	}
+
+	@Test
+	public void testLargeFeedKeepsFileOrder() throws Exception {
+		Bank bank = new Bank();
+		int accountCount = 50;
+		Account[] accounts = new Account[accountCount];
+		Customer customer = new Customer("Feed");
+		for (int i = 0; i < accountCount; i++) {
+			accounts[i] = new Account(Account.Type.CHECKING);
+			customer.openAccount(accounts[i]);
+		}
+		bank.addCustomer(customer);
+
+		int rows = 200000;
+		Path file = folder.newFile().toPath();
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			for (int i = 0; i < rows; i++) {
+				Account account = accounts[i % accountCount];
+				writer.write(account.getAccountNumber() + "," + (i + 1) / 100 + "." + String.format("%02d", (i + 1) % 100) + ",feed "
+						+ (i % 7) + "\n");
+			}
+		}
+
+		BulkImporter importer = new BulkImporter(bank, 4, 64 * 1024);
+		ImportReport report = importer.importFile(file);
+		importer.close();
+
+		assertEquals(rows, report.getImported());
+		assertEquals(0, report.getRejected());
+		for (int a = 0; a < accountCount; a++) {
+			Ledger.View view = accounts[a].view();
+			assertEquals(rows / accountCount, view.size());
+			long expected = 0;
+			for (int k = 0; k < view.size(); k++) {
+				long cents = a + k * (long) accountCount + 1;
+				assertEquals(cents, view.amountCents(k));
+				assertEquals("feed " + ((a + k * accountCount) % 7), view.description(k));
+				expected += cents;
+			}
+			assertEquals(expected, accounts[a].getBalanceCents());
+		}
+		assertTrue(report.getRowsPerSecond() > 0);
+	}
+
+	@Test
+	public void testEmptyFile() throws Exception {
+		BulkImporter importer = new BulkImporter(new Bank(), 1);
+		ImportReport report = importer.importFile(write(""));
+		importer.close();
+		assertEquals(0, report.getRows());
+		assertEquals(0, report.getRejected());
+	}
+
+	private Path write(String content) throws IOException {
+		Path file = folder.newFile().toPath();
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+}
@@ -3,6 +3,8 @@ package com.abc;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -53,11 +55,37 @@ public class CustomerTest {
 		Mockito.when(mockCheckingAccount.getTransactions()).thenReturn(checkingTransactions);
 		Mockito.when(mockSavingsAccount.getTransactions()).thenReturn(savingsTransactions);
 
+		Mockito.when(mockCheckingAccount.view()).thenReturn(ledgerOf(checkingTransactions).view());
+		Mockito.when(mockSavingsAccount.view()).thenReturn(ledgerOf(savingsTransactions).view());
+
 		assertEquals(henry.totalInterestEarned(), savingsInterest + checkingInterest, DOUBLE_DELTA);
 		assertEquals("Statement for Henry\n" + "\n" + "Checking Account\n" + "  deposit $100.00\n" + "Total $100.00\n" + "\n" + "Savings Account\n"
 				+ "  deposit $4,000.00\n" + "  withdrawal $200.00\n" + "Total $3,800.00\n" + "\n" + "Total In All Accounts $3,900.00", henry.getStatement());
 	}
 
+	@Test
+	public void testWriteStatementMatchesGetStatement() throws IOException {
+		Account checking = new Account(Account.Type.CHECKING);
+		checking.deposit(1234567.89);
+		checking.withdraw(0.5, "atm");
+		Customer oscar = new Customer("Oscar").openAccount(checking).openAccount(new Account(Account.Type.MAXI_SAVINGS));
+
+		StringWriter out = new StringWriter();
+		oscar.writeStatement(out);
+		assertEquals(oscar.getStatement(), out.toString());
+		assertEquals("Statement for Oscar\n" + "\n" + "Checking Account\n" + "  deposit $1,234,567.89\n" + "  atm $0.50\n" + "Total $1,234,567.39\n" + "\n"
+				+ "Maxi Savings Account\n" + "Total $0.00\n" + "\n" + "Total In All Accounts $1,234,567.39", out.toString());
+	}
+
+	// Build a ledger holding the given transactions for a mocked account
+	private static Ledger ledgerOf(List<Transaction> transactions) {
+		Ledger ledger = new Ledger();
+		for (Transaction t : transactions) {
+			ledger.append(t.getAmountCents(), 0, Ledger.descriptionId(t.getDescription()));
+		}
+		return ledger;
+	}
+
 	@Test
 	public void testOneAccount() {
 		Customer oscar = new Customer("Oscar").openAccount(new Account(Account.Type.SAVINGS));
@@ -84,4 +112,31 @@ public class CustomerTest {
 		Customer henry = new Customer("Henry");
 		assertTrue("Henry".equals(henry.getName()));
 	}
+
+	@Test
+	public void testStatementForWindow() {
+		final long[] clockMillis = { 1460000000000L };
+		DateProvider.getInstance().setClock(new DateProvider.Clock() {
+			@Override
+			public long millis() {
+				return clockMillis[0];
+			}
+		});
+		try {
+			Account checking = new Account(Account.Type.CHECKING);
+			Customer oscar = new Customer("Oscar").openAccount(checking).openAccount(new Account(Account.Type.SAVINGS));
+			long first = clockMillis[0];
+			checking.deposit(100);
+			long last = clockMillis[0] += DateProvider.MILLIS_PER_DAY;
+			checking.withdraw(20, "atm");
+
+			assertEquals(oscar.getStatement(), oscar.getStatement(first, last + 1));
+			assertEquals("Statement for Oscar\n" + "\n" + "Checking Account\n" + "  atm $20.00\n" + "Total $20.00\n" + "\n" + "Savings Account\n"
+					+ "Total $0.00\n" + "\n" + "Total In All Accounts $20.00", oscar.getStatement(last, last + 1));
+			assertEquals("Statement for Oscar\n" + "\n" + "Checking Account\n" + "Total $0.00\n" + "\n" + "Savings Account\n" + "Total $0.00\n" + "\n"
+					+ "Total In All Accounts $0.00", oscar.getStatement(last + 1, last + 2));
+		} finally {
+			DateProvider.getInstance().setClock(DateProvider.SYSTEM_CLOCK);
+		}
+	}
 }
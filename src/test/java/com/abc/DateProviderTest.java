@@ -35,4 +35,50 @@ public class DateProviderTest {
 		}
 
 	}
+
+	@Test
+	public final void testDaysBetween() {
+		DateProvider dateProvider = DateProvider.getInstance();
+		long start = 1000;
+		assertEquals(0, dateProvider.daysBetween(start, start + DateProvider.MILLIS_PER_DAY - 1));
+		assertEquals(1, dateProvider.daysBetween(start, start + DateProvider.MILLIS_PER_DAY));
+		assertEquals(30, dateProvider.daysBetween(start, start + 30 * DateProvider.MILLIS_PER_DAY + 5));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testDaysBetweenReversed() {
+		DateProvider.getInstance().daysBetween(2, 1);
+	}
+
+	@Test
+	public final void testEpochDay() {
+		assertEquals(0, DateProvider.epochDay(0));
+		assertEquals(0, DateProvider.epochDay(DateProvider.MILLIS_PER_DAY - 1));
+		assertEquals(1, DateProvider.epochDay(DateProvider.MILLIS_PER_DAY));
+		assertEquals(-1, DateProvider.epochDay(-1));
+	}
+
+	@Test
+	public final void testSetClock() {
+		DateProvider dateProvider = DateProvider.getInstance();
+		dateProvider.setClock(new DateProvider.Clock() {
+			@Override
+			public long millis() {
+				return 3 * DateProvider.MILLIS_PER_DAY + 7;
+			}
+		});
+		try {
+			assertEquals(3 * DateProvider.MILLIS_PER_DAY + 7, dateProvider.currentTimeMillis());
+			assertEquals(3, dateProvider.currentEpochDay());
+			assertEquals(3, dateProvider.daysSince(7));
+			assertEquals(3 * DateProvider.MILLIS_PER_DAY + 7, dateProvider.now().getTime());
+		} finally {
+			dateProvider.setClock(DateProvider.SYSTEM_CLOCK);
+		}
+	}
+
+	@Test(expected = NullPointerException.class)
+	public final void testSetNullClock() {
+		DateProvider.getInstance().setClock(null);
+	}
 }
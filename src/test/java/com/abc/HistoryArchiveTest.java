@@ -0,0 +1,157 @@
+package com.abc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HistoryArchiveTest {
+	private static final double DOUBLE_DELTA = 1e-9;
+	private static final long TODAY = 16900;
+	private static final long NOON = TODAY * DateProvider.MILLIS_PER_DAY + DateProvider.MILLIS_PER_DAY / 2;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	long clockMillis;
+
+	@Before
+	public void setup() {
+		clockMillis = NOON;
+		DateProvider.getInstance().setClock(new DateProvider.Clock() {
+			@Override
+			public long millis() {
+				return clockMillis;
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		DateProvider.getInstance().setClock(DateProvider.SYSTEM_CLOCK);
+	}
+
+	/*
+	 * Post entries one a minute, with a withdrawal every tenth entry, starting
+	 * the given number of days ago
+	 */
+	private void post(Account account, int entries, int daysAgo) {
+		long start = NOON - daysAgo * DateProvider.MILLIS_PER_DAY;
+		for (int i = 0; i < entries; i++) {
+			clockMillis = start + i * 60000L;
+			if (i % 10 == 9) {
+				account.withdrawCents(150, "atm " + i % 3);
+			} else {
+				account.depositCents(100 + i, "payroll");
+			}
+		}
+		clockMillis = NOON;
+	}
+
+	@Test
+	public void testArchiveKeepsStatementsAndInterest() throws IOException {
+		Path directory = folder.newFolder().toPath();
+		HistoryArchive archive = new HistoryArchive(directory);
+		Account maxi = new Account(Account.Type.MAXI_SAVINGS);
+		post(maxi, 3 * Ledger.CHUNK_SIZE + 100, 30);
+
+		String statement = new Customer("John").openAccount(maxi).getStatement();
+		List<Transaction> transactions = maxi.getTransactions();
+		long balance = maxi.getBalanceCents();
+		double interest = maxi.interestEarned();
+
+		// The last chunk is newer than the horizon and stays in memory
+		long horizon = NOON - 28 * DateProvider.MILLIS_PER_DAY;
+		assertEquals(2 * Ledger.CHUNK_SIZE, archive.archive(maxi, horizon));
+		assertEquals(0, archive.archive(maxi, horizon));
+
+		List<PeriodSummary> periods = maxi.getPeriodSummaries();
+		assertEquals(2, periods.size());
+		assertEquals(0, periods.get(0).getOpeningBalanceCents());
+		assertEquals(periods.get(0).getClosingBalanceCents(), periods.get(1).getOpeningBalanceCents());
+		assertEquals(Ledger.CHUNK_SIZE, periods.get(1).getFirstIndex());
+		assertEquals(Ledger.CHUNK_SIZE, periods.get(1).getCount());
+		assertEquals(transactions.get(Ledger.CHUNK_SIZE).getTime(), periods.get(1).getFirstTime());
+		assertEquals(transactions.get(2 * Ledger.CHUNK_SIZE - 1).getTime(), periods.get(1).getLastTime());
+		long closing = 0;
+		for (int i = 0; i < 2 * Ledger.CHUNK_SIZE; i++) {
+			closing += transactions.get(i).getAmountCents();
+		}
+		assertEquals(closing, periods.get(1).getClosingBalanceCents());
+
+		// Old detail is read back from the archive
+		assertEquals(statement, new Customer("John").openAccount(maxi).getStatement());
+		assertTransactionsEqual(transactions, maxi.getTransactions());
+		assertEquals(balance, maxi.getBalanceCents());
+		assertEquals(balance, maxi.sumTransactionsCents());
+		assertEquals(interest, maxi.interestEarned(), DOUBLE_DELTA);
+
+		// Windows are found from the period summaries, reading back at most
+		// one archived chunk
+		long from = transactions.get(1000).getTime();
+		long to = transactions.get(2100).getTime();
+		List<Transaction> window = maxi.getTransactions(from, to);
+		assertTransactionsEqual(transactions.subList(1000, 2100), window);
+
+		// The account keeps taking entries, and archives further later on
+		post(maxi, Ledger.CHUNK_SIZE, 10);
+		assertEquals(2 * Ledger.CHUNK_SIZE, archive.archive(maxi, NOON - 5 * DateProvider.MILLIS_PER_DAY));
+		assertEquals(4, maxi.getPeriodSummaries().size());
+		assertEquals(closing, maxi.getPeriodSummaries().get(2).getOpeningBalanceCents());
+		assertEquals(maxi.getBalanceCents(), maxi.sumTransactionsCents());
+	}
+
+	private static void assertTransactionsEqual(List<Transaction> expected, List<Transaction> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getAmountCents(), actual.get(i).getAmountCents());
+			assertEquals(expected.get(i).getTime(), actual.get(i).getTime());
+			assertEquals(expected.get(i).getDescription(), actual.get(i).getDescription());
+		}
+	}
+
+	@Test
+	public void testArchivedCheckpointMatchesLedger() throws IOException {
+		HistoryArchive archive = new HistoryArchive(folder.newFolder().toPath());
+		Account maxi = new Account(Account.Type.MAXI_SAVINGS);
+		post(maxi, Ledger.CHUNK_SIZE, 20);
+		Account.Checkpoint end = (Account.Checkpoint) maxi.getLedger().tail();
+		assertEquals(Ledger.CHUNK_SIZE, archive.archive(maxi, NOON));
+
+		PeriodSummary period = maxi.getPeriodSummaries().get(0);
+		assertEquals(end.balanceCents, period.getClosingBalanceCents());
+		assertEquals(end.accruedBalance, period.getAccruedBalance(), DOUBLE_DELTA);
+		assertEquals(end.lowRateDaysRemaining, period.getLowRateDaysRemaining());
+	}
+
+	@Test
+	public void testSnapshotOfArchivedBank() throws IOException {
+		HistoryArchive archive = new HistoryArchive(folder.newFolder().toPath());
+		SnapshotStore store = new SnapshotStore(folder.newFolder().toPath());
+		Bank bank = new Bank();
+		Account checking = new Account(Account.Type.CHECKING);
+		Account savings = new Account(Account.Type.SAVINGS);
+		Customer john = new Customer("John").openAccount(checking).openAccount(savings);
+		bank.addCustomer(john);
+		post(checking, 2 * Ledger.CHUNK_SIZE + 5, 40);
+		post(savings, 10, 40);
+		String statement = john.getStatement();
+
+		assertEquals(2 * Ledger.CHUNK_SIZE, archive.archive(bank, NOON));
+		assertTrue(savings.getPeriodSummaries().isEmpty());
+		store.write(bank);
+		store.close();
+
+		Bank recovered = store.recover(null);
+		assertEquals(statement, recovered.findCustomer(john.getId()).getStatement());
+		assertEquals(bank.customerSummary(), recovered.customerSummary());
+	}
+}
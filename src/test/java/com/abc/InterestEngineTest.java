@@ -0,0 +1,128 @@
+package com.abc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/*
+ * Differential tests of the closed-form interest engines against the original
+ * implementation which compounded one day at a time
+ */
+public class InterestEngineTest {
+	private static final double RELATIVE_DELTA = 1e-10;
+	private static final int HISTORIES = 500;
+
+	private static double loopSavings(double currBalance, int days) {
+		for (int i = 0; i < days; i++) {
+			if (currBalance < 1000) {
+				currBalance = currBalance * (1 + 0.001 / 365);
+			} else {
+				currBalance = 1000 * (1 + 0.001 / 365) + (currBalance - 1000) * (1 + 0.002 / 365);
+			}
+		}
+		return currBalance;
+	}
+
+	private static double loopMaxiSavings(double currBalance, int daysOfLowAPR, int days) {
+		for (int i = 0; i < days; i++) {
+			if (daysOfLowAPR > 0) {
+				currBalance = currBalance * (1 + 0.001 / 365);
+				daysOfLowAPR--;
+			} else {
+				currBalance = currBalance * (1 + 0.05 / 365);
+			}
+		}
+		return currBalance;
+	}
+
+	private static double loopChecking(double currBalance, int days) {
+		return currBalance * Math.pow(1 + 0.001 / 365, days);
+	}
+
+	private static double loop(Account.Type type, double balance, int lowRateDays, int days) {
+		switch (type) {
+		case SAVINGS:
+			return loopSavings(balance, days);
+		case MAXI_SAVINGS:
+			return loopMaxiSavings(balance, lowRateDays, days);
+		default:
+			return loopChecking(balance, days);
+		}
+	}
+
+	private static void assertClose(double expected, double actual) {
+		assertEquals(expected, actual, RELATIVE_DELTA * Math.max(1.0, Math.abs(expected)));
+	}
+
+	/*
+	 * Replay random histories with both implementations, carrying the balance
+	 * and low-rate countdown forward exactly as Account does
+	 */
+	private void assertMatchesLoop(Account.Type type, long seed) {
+		Random random = new Random(seed);
+		InterestEngine engine = type.getInterestEngine();
+		for (int h = 0; h < HISTORIES; h++) {
+			double expected = 0;
+			double actual = 0;
+			int lowRateDays = 0;
+			int transactions = 1 + random.nextInt(20);
+			for (int t = 0; t < transactions; t++) {
+				int days = random.nextBoolean() ? random.nextInt(15) : random.nextInt(3 * 365);
+				expected = loop(type, expected, lowRateDays, days);
+				actual = engine.accrue(actual, lowRateDays, days);
+				assertClose(expected, actual);
+
+				lowRateDays = Math.max(0, lowRateDays - days);
+				double amount = random.nextInt(300000) / 100.0;
+				if (random.nextInt(3) == 0) {
+					amount = -amount;
+					lowRateDays = engine.lowRateDaysAfterWithdrawal();
+				}
+				expected += amount;
+				actual += amount;
+			}
+		}
+	}
+
+	@Test
+	public void testCheckingMatchesLoop() {
+		assertMatchesLoop(Account.Type.CHECKING, 1);
+	}
+
+	@Test
+	public void testSavingsMatchesLoop() {
+		assertMatchesLoop(Account.Type.SAVINGS, 2);
+	}
+
+	@Test
+	public void testMaxiSavingsMatchesLoop() {
+		assertMatchesLoop(Account.Type.MAXI_SAVINGS, 3);
+	}
+
+	@Test
+	public void testSavingsCrossesTier() {
+		InterestEngine engine = Account.Type.SAVINGS.getInterestEngine();
+		for (double balance = 990; balance < 1000; balance += 0.25) {
+			assertClose(loopSavings(balance, 20 * 365), engine.accrue(balance, 0, 20 * 365));
+		}
+	}
+
+	@Test
+	public void testMaxiSavingsLowRateWindow() {
+		InterestEngine engine = Account.Type.MAXI_SAVINGS.getInterestEngine();
+		for (int days = 0; days < 30; days++) {
+			for (int lowRateDays = 0; lowRateDays <= 10; lowRateDays++) {
+				assertClose(loopMaxiSavings(1500, lowRateDays, days), engine.accrue(1500, lowRateDays, days));
+			}
+		}
+	}
+
+	@Test
+	public void testNoInterestWithoutElapsedDays() {
+		for (Account.Type type : Account.Type.values()) {
+			assertEquals(1234.5, type.getInterestEngine().accrue(1234.5, 10, 0), 0);
+		}
+	}
+}
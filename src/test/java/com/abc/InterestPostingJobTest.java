@@ -0,0 +1,190 @@
+package com.abc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InterestPostingJobTest {
+	private static final double DOUBLE_DELTA = 1e-9;
+	// Noon on a day, in milliseconds since the epoch
+	private static final long TODAY = 16900;
+	private static final long NOON = TODAY * DateProvider.MILLIS_PER_DAY + DateProvider.MILLIS_PER_DAY / 2;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	long clockMillis;
+
+	@Before
+	public void setup() {
+		clockMillis = NOON;
+		DateProvider.getInstance().setClock(new DateProvider.Clock() {
+			@Override
+			public long millis() {
+				return clockMillis;
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		DateProvider.getInstance().setClock(DateProvider.SYSTEM_CLOCK);
+	}
+
+	@Test
+	public void testPostsInterestOnce() throws InterruptedException {
+		Bank bank = new Bank();
+		Account maxi = new Account(Account.Type.MAXI_SAVINGS);
+		Account checking = new Account(Account.Type.CHECKING);
+		Account empty = new Account(Account.Type.SAVINGS);
+		bank.addCustomer(new Customer("John").openAccount(maxi).openAccount(checking));
+		bank.addCustomer(new Customer("Jane").openAccount(empty));
+
+		// Same deposit, never posted
+		Account unposted = new Account(Account.Type.MAXI_SAVINGS);
+
+		clockMillis = NOON - 100 * DateProvider.MILLIS_PER_DAY;
+		maxi.deposit(10000);
+		checking.deposit(5000);
+		unposted.deposit(10000);
+
+		// Interest accrued up to the end of yesterday
+		clockMillis = TODAY * DateProvider.MILLIS_PER_DAY - 1;
+		long maxiDue = maxi.interestEarnedCents();
+		long checkingDue = checking.interestEarnedCents();
+		clockMillis = NOON;
+
+		InterestPostingJob job = new InterestPostingJob(bank, 2);
+		InterestPostingJob.Run run = job.run();
+		assertEquals(TODAY - 1, run.getEpochDay());
+		assertEquals(2, run.getPosted());
+		assertEquals(1, run.getSkipped());
+		assertEquals(0, run.getFailed());
+		assertEquals(maxiDue + checkingDue, run.getInterestCents());
+		assertTrue(run.getNanos() > 0);
+		assertEquals(run, job.getLastRun());
+
+		List<Transaction> transactions = maxi.getTransactions();
+		assertEquals(2, transactions.size());
+		assertEquals("interest", transactions.get(1).getDescription());
+		assertEquals(maxiDue, transactions.get(1).getAmountCents());
+		assertEquals(1000000 + maxiDue, maxi.getBalanceCents());
+
+		// The posting is stamped at noon yesterday, 99 whole days after the
+		// deposit, so the day since then is still outstanding
+		assertEquals(NOON - DateProvider.MILLIS_PER_DAY, transactions.get(1).getTime());
+		assertEquals(unposted.interestEarned(), Money.toDollars(maxiDue) + maxi.interestEarned(), 0.005);
+
+		// Running the same day again, as after a failure, posts nothing new
+		InterestPostingJob.Run again = job.runFor(TODAY - 1);
+		assertEquals(0, again.getPosted());
+		assertEquals(3, again.getSkipped());
+		assertEquals(2, maxi.getTransactions().size());
+
+		// The next day posts one day of interest
+		clockMillis = NOON + DateProvider.MILLIS_PER_DAY;
+		assertEquals(2, job.run().getPosted());
+		assertEquals(3, maxi.getTransactions().size());
+		job.close();
+	}
+
+	@Test
+	public void testPostingAfterLaterActivity() throws InterruptedException {
+		Bank bank = new Bank();
+		Account checking = new Account(Account.Type.CHECKING);
+		bank.addCustomer(new Customer("John").openAccount(checking));
+		clockMillis = NOON - 400 * DateProvider.MILLIS_PER_DAY;
+		checking.deposit(100000);
+
+		// A deposit made today, before the job for yesterday runs
+		clockMillis = NOON;
+		checking.deposit(1);
+		InterestPostingJob job = new InterestPostingJob(bank, 1);
+		assertEquals(1, job.run().getPosted());
+		assertEquals(1, job.runFor(TODAY - 1).getSkipped());
+
+		// The posting accrued up to the deposit at noon today, so the run for
+		// tomorrow posts again
+		clockMillis = NOON + 2 * DateProvider.MILLIS_PER_DAY;
+		assertEquals(1, job.run().getPosted());
+		job.close();
+	}
+
+	@Test
+	public void testNightlyPostingsLoseNoInterest() throws InterruptedException {
+		Bank bank = new Bank();
+		Account posted = new Account(Account.Type.MAXI_SAVINGS);
+		Account unposted = new Account(Account.Type.MAXI_SAVINGS);
+		bank.addCustomer(new Customer("John").openAccount(posted));
+
+		// Deposited at 10:00, so every posting falls part way through a day
+		long start = (TODAY - 30) * DateProvider.MILLIS_PER_DAY + 10 * 60 * 60 * 1000;
+		clockMillis = start;
+		posted.deposit(100000);
+		unposted.deposit(100000);
+
+		InterestPostingJob job = new InterestPostingJob(bank, 1);
+		for (int day = 1; day <= 30; day++) {
+			clockMillis = (TODAY - 30 + day) * DateProvider.MILLIS_PER_DAY + 60 * 1000;
+			// Nothing is due for the day of the deposit
+			assertEquals(day == 1 ? 0 : 1, job.run().getPosted());
+		}
+		job.close();
+		assertEquals(30, posted.getTransactions().size());
+
+		clockMillis = NOON;
+		assertEquals(unposted.getBalance() + unposted.interestEarned(), posted.getBalance() + posted.interestEarned(), 0.005);
+	}
+
+	@Test
+	public void testInterestDescriptionIsReserved() {
+		Account checking = new Account(Account.Type.CHECKING);
+		try {
+			checking.deposit(10, "interest");
+		} catch (IllegalArgumentException e) {
+			assertEquals(0, checking.getTransactions().size());
+			return;
+		}
+		throw new AssertionError("deposit described as interest accepted");
+	}
+
+	@Test
+	public void testPostingsRecoverFromJournal() throws IOException, InterruptedException {
+		Path journalDirectory = folder.newFolder().toPath();
+		SnapshotStore store = new SnapshotStore(folder.newFolder().toPath());
+		Journal journal = new Journal(journalDirectory, Journal.Durability.BATCHED);
+		Bank bank = new Bank(journal);
+		Account maxi = new Account(Account.Type.MAXI_SAVINGS);
+		bank.addCustomer(new Customer("John").openAccount(maxi));
+		clockMillis = NOON - 30 * DateProvider.MILLIS_PER_DAY;
+		maxi.deposit(2000);
+		clockMillis = NOON - 20 * DateProvider.MILLIS_PER_DAY;
+		maxi.withdraw(100);
+		store.write(bank);
+
+		clockMillis = NOON;
+		InterestPostingJob job = new InterestPostingJob(bank, 1);
+		assertEquals(1, job.run().getPosted());
+		job.close();
+		journal.close();
+
+		Bank recovered = store.recover(new Journal(journalDirectory, Journal.Durability.BATCHED));
+		Account copy = recovered.findAccount(maxi.getAccountNumber());
+		Account.Checkpoint expected = (Account.Checkpoint) maxi.getLedger().tail();
+		Account.Checkpoint actual = (Account.Checkpoint) copy.getLedger().tail();
+		assertEquals(expected.balanceCents, actual.balanceCents);
+		assertEquals(expected.accruedBalance, actual.accruedBalance, 0);
+		assertEquals(expected.lowRateDaysRemaining, actual.lowRateDaysRemaining);
+		assertEquals(maxi.interestEarned(), copy.interestEarned(), DOUBLE_DELTA);
+		store.close();
+	}
+}
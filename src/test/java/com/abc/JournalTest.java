@@ -0,0 +1,267 @@
+package com.abc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JournalTest {
+	// Smallest segment that can hold the largest record, to exercise rolling
+	private static final int SMALL_SEGMENT = 70000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/*
+	 * Records every record read back as a line of text
+	 */
+	private static class Recorder implements Journal.Visitor {
+		final List<String> records = new ArrayList<String>();
+		final List<String> descriptions = new ArrayList<String>();
+		int transactions;
+
+		@Override
+		public void customer(int customerId, String name) {
+			records.add("customer " + name);
+		}
+
+		@Override
+		public void account(int accountNumber, int customerId, Account.Type type) {
+			records.add("account " + type);
+		}
+
+		@Override
+		public void description(int descriptionId, String description) {
+			while (descriptions.size() <= descriptionId) {
+				descriptions.add(null);
+			}
+			descriptions.set(descriptionId, description);
+		}
+
+		@Override
+		public void transaction(int accountNumber, int index, long amountCents, long time, int descriptionId) {
+			records.add("transaction " + index + " " + amountCents + " " + descriptions.get(descriptionId));
+			transactions++;
+		}
+	}
+
+	@Test
+	public void testReplay() throws IOException {
+		Path directory = folder.newFolder().toPath();
+		Journal journal = new Journal(directory, Journal.Durability.PER_OP);
+		Bank bank = new Bank(journal);
+
+		Account checking = new Account(Account.Type.CHECKING);
+		checking.depositCents(500, null);
+		Customer john = new Customer("John").openAccount(checking);
+		bank.addCustomer(john);
+		checking.withdrawCents(200, "atm");
+		john.openAccount(new Account(Account.Type.SAVINGS));
+		journal.close();
+
+		Journal reopened = new Journal(directory, Journal.Durability.PER_OP);
+		Recorder recorder = new Recorder();
+		assertEquals(reopened.getPosition(), reopened.replay(0, recorder));
+		reopened.close();
+
+		List<String> expected = new ArrayList<String>();
+		expected.add("customer John");
+		expected.add("account CHECKING");
+		expected.add("transaction 0 500 deposit");
+		expected.add("transaction 1 -200 atm");
+		expected.add("account SAVINGS");
+		assertEquals(expected, recorder.records);
+	}
+
+	@Test
+	public void testTransferDurableOnReturn() throws IOException {
+		Path directory = folder.newFolder().toPath();
+		Journal journal = new Journal(directory, Journal.Durability.PER_OP);
+		Bank bank = new Bank(journal);
+		Account checking = new Account(Account.Type.CHECKING);
+		Account savings = new Account(Account.Type.SAVINGS);
+		bank.addCustomer(new Customer("John").openAccount(checking).openAccount(savings));
+		checking.depositCents(500, null);
+
+		// Forced after the account locks are released, but before returning
+		bank.transfer(checking.getAccountNumber(), savings.getAccountNumber(), 300);
+		assertEquals(journal.getPosition(), journal.getDurablePosition());
+		journal.close();
+
+		Recorder recorder = new Recorder();
+		Journal reopened = new Journal(directory, Journal.Durability.PER_OP);
+		reopened.replay(0, recorder);
+		reopened.close();
+		List<String> records = recorder.records;
+		assertEquals("transaction 1 -300 transfer to " + savings.getAccountNumber(), records.get(records.size() - 2));
+		assertEquals("transaction 0 300 transfer from " + checking.getAccountNumber(), records.get(records.size() - 1));
+	}
+
+	@Test
+	public void testTornRecordIsDiscarded() throws IOException {
+		Path directory = folder.newFolder().toPath();
+		Journal journal = new Journal(directory, Journal.Durability.BATCHED);
+		Bank bank = new Bank(journal);
+		Account checking = new Account(Account.Type.CHECKING);
+		bank.addCustomer(new Customer("John").openAccount(checking));
+		checking.depositCents(100, null);
+		long intact = journal.getPosition();
+		checking.depositCents(200, null);
+		journal.close();
+
+		// Damage the body of the last record, as a crash part way through
+		// writing it would
+		Path segment = onlySegment(directory);
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 0x55 }), intact + 12);
+		}
+
+		Journal reopened = new Journal(directory, Journal.Durability.BATCHED);
+		assertEquals(intact, reopened.getPosition());
+		Recorder recorder = new Recorder();
+		assertEquals(intact, reopened.replay(0, recorder));
+		assertEquals(1, recorder.transactions);
+
+		// Writing continues where the intact records end
+		new Bank(reopened).addCustomer(new Customer("Jane"));
+		reopened.close();
+		recorder = new Recorder();
+		new Journal(directory, Journal.Durability.BATCHED).replay(0, recorder);
+		assertEquals("customer Jane", recorder.records.get(recorder.records.size() - 1));
+	}
+
+	@Test
+	public void testSegmentsRoll() throws IOException {
+		Path directory = folder.newFolder().toPath();
+		Journal journal = new Journal(directory, Journal.Durability.ASYNC, SMALL_SEGMENT);
+		Bank bank = new Bank(journal);
+		Account checking = new Account(Account.Type.CHECKING);
+		bank.addCustomer(new Customer("John").openAccount(checking));
+		int deposits = 10000;
+		for (int i = 0; i < deposits; i++) {
+			checking.depositCents(1 + i, null);
+		}
+		long position = journal.getPosition();
+		journal.close();
+		assertTrue(segmentCount(directory) > 1);
+
+		Journal reopened = new Journal(directory, Journal.Durability.ASYNC, SMALL_SEGMENT);
+		assertEquals(position, reopened.getPosition());
+		Recorder recorder = new Recorder();
+		reopened.replay(0, recorder);
+		reopened.close();
+		assertEquals(deposits, recorder.transactions);
+		assertEquals("transaction " + (deposits - 1) + " " + deposits + " deposit", recorder.records.get(recorder.records.size() - 1));
+	}
+
+	@Test
+	public void testGroupCommit() throws Exception {
+		Path directory = folder.newFolder().toPath();
+		Journal journal = new Journal(directory, Journal.Durability.BATCHED);
+		Bank bank = new Bank(journal);
+		final int threads = 8;
+		final int depositsPerThread = 200;
+		final Account[] accounts = new Account[threads];
+		Customer john = new Customer("John");
+		for (int t = 0; t < threads; t++) {
+			accounts[t] = new Account(Account.Type.CHECKING);
+			john.openAccount(accounts[t]);
+		}
+		bank.addCustomer(john);
+		long forcesBefore = journal.getForceCount();
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			final Account account = accounts[t];
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < depositsPerThread; i++) {
+						account.depositCents(100, null);
+					}
+					done.countDown();
+				}
+			}).start();
+		}
+		start.countDown();
+		done.await();
+		long forces = journal.getForceCount() - forcesBefore;
+		assertEquals(journal.getPosition(), journal.getDurablePosition());
+		// Writers waiting on a force share the next one
+		assertTrue(forces + " forces for " + threads * depositsPerThread + " deposits", forces <= threads * depositsPerThread / 2);
+		journal.close();
+
+		Recorder recorder = new Recorder();
+		new Journal(directory, Journal.Durability.BATCHED).replay(0, recorder);
+		assertEquals(threads * depositsPerThread, recorder.transactions);
+	}
+
+	@Test
+	public void testEntriesJournaledInLedgerOrder() throws Exception {
+		Path directory = folder.newFolder().toPath();
+		Journal journal = new Journal(directory, Journal.Durability.ASYNC);
+		Bank bank = new Bank(journal);
+		final Account shared = new Account(Account.Type.CHECKING);
+		bank.addCustomer(new Customer("John").openAccount(shared));
+		final int threads = 4;
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 2000; i++) {
+						shared.depositCents(1, null);
+					}
+					done.countDown();
+				}
+			}).start();
+		}
+		done.await();
+		journal.close();
+
+		final int[] expectedIndex = new int[1];
+		new Journal(directory, Journal.Durability.ASYNC).replay(0, new Recorder() {
+			@Override
+			public void transaction(int accountNumber, int index, long amountCents, long time, int descriptionId) {
+				assertEquals(expectedIndex[0]++, index);
+			}
+		});
+		assertEquals(threads * 2000, expectedIndex[0]);
+	}
+
+	private static Path onlySegment(Path directory) throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			return stream.iterator().next();
+		}
+	}
+
+	private static int segmentCount(Path directory) throws IOException {
+		int count = 0;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (@SuppressWarnings("unused")
+			Path path : stream) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,132 @@
+package com.abc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class LedgerTest {
+	private static final double DOUBLE_DELTA = 1e-15;
+
+	@Test
+	public void testAppendAcrossChunks() {
+		Ledger ledger = new Ledger();
+		int entries = 3 * Ledger.CHUNK_SIZE + 7;
+		for (int i = 0; i < entries; i++) {
+			ledger.append(i, 1000L * i, i % 2 == 0 ? Ledger.DEPOSIT : Ledger.WITHDRAWAL);
+		}
+
+		Ledger.View view = ledger.view();
+		assertEquals(entries, view.size());
+		assertEquals((long) entries * (entries - 1) / 2, view.sumCents());
+		assertEquals(Ledger.CHUNK_SIZE + 1, view.amountCents(Ledger.CHUNK_SIZE + 1));
+		assertEquals(1000L * (entries - 1), view.time(entries - 1));
+		assertEquals("withdrawal", view.description(entries - 2));
+	}
+
+	@Test
+	public void testBatchAppendAcrossChunks() {
+		Ledger ledger = new Ledger();
+		ledger.append(1L, 1L, Ledger.DEPOSIT);
+		int count = Ledger.CHUNK_SIZE + 10;
+		long[] amounts = new long[count];
+		int[] descriptionIds = new int[count];
+		for (int i = 0; i < count; i++) {
+			amounts[i] = i + 2;
+			descriptionIds[i] = Ledger.WITHDRAWAL;
+		}
+		Ledger.Tail previous = ledger.tail();
+		Ledger.Tail next = new Ledger.Tail(previous.size + count, amounts[count - 1], 9L, Ledger.WITHDRAWAL,
+				new Ledger.Batch(amounts, descriptionIds));
+		assertTrue(ledger.compareAndAppend(previous, next));
+		ledger.append(-1L, 10L, Ledger.DEPOSIT);
+
+		Ledger.View view = ledger.view();
+		assertEquals(count + 2, view.size());
+		for (int i = 1; i <= count; i++) {
+			assertEquals(i + 1, view.amountCents(i));
+			assertEquals(9L, view.time(i));
+			assertEquals("withdrawal", view.description(i));
+		}
+		assertEquals(-1L, view.amountCents(count + 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBatchMustMatchTailSize() {
+		Ledger ledger = new Ledger();
+		ledger.compareAndAppend(ledger.tail(), new Ledger.Tail(1, 2L, 0L, Ledger.DEPOSIT, new Ledger.Batch(new long[] { 1L, 2L }, new int[2])));
+	}
+
+	@Test
+	public void testTransactionsBuiltFromColumns() {
+		Ledger ledger = new Ledger();
+		ledger.append(2500L, 5000L, Ledger.descriptionId("payroll"));
+		ledger.append(-1000L, 6000L, Ledger.WITHDRAWAL);
+
+		List<Transaction> transactions = ledger.view().toTransactions();
+		assertEquals(2, transactions.size());
+		assertEquals(25.0, transactions.get(0).amount, DOUBLE_DELTA);
+		assertEquals(2500L, transactions.get(0).getAmountCents());
+		assertEquals("payroll", transactions.get(0).getDescription());
+		assertEquals(6000L, transactions.get(1).getDate().getTime());
+	}
+
+	@Test
+	public void testDescriptionIdsAreShared() {
+		assertEquals(Ledger.descriptionId("interest"), Ledger.descriptionId("interest"));
+		assertEquals("deposit", Ledger.descriptionForId(Ledger.DEPOSIT));
+	}
+
+	@Test
+	public void testViewIsStable() {
+		Ledger ledger = new Ledger();
+		ledger.append(100L, 1L, Ledger.DEPOSIT);
+		Ledger.View view = ledger.view();
+		for (int i = 0; i < 2 * Ledger.CHUNK_SIZE; i++) {
+			ledger.append(1L, 2L, Ledger.DEPOSIT);
+		}
+
+		assertEquals(1, view.size());
+		assertEquals(100L, view.sumCents());
+	}
+
+	@Test
+	public void testConcurrentAppendsWithReaders() throws InterruptedException {
+		final Ledger ledger = new Ledger();
+		final int writers = 8;
+		final int appends = 20000;
+		final CountDownLatch done = new CountDownLatch(writers);
+		final AtomicBoolean consistent = new AtomicBoolean(true);
+
+		for (int w = 0; w < writers; w++) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < appends; i++) {
+						ledger.append(1L, i, Ledger.DEPOSIT);
+					}
+					done.countDown();
+				}
+			}).start();
+		}
+
+		// Every published entry is fully written, so a view always sums to its
+		// size
+		int lastSize = 0;
+		while (done.getCount() > 0) {
+			Ledger.View view = ledger.view();
+			if (view.sumCents() != view.size() || view.size() < lastSize) {
+				consistent.set(false);
+			}
+			lastSize = view.size();
+		}
+		done.await();
+
+		assertTrue(consistent.get());
+		assertEquals(writers * appends, ledger.view().sumCents());
+	}
+}
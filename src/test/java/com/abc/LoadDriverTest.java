@@ -0,0 +1,88 @@
+package com.abc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LoadDriverTest {
+	@Test
+	public void testRunKeepsInvariants() throws InterruptedException {
+		LoadDriver driver = new LoadDriver(20, 2);
+		LoadDriver.Report report = driver.run(64, 200);
+		assertEquals(report.getViolations().toString(), 0, report.getViolationCount());
+		assertEquals(64 * 200, report.getTotalCount());
+		assertTrue(report.getThroughput() > 0);
+		for (LoadDriver.Operation operation : LoadDriver.Operation.values()) {
+			assertTrue(report.getPercentileNanos(operation, 50) <= report.getPercentileNanos(operation, 99));
+			assertTrue(report.getPercentileNanos(operation, 99) <= report.getPercentileNanos(operation, 99.9));
+		}
+		assertEquals(report.isVirtualThreads(), LoadDriver.virtualThreadExecutor() != null);
+	}
+
+	@Test
+	public void testWeightsSelectOperations() throws InterruptedException {
+		LoadDriver driver = new LoadDriver(4, 1);
+		for (LoadDriver.Operation operation : LoadDriver.Operation.values()) {
+			driver.setWeight(operation, 0);
+		}
+		driver.setWeight(LoadDriver.Operation.TRANSFER, 1);
+		// Every transfer goes between the single hot account and another
+		driver.setSkew(0, 1);
+		LoadDriver.Report report = driver.run(8, 100);
+		assertEquals(800, report.getCount(LoadDriver.Operation.TRANSFER));
+		assertEquals(0, report.getCount(LoadDriver.Operation.DEPOSIT));
+		assertEquals(0, report.getViolationCount());
+		long total = 0;
+		for (Customer customer : driver.getBank().customerSnapshot()) {
+			for (Account account : customer.getAccounts()) {
+				total += account.getBalanceCents();
+			}
+		}
+		assertEquals(4 * 100000, total);
+	}
+
+	@Test
+	public void testBalanceCheckedAgainstHistory() throws InterruptedException {
+		LoadDriver driver = new LoadDriver(2, 1);
+		for (LoadDriver.Operation operation : LoadDriver.Operation.values()) {
+			driver.setWeight(operation, 0);
+		}
+		driver.setWeight(LoadDriver.Operation.STATEMENT, 1);
+
+		// Append an entry of 100 cents which raises the balance by 101
+		Account account = driver.getBank().customerSnapshot()[0].getAccounts().get(0);
+		Ledger ledger = account.getLedger();
+		Account.Checkpoint tail = (Account.Checkpoint) ledger.tail();
+		assertTrue(ledger.compareAndAppend(tail, new Account.Checkpoint(tail.size + 1, 100, tail.time, Ledger.DEPOSIT, tail.balanceCents + 101,
+				tail.accruedBalance, tail.lowRateDaysRemaining)));
+
+		LoadDriver.Report report = driver.run(2, 10);
+		assertEquals(1, report.getViolationCount());
+		assertTrue(report.getViolations().get(0), report.getViolations().get(0).contains("does not match its transactions"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyMix() throws InterruptedException {
+		LoadDriver driver = new LoadDriver(1, 1);
+		for (LoadDriver.Operation operation : LoadDriver.Operation.values()) {
+			driver.setWeight(operation, 0);
+		}
+		driver.run(1, 1);
+	}
+
+	@Test
+	public void testLatencyBuckets() {
+		for (long value : new long[] { 0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE }) {
+			int bucket = LoadDriver.Latencies.bucket(value);
+			assertTrue(value <= LoadDriver.Latencies.upperBound(bucket));
+			assertTrue(bucket == 0 || value > LoadDriver.Latencies.upperBound(bucket - 1));
+		}
+		LoadDriver.Latencies latencies = new LoadDriver.Latencies();
+		for (int i = 1; i <= 1000; i++) {
+			latencies.record(i * 1000);
+		}
+		long p50 = latencies.percentile(50);
+		assertTrue(p50 >= 500000 && p50 <= 500000 + 500000 / 16);
+	}
+}
@@ -0,0 +1,103 @@
+package com.abc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class MetricsTest {
+
+	@Test
+	public void testHistogramPercentiles() {
+		Metrics.Histogram histogram = new Metrics.Histogram();
+		assertEquals(0, histogram.percentile(99));
+		for (int i = 0; i < 99; i++) {
+			histogram.record(100);
+		}
+		histogram.record(5000);
+		assertEquals(100, histogram.count());
+		assertEquals(99 * 100 + 5000, histogram.sum());
+		assertEquals(127, histogram.percentile(50));
+		assertEquals(127, histogram.percentile(99));
+		assertEquals(8191, histogram.percentile(100));
+		histogram.record(-3);
+		assertEquals(0, histogram.percentile(0.5));
+	}
+
+	@Test
+	public void testOperationsPublishedOverJmx() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		MetricsMXBean metrics = JMX.newMXBeanProxy(server, new ObjectName(Metrics.OBJECT_NAME), MetricsMXBean.class);
+		assertTrue(metrics.isEnabled());
+		Map<String, Long> before = metrics.getOperationCounts();
+		Map<String, Long> locksBefore = metrics.getLockAcquisitions();
+
+		Bank bank = new Bank();
+		Customer john = new Customer("John");
+		Account checking = new Account(Account.Type.CHECKING);
+		Account savings = new Account(Account.Type.SAVINGS);
+		bank.addCustomer(john.openAccount(checking).openAccount(savings));
+		checking.deposit(100);
+		checking.deposit(50);
+		checking.withdraw(20);
+		john.transfer(checking, savings, 10);
+		checking.interestEarned();
+		john.getStatement();
+		bank.customerSummary();
+		bank.totalInterestPaid();
+
+		Map<String, Long> after = metrics.getOperationCounts();
+		assertTrue(after.get("deposit") - before.get("deposit") >= 2);
+		assertTrue(after.get("withdraw") - before.get("withdraw") >= 1);
+		assertTrue(after.get("transfer") - before.get("transfer") >= 1);
+		assertTrue(after.get("interestEarned") - before.get("interestEarned") >= 1);
+		assertTrue(after.get("getStatement") - before.get("getStatement") >= 1);
+		assertTrue(after.get("customerSummary") - before.get("customerSummary") >= 1);
+		assertTrue(after.get("totalInterestPaid") - before.get("totalInterestPaid") >= 1);
+		assertTrue(metrics.getOperationP99Nanos().get("deposit") > 0);
+		assertTrue(metrics.operationPercentileNanos("deposit", 50) > 0);
+
+		Map<String, Long> locksAfter = metrics.getLockAcquisitions();
+		assertTrue(locksAfter.get("customers") > locksBefore.get("customers"));
+		assertTrue(locksAfter.get("accounts") > locksBefore.get("accounts"));
+		assertTrue(locksAfter.get("transfer") > locksBefore.get("transfer"));
+		assertTrue(metrics.getLockHoldNanos().containsKey("transfer"));
+	}
+
+	@Test
+	public void testBatchesCountedAsDepositsAndWithdrawals() {
+		Metrics.View view = new Metrics.View();
+		Map<String, Long> before = view.getOperationCounts();
+		Account account = new Account(Account.Type.CHECKING);
+		account.apply(new long[] { 500, -200, 300 }, null);
+		Map<String, Long> after = view.getOperationCounts();
+		assertTrue(after.get("deposit") - before.get("deposit") >= 2);
+		assertTrue(after.get("withdraw") - before.get("withdraw") >= 1);
+	}
+
+	@Test
+	public void testHistoryLengthDistribution() {
+		Metrics.View view = new Metrics.View();
+		Long before = view.getHistoryLengthDistribution().get("512-1023");
+		Account account = new Account(Account.Type.CHECKING);
+		long[] amounts = new long[600];
+		for (int i = 0; i < amounts.length; i++) {
+			amounts[i] = 1;
+		}
+		account.apply(amounts, null);
+		Long after = view.getHistoryLengthDistribution().get("512-1023");
+		assertEquals((before == null ? 0 : before) + 1, (long) after);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownOperation() {
+		new Metrics.View().operationPercentileNanos("nothing", 50);
+	}
+}
@@ -0,0 +1,74 @@
+package com.abc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Locale;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class MoneyTest {
+	private static final double DOUBLE_DELTA = 1e-15;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void testToCents() {
+		assertEquals(123456L, Money.toCents(1234.56));
+		assertEquals(-2000L, Money.toCents(-20.0));
+		assertEquals(30L, Money.toCents(0.1 + 0.2));
+	}
+
+	@Test
+	public void testHalfEvenRounding() {
+		assertEquals(0L, Money.toCents(0.005));
+		assertEquals(2L, Money.toCents(0.015));
+		assertEquals(2L, Money.toCents(0.025));
+		assertEquals(-2L, Money.toCents(-0.025));
+	}
+
+	@Test
+	public void testAppendDollarsMatchesFormat() throws IOException {
+		long[] amounts = { 0, 5, 99, 100, 123456, 99999999, 100000000, 123456789012L, -123456L, Long.MAX_VALUE / 1000 };
+		for (long cents : amounts) {
+			StringBuilder out = new StringBuilder();
+			Money.appendDollars(out, cents);
+			assertEquals(String.format(Locale.US, "$%,.2f", new BigDecimal(cents).movePointLeft(2)).replace("$-", "-$"), out.toString());
+		}
+	}
+
+	@Test
+	public void testAppendDollarsMinValue() throws IOException {
+		StringBuilder out = new StringBuilder();
+		Money.appendDollars(out, Long.MIN_VALUE);
+		assertEquals("-$92,233,720,368,547,758.08", out.toString());
+	}
+
+	@Test
+	public void testToDollars() {
+		assertEquals(1234.56, Money.toDollars(123456L), DOUBLE_DELTA);
+	}
+
+	@Test
+	public void testSumIsIndependentOfOrder() {
+		double[] amounts = { 0.1, 1e6, 0.2, -1e6, 0.3 };
+		long forward = 0;
+		long backward = 0;
+		for (int i = 0; i < amounts.length; i++) {
+			forward += Money.toCents(amounts[i]);
+			backward += Money.toCents(amounts[amounts.length - 1 - i]);
+		}
+		assertEquals(forward, backward);
+		assertEquals(60L, forward);
+	}
+
+	@Test
+	public void testNotANumber() {
+		thrown.expect(IllegalArgumentException.class);
+		Money.toCents(Double.NaN);
+	}
+}
@@ -0,0 +1,163 @@
+package com.abc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SnapshotStoreTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRecoverFromSnapshotAndJournalTail() throws IOException {
+		Path journalDirectory = folder.newFolder().toPath();
+		SnapshotStore store = new SnapshotStore(folder.newFolder().toPath());
+		Journal journal = new Journal(journalDirectory, Journal.Durability.BATCHED);
+		Bank bank = new Bank(journal);
+		Customer john = new Customer("John");
+		Account checking = new Account(Account.Type.CHECKING);
+		Account maxi = new Account(Account.Type.MAXI_SAVINGS);
+		john.openAccount(checking).openAccount(maxi);
+		bank.addCustomer(john);
+		checking.deposit(1000);
+		maxi.deposit(2500);
+		maxi.withdraw(100, "rent");
+		store.write(bank);
+
+		// Written after the snapshot, so only in the journal
+		checking.withdraw(250.5, "atm");
+		Customer jane = new Customer("Jane");
+		Account savings = new Account(Account.Type.SAVINGS);
+		bank.addCustomer(jane.openAccount(savings));
+		savings.deposit(42);
+		journal.close();
+
+		Journal reopened = new Journal(journalDirectory, Journal.Durability.BATCHED);
+		Bank recovered = store.recover(reopened);
+		assertEquals(2, store.getLastReplayedRecords());
+		assertTrue(store.getLastRecoveryNanos() > 0);
+
+		assertEquals(2, recovered.getNumberOfCustomers());
+		assertEquals(bank.customerSummary(), recovered.customerSummary());
+		Customer recoveredJohn = recovered.findCustomer(john.getId());
+		assertEquals(john.getStatement(), recoveredJohn.getStatement());
+		assertEquals(jane.getStatement(), recovered.findCustomer("Jane").getStatement());
+		assertCheckpointsEqual(maxi, recovered.findAccount(maxi.getAccountNumber()));
+		assertCheckpointsEqual(checking, recovered.findAccount(checking.getAccountNumber()));
+		assertEquals(Account.Type.MAXI_SAVINGS, recovered.findAccount(maxi.getAccountNumber()).getAccountType());
+
+		// The recovered bank journals new entries without writing the old ones
+		// again, and recovers again to the same state
+		long position = reopened.getPosition();
+		recovered.findAccount(savings.getAccountNumber()).deposit(8);
+		assertTrue(reopened.getPosition() - position < 100);
+		reopened.close();
+		Bank again = store.recover(new Journal(journalDirectory, Journal.Durability.BATCHED));
+		assertEquals(5000, again.findAccount(savings.getAccountNumber()).getBalanceCents());
+		assertEquals(john.getStatement(), again.findCustomer(john.getId()).getStatement());
+	}
+
+	@Test
+	public void testSnapshotWhileTakingWrites() throws Exception {
+		Path journalDirectory = folder.newFolder().toPath();
+		SnapshotStore store = new SnapshotStore(folder.newFolder().toPath());
+		Journal journal = new Journal(journalDirectory, Journal.Durability.ASYNC);
+		Bank bank = new Bank(journal);
+		final int writers = 4;
+		final Account[] accounts = new Account[writers];
+		for (int i = 0; i < writers; i++) {
+			accounts[i] = new Account(Account.Type.CHECKING);
+			bank.addCustomer(new Customer("C" + i).openAccount(accounts[i]));
+		}
+
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final CountDownLatch done = new CountDownLatch(writers);
+		for (int i = 0; i < writers; i++) {
+			final Account account = accounts[i];
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while (running.get()) {
+						account.depositCents(3, null);
+						account.withdrawCents(1, null);
+					}
+					done.countDown();
+				}
+			}).start();
+		}
+		for (int i = 0; i < 3; i++) {
+			assertNotNull(store.writeInBackground(bank).get());
+		}
+		running.set(false);
+		done.await();
+		journal.close();
+
+		Bank recovered = store.recover(new Journal(journalDirectory, Journal.Durability.ASYNC));
+		for (Account account : accounts) {
+			Account copy = recovered.findAccount(account.getAccountNumber());
+			assertEquals(account.getTransactions().size(), copy.getTransactions().size());
+			assertEquals(account.getBalanceCents(), copy.getBalanceCents());
+		}
+		store.close();
+	}
+
+	@Test
+	public void testDamagedSnapshotFallsBackToOlder() throws IOException {
+		Path journalDirectory = folder.newFolder().toPath();
+		SnapshotStore store = new SnapshotStore(folder.newFolder().toPath());
+		Journal journal = new Journal(journalDirectory, Journal.Durability.PER_OP);
+		Bank bank = new Bank(journal);
+		Account checking = new Account(Account.Type.CHECKING);
+		bank.addCustomer(new Customer("John").openAccount(checking));
+		checking.depositCents(100, null);
+		store.write(bank);
+		checking.depositCents(200, null);
+		Path newest = store.write(bank);
+		checking.depositCents(300, null);
+		journal.close();
+
+		try (FileChannel channel = FileChannel.open(newest, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 0x7f }), 30);
+		}
+
+		Bank recovered = store.recover(new Journal(journalDirectory, Journal.Durability.PER_OP));
+		assertEquals(600, recovered.findAccount(checking.getAccountNumber()).getBalanceCents());
+		assertEquals(2, store.getLastReplayedRecords());
+	}
+
+	@Test
+	public void testRecoveredNumbersAreNotReused() throws IOException {
+		SnapshotStore store = new SnapshotStore(folder.newFolder().toPath());
+		Bank bank = new Bank();
+		Customer john = new Customer("John");
+		Account checking = new Account(Account.Type.CHECKING);
+		bank.addCustomer(john.openAccount(checking));
+		store.write(bank);
+
+		store.recover(null);
+		assertTrue(new Account(Account.Type.CHECKING).getAccountNumber() > checking.getAccountNumber());
+		assertTrue(new Customer("Jane").getId() > john.getId());
+	}
+
+	private static void assertCheckpointsEqual(Account expected, Account actual) {
+		Account.Checkpoint e = (Account.Checkpoint) expected.getLedger().tail();
+		Account.Checkpoint a = (Account.Checkpoint) actual.getLedger().tail();
+		assertEquals(e.size, a.size);
+		assertEquals(e.time, a.time);
+		assertEquals(e.balanceCents, a.balanceCents);
+		assertEquals(e.accruedBalance, a.accruedBalance, 0);
+		assertEquals(e.lowRateDaysRemaining, a.lowRateDaysRemaining);
+	}
+}
@@ -0,0 +1,145 @@
+package com.abc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class TransferEngineTest {
+	private static final int ACCOUNTS = 64;
+	private static final int TRANSFERS_PER_THREAD = 5000;
+	private static final long OPENING_BALANCE = 10000;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void testTransfer() {
+		Account checking = new Account(Account.Type.CHECKING);
+		Account savings = new Account(Account.Type.SAVINGS);
+		checking.depositCents(5000, null);
+
+		TransferEngine.transfer(checking, savings, 1250);
+		assertEquals(3750, checking.sumTransactionsCents());
+		assertEquals(1250, savings.sumTransactionsCents());
+		assertEquals("transfer to " + savings.getAccountNumber(), checking.getTransactions().get(1).getDescription());
+		assertEquals("transfer from " + checking.getAccountNumber(), savings.getTransactions().get(0).getDescription());
+	}
+
+	@Test
+	public void testInsufficientFundsChangesNothing() {
+		Account checking = new Account(Account.Type.CHECKING);
+		Account savings = new Account(Account.Type.SAVINGS);
+		checking.depositCents(100, null);
+
+		try {
+			TransferEngine.transfer(checking, savings, 101);
+			fail("transfer should be refused");
+		} catch (IllegalStateException expected) {
+		}
+		assertEquals(1, checking.getTransactions().size());
+		assertEquals(0, savings.getTransactions().size());
+	}
+
+	@Test
+	public void testSameAccount() {
+		Account checking = new Account(Account.Type.CHECKING);
+		checking.depositCents(100, null);
+		thrown.expect(IllegalArgumentException.class);
+		TransferEngine.transfer(checking, checking, 1);
+	}
+
+	@Test
+	public void testCrossCustomerTransfer() {
+		Bank bank = new Bank();
+		Account johnsChecking = new Account(Account.Type.CHECKING);
+		Account janesSavings = new Account(Account.Type.SAVINGS);
+		bank.addCustomer(new Customer("John").openAccount(johnsChecking));
+		bank.addCustomer(new Customer("Jane").openAccount(janesSavings));
+		johnsChecking.depositCents(2000, null);
+
+		bank.transfer(johnsChecking.getAccountNumber(), janesSavings.getAccountNumber(), 500);
+		assertEquals(1500, johnsChecking.sumTransactionsCents());
+		assertEquals(500, janesSavings.sumTransactionsCents());
+	}
+
+	@Test
+	public void testCustomerCannotTransferFromOthersAccount() {
+		Account johnsChecking = new Account(Account.Type.CHECKING);
+		Account janesSavings = new Account(Account.Type.SAVINGS);
+		Customer john = new Customer("John").openAccount(johnsChecking);
+		new Customer("Jane").openAccount(janesSavings);
+		janesSavings.deposit(100);
+
+		thrown.expect(IllegalArgumentException.class);
+		john.transfer(janesSavings, johnsChecking, 50);
+	}
+
+	@Test
+	public void testConcurrentTransfersConserveMoney() throws InterruptedException {
+		stress(1);
+		stress(Math.max(4, Runtime.getRuntime().availableProcessors()));
+	}
+
+	/*
+	 * Run random transfers, in both directions, between a small set of accounts
+	 * and check that no money is created or lost and no account is overdrawn
+	 */
+	private void stress(int threads) throws InterruptedException {
+		final Account[] accounts = new Account[ACCOUNTS];
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accounts[i] = new Account(Account.Type.CHECKING);
+			accounts[i].depositCents(OPENING_BALANCE, null);
+		}
+		final AtomicLong refused = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final Random random = new Random(t);
+			workers[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+						int from = random.nextInt(ACCOUNTS);
+						int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+						try {
+							TransferEngine.transfer(accounts[from], accounts[to], 1 + random.nextInt(2000));
+						} catch (IllegalStateException e) {
+							refused.incrementAndGet();
+						}
+					}
+				}
+			});
+			workers[t].start();
+		}
+
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		long total = 0;
+		int entries = 0;
+		for (Account account : accounts) {
+			long balance = account.sumTransactionsCents();
+			assertTrue("account overdrawn: " + balance, balance >= 0);
+			total += balance;
+			entries += account.getTransactions().size();
+		}
+		assertEquals(ACCOUNTS * OPENING_BALANCE, total);
+		long completed = (long) threads * TRANSFERS_PER_THREAD - refused.get();
+		assertEquals(ACCOUNTS + 2 * completed, entries);
+	}
+}